@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolException;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.RedirectException;
+import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Base class for transports whose engine does not follow redirects on its own.
+ * Subclasses only send a single request, redirects are followed here with {@link EasyRedirectStrategy},
+ * without the credentials of the original request when they lead to another origin.
+ *
+ * @since 1.3.0
+ */
+public abstract class AbstractHttpTransport implements HttpTransport {
+
+    public final static int MAX_REDIRECTS = 100;
+
+    /**
+     * Context attribute holding the request given to {@link #execute}, so redirected requests can still be aborted through it
+     * and its credentials are not sent to another origin
+     */
+    public final static String ORIGINAL_REQUEST = "easyj.http.original-request";
+
+    private final RedirectStrategy redirectStrategy = new EasyRedirectStrategy();
+
+    public HttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException {
+        if(context == null) {
+            context = new BasicHttpContext();
+        }
+
+        context.setAttribute(ORIGINAL_REQUEST, request);
+        HttpUriRequest current = request;
+        for(int redirects = 0; ; redirects++) {
+            context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, URIUtils.extractHost(current.getURI()));
+            context.setAttribute(ExecutionContext.HTTP_REQUEST, current);
+            HttpResponse response = send(current, context);
+
+            HttpUriRequest redirect;
+            try {
+                if(!redirectStrategy.isRedirected(current, response, context)) {
+                    return response;
+                }
+                if(redirects >= MAX_REDIRECTS) {
+                    throw new RedirectException("Maximum redirects (" + MAX_REDIRECTS + ") exceeded");
+                }
+                redirect = redirectStrategy.getRedirect(current, response, context);
+            } catch (ProtocolException ex) {
+                EntityUtils.consume(response.getEntity());
+                throw new ClientProtocolException(ex);
+            }
+
+            EntityUtils.consume(response.getEntity());
+            redirect.setHeaders(request.getAllHeaders());
+            if(!EasyRedirectStrategy.isSameOrigin(request.getURI(), URIUtils.extractHost(redirect.getURI()))) {
+                EasyRedirectStrategy.removeCredentials(redirect, request);
+            }
+            redirect.setParams(request.getParams());
+            current = redirect;
+        }
+    }
+
+    /**
+     * Sends a single request, without following redirects
+     *
+     * @param request request to send
+     * @param context execution context of the request
+     * @return response of the request, its entity not consumed yet
+     * @throws IOException in case of a problem or the connection was aborted
+     */
+    protected abstract HttpResponse send(HttpUriRequest request, HttpContext context) throws IOException;
+
+}
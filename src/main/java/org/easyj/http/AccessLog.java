@@ -0,0 +1,384 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous structured access log of requests, one json line per request with its
+ * method, URI, status, bytes, timings and error.
+ * <p>
+ * Request threads only copy a few fields into a slot of a preallocated lock-free ring buffer;
+ * a background thread formats and writes the entries to a {@link Sink}, such as a file or a logger.
+ * When the buffer is full, because the sink can not keep up, entries are dropped and counted
+ * instead of blocking requests.
+ * <pre>
+ * AccessLog accessLog = new AccessLog(new File("access.log"), 8192);
+ * client.setAccessLog(accessLog);
+ * ...
+ * accessLog.close();
+ * </pre>
+ * The same instance can be shared by any number of {@code EasyHttpClient}s.
+ *
+ * @since 1.3.0
+ */
+public class AccessLog implements Closeable {
+
+    public final static int DEFAULT_CAPACITY = 8192;
+    public final static long DEFAULT_DRAIN_INTERVAL = 10;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Entry[] ring;
+    private final int mask;
+    private final AtomicLong tail;
+    private final AtomicLong dropped;
+    private final AtomicLong written;
+    private final AtomicInteger producers;
+    private long head;
+
+    private final Sink sink;
+    private final Thread drainer;
+    private final long drainIntervalNanos;
+    private volatile boolean running;
+
+    /**
+     * Creates an access log appending to a file
+     *
+     * @param file log file
+     * @param capacity entries buffered, rounded up to a power of two
+     * @throws IOException if the file can not be opened
+     */
+    public AccessLog(File file, int capacity) throws IOException {
+        this(new WriterSink(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"))), capacity);
+    }
+
+    /**
+     * Creates an access log writing each entry as an info message
+     *
+     * @param logger destination logger
+     * @param capacity entries buffered, rounded up to a power of two
+     */
+    public AccessLog(Logger logger, int capacity) {
+        this(new LoggerSink(logger), capacity);
+    }
+
+    /**
+     * Creates an access log
+     *
+     * @param sink destination of the entries, only called from the drainer thread
+     * @param capacity entries buffered, rounded up to a power of two
+     */
+    public AccessLog(Sink sink, int capacity) {
+        if(capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new Entry[size];
+        for(int i = 0; i < size; i++) {
+            ring[i] = new Entry(i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.written = new AtomicLong();
+        this.producers = new AtomicInteger();
+        this.sink = sink;
+        this.drainIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DRAIN_INTERVAL);
+        this.running = true;
+        this.drainer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "easyj-http-access-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Records a request. Never blocks: if the buffer is full, or the log is closed, the entry is dropped.
+     *
+     * @param method request method
+     * @param uri request URI
+     * @param status response status, 0 if there was no response
+     * @param bytes response body bytes, -1 if unknown
+     * @param executeNanos time to execute the request, up to the response head
+     * @param totalNanos total time of the request, including admission and consuming the body
+     * @param error class name of the error that failed the request, or null
+     * @return true if the entry was recorded
+     */
+    public boolean log(String method, String uri, int status, long bytes, long executeNanos, long totalNanos, String error) {
+        producers.incrementAndGet();
+        try {
+            return record(method, uri, status, bytes, executeNanos, totalNanos, error);
+        } finally {
+            producers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Claims a slot and publishes the entry in it. Runs counted in {@code producers}, so the drainer
+     * does not stop before an entry that passed the {@code running} check is published.
+     */
+    private boolean record(String method, String uri, int status, long bytes, long executeNanos, long totalNanos, String error) {
+        if(!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        long position = tail.get();
+        while(true) {
+            Entry entry = ring[(int) (position & mask)];
+            long difference = entry.sequence - position;
+            if(difference == 0) {
+                if(tail.compareAndSet(position, position + 1)) {
+                    entry.timestamp = System.currentTimeMillis();
+                    entry.method = method;
+                    entry.uri = uri;
+                    entry.status = status;
+                    entry.bytes = bytes;
+                    entry.executeNanos = executeNanos;
+                    entry.totalNanos = totalNanos;
+                    entry.error = error;
+                    entry.sequence = position + 1;
+                    return true;
+                }
+                position = tail.get();
+            } else if(difference < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the entries dropped because the buffer was full or the log was closed
+     *
+     * @return dropped entries
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the entries written to the sink
+     *
+     * @return written entries
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Stops the drainer after writing the entries already recorded, and closes the sink
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drainer loop: writes every published entry, flushes and sleeps when the buffer is empty
+     */
+    private void drain() {
+        StringBuilder line = new StringBuilder(256);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date date = new Date();
+        boolean pending = false;
+        while(true) {
+            boolean stopping = !running && producers.get() == 0;
+            Entry entry = ring[(int) (head & mask)];
+            if(entry.sequence == head + 1) {
+                line.setLength(0);
+                date.setTime(entry.timestamp);
+                format(entry, dateFormat.format(date), line);
+                entry.method = null;
+                entry.uri = null;
+                entry.error = null;
+                entry.sequence = head + ring.length;
+                head++;
+                try {
+                    sink.write(line);
+                    written.incrementAndGet();
+                    pending = true;
+                } catch(IOException ex) {
+                    logger.warn("Could not write access log entry", ex);
+                }
+                continue;
+            }
+
+            if(pending) {
+                try {
+                    sink.flush();
+                } catch(IOException ex) {
+                    logger.warn("Could not flush access log", ex);
+                }
+                pending = false;
+            }
+            if(stopping) {
+                break;
+            }
+            LockSupport.parkNanos(this, drainIntervalNanos);
+        }
+        try {
+            sink.close();
+        } catch(IOException ex) {
+            logger.warn("Could not close access log", ex);
+        }
+    }
+
+    private static void format(Entry entry, String timestamp, StringBuilder line) {
+        line.append("{\"time\":\"").append(timestamp);
+        line.append("\",\"method\":");
+        quote(entry.method, line);
+        line.append(",\"uri\":");
+        quote(entry.uri, line);
+        line.append(",\"status\":").append(entry.status);
+        line.append(",\"bytes\":").append(entry.bytes);
+        line.append(",\"executeMicros\":").append(entry.executeNanos / 1000);
+        line.append(",\"totalMicros\":").append(entry.totalNanos / 1000);
+        if(entry.error != null) {
+            line.append(",\"error\":");
+            quote(entry.error, line);
+        }
+        line.append('}');
+    }
+
+    private static void quote(String value, StringBuilder line) {
+        if(value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if(c < 0x20) {
+                line.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Slot of the ring buffer. Its sequence tells whose turn it is: equal to the position when
+     * free for a producer, position + 1 when published for the drainer.
+     */
+    private static class Entry {
+
+        volatile long sequence;
+        long timestamp;
+        String method;
+        String uri;
+        int status;
+        long bytes;
+        long executeNanos;
+        long totalNanos;
+        String error;
+
+        Entry(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Destination of the access log, only called from the drainer thread
+     */
+    public interface Sink extends Closeable {
+
+        /**
+         * Writes an entry; the line is reused afterwards
+         */
+        void write(CharSequence line) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    /**
+     * Writes entries to a {@code Writer}, one per line
+     */
+    public static class WriterSink implements Sink {
+
+        private final Writer writer;
+
+        public WriterSink(Writer writer) {
+            this.writer = writer;
+        }
+
+        public void write(CharSequence line) throws IOException {
+            writer.append(line).append('\n');
+        }
+
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes entries as info messages of a logger
+     */
+    public static class LoggerSink implements Sink {
+
+        private final Logger logger;
+
+        public LoggerSink(Logger logger) {
+            this.logger = logger;
+        }
+
+        public void write(CharSequence line) {
+            logger.info(line.toString());
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+
+}
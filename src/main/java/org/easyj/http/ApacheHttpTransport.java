@@ -0,0 +1,208 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transport backed by Apache HttpClient 4.x {@code DefaultHttpClient} with a pool of keep-alive connections.
+ * This is the default transport of {@code EasyHttpClient}.
+ *
+ * @since 1.3.0
+ */
+public class ApacheHttpTransport implements HttpTransport {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final InstrumentedConnManager connManager;
+    private final DefaultHttpClient client;
+    private final TlsConfig tlsConfig;
+
+    /**
+     * Creates a new transport with its own connection pool
+     *
+     * @param maxConnections maximum connections in the pool
+     * @param maxConnectionsPerRoute maximum connections in the pool to the same route
+     */
+    public ApacheHttpTransport(int maxConnections, int maxConnectionsPerRoute) {
+        this(maxConnections, maxConnectionsPerRoute, null);
+    }
+
+    /**
+     * Creates a new transport with its own connection pool and a HTTPS configuration
+     *
+     * @param maxConnections maximum connections in the pool
+     * @param maxConnectionsPerRoute maximum connections in the pool to the same route
+     * @param tlsConfig HTTPS configuration, null for the JVM defaults
+     */
+    public ApacheHttpTransport(int maxConnections, int maxConnectionsPerRoute, TlsConfig tlsConfig) {
+        connManager = new InstrumentedConnManager();
+        this.tlsConfig = tlsConfig;
+        if(tlsConfig != null) {
+            connManager.getSchemeRegistry().register(new Scheme("https", 443, tlsConfig.createSocketFactory()));
+        }
+        connManager.setMaxTotal(maxConnections);
+        connManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        client = new DefaultHttpClient(connManager);
+        client.setRedirectStrategy(new EasyRedirectStrategy());
+        client.addRequestInterceptor(new HttpRequestInterceptor() {
+            public void process(HttpRequest request, HttpContext context) {
+                Object original = context.getAttribute(AbstractHttpTransport.ORIGINAL_REQUEST);
+                Object target = context.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+                if(original instanceof HttpUriRequest && target instanceof HttpHost
+                        && !EasyRedirectStrategy.isSameOrigin(((HttpUriRequest) original).getURI(), (HttpHost) target)) {
+                    EasyRedirectStrategy.removeCredentials(request, (HttpUriRequest) original);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends the request, following its redirects without its credentials when they lead to another origin
+     */
+    public HttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException {
+        if(context == null) {
+            context = new BasicHttpContext();
+        }
+        context.setAttribute(AbstractHttpTransport.ORIGINAL_REQUEST, request);
+        return client.execute(request, context);
+    }
+
+    public void shutdown() {
+        connManager.shutdown();
+    }
+
+    /**
+     * Sets the maximum connections in the pool to the same route
+     *
+     * @param maxConnectionsPerRoute maximum connections per route
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        connManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    }
+
+    /**
+     * Sets the maximum connections in the pool to a route, overriding the default per route
+     *
+     * @param route route to configure
+     * @param maxConnections maximum connections for the route
+     */
+    public void setMaxConnections(HttpRoute route, int maxConnections) {
+        connManager.setMaxForRoute(route, maxConnections);
+    }
+
+    /**
+     * Opens connections to a route and leaves them idle in the pool, so the first requests
+     * after startup skip the connect and, for secure routes, the TLS handshake.
+     * Connections already open in the pool count towards the requested number.
+     *
+     * @param route route to warm up
+     * @param connections connections to have open, bounded by the maximum for the route
+     * @param timeout maximum time to wait for each connection from the pool
+     * @param unit unit of the timeout
+     * @return connections opened by this call
+     * @throws IOException if a connection could not be opened
+     */
+    public int prewarm(HttpRoute route, int connections, long timeout, TimeUnit unit) throws IOException {
+        int count = Math.min(connections, connManager.getMaxForRoute(route));
+        List<ManagedClientConnection> leased = new ArrayList<ManagedClientConnection>(count);
+        int opened = 0;
+        try {
+            for(int i = 0; i < count; i++) {
+                ManagedClientConnection connection;
+                try {
+                    connection = connManager.requestConnection(route, null).getConnection(timeout, unit);
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while warming up " + route);
+                } catch(ConnectionPoolTimeoutException ex) {
+                    logger.warn("Pool exhausted while warming up {}, {} connections opened", route, opened);
+                    break;
+                }
+                leased.add(connection);
+                if(!connection.isOpen()) {
+                    connection.open(route, new BasicHttpContext(), client.getParams());
+                    opened++;
+                }
+                connection.markReusable();
+            }
+        } finally {
+            for(ManagedClientConnection connection : leased) {
+                connManager.releaseConnection(connection, -1, TimeUnit.MILLISECONDS);
+            }
+        }
+        logger.debug("Warmed up {} with {} new connections", route, opened);
+        return opened;
+    }
+
+    /**
+     * Returns the leased, available and pending connections of every route used so far
+     *
+     * @return connections per route
+     */
+    public List<PoolStats> getPoolStats() {
+        return connManager.getPoolStats();
+    }
+
+    /**
+     * Returns the HTTPS configuration of the pool
+     *
+     * @return HTTPS configuration or null if using the JVM defaults
+     */
+    public TlsConfig getTlsConfig() {
+        return tlsConfig;
+    }
+
+    /**
+     * Returns the wrapped {@code HttpClient}
+     *
+     * @return the {@code HttpClient} instance
+     */
+    public HttpClient getHttpClient() {
+        return client;
+    }
+
+    /**
+     * Returns the connection pool
+     *
+     * @return the connection manager
+     */
+    public ThreadSafeClientConnManager getConnectionManager() {
+        return connManager;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+import org.apache.http.HttpRequest;
+
+/**
+ * Adds credentials to requests before they are sent, so no challenge round trip is needed.
+ * Implementations must be thread safe: the same instance is usually shared by all clients
+ * calling the same service.
+ *
+ * @see EasyHttpClient#setAuthenticator(Authenticator)
+ * @since 1.3.0
+ */
+public interface Authenticator {
+
+    /**
+     * Adds the credentials to a request about to be sent
+     *
+     * @param request request to authenticate
+     * @throws IOException if the credentials could not be obtained
+     */
+    void authenticate(HttpRequest request) throws IOException;
+
+    /**
+     * Signals that the server refused the credentials of a request with a {@code 401}
+     *
+     * @param request request that was refused
+     */
+    void onUnauthorized(HttpRequest request);
+
+}
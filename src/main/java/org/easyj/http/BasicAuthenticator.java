@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.UnsupportedEncodingException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.auth.AUTH;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Sends Basic credentials preemptively with every request.
+ * The header is encoded once, when the authenticator is created.
+ *
+ * @since 1.3.0
+ */
+public class BasicAuthenticator implements Authenticator {
+
+    private final Header header;
+
+    /**
+     * Creates an authenticator, encoding the credentials in UTF-8
+     *
+     * @param username user name, must not contain a colon
+     * @param password password
+     */
+    public BasicAuthenticator(String username, String password) {
+        if(username.indexOf(':') >= 0) {
+            throw new IllegalArgumentException("username must not contain a colon");
+        }
+        try {
+            byte[] credentials = (username + ":" + password).getBytes("UTF-8");
+            this.header = new BasicHeader(AUTH.WWW_AUTH_RESP, "Basic " + new String(Base64.encodeBase64(credentials), "US-ASCII"));
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public void authenticate(HttpRequest request) {
+        request.setHeader(header);
+    }
+
+    /**
+     * Basic credentials do not change, nothing to do
+     */
+    public void onUnauthorized(HttpRequest request) {
+    }
+
+}
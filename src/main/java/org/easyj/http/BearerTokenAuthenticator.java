@@ -0,0 +1,265 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.auth.AUTH;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a cached bearer token with every request.
+ * <p>
+ * The token is fetched from a {@link TokenSource} on the first request and refreshed in the background
+ * ahead of its expiry, so requests do not wait for it. Refreshes are single-flight: however many requests
+ * need a token at the same time, only one call is made to the token endpoint and the others wait for it.
+ * A request only blocks when there is no valid token at all. Share one instance among all clients of a
+ * service, so they share its token too.
+ *
+ * @since 1.3.0
+ */
+public class BearerTokenAuthenticator implements Authenticator {
+
+    public final static long DEFAULT_REFRESH_AHEAD = 60000;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final TokenSource source;
+    private final Executor executor;
+    private final AtomicReference<FutureTask<Token>> refreshing;
+    private volatile Token token;
+    private long refreshAheadNanos;
+
+    /**
+     * Creates an authenticator refreshing tokens on its own daemon thread
+     *
+     * @param source source of new tokens
+     */
+    public BearerTokenAuthenticator(TokenSource source) {
+        this(source, refreshThread());
+    }
+
+    /**
+     * Creates an authenticator
+     *
+     * @param source source of new tokens
+     * @param executor executor running the refreshes ahead of expiry
+     */
+    public BearerTokenAuthenticator(TokenSource source, Executor executor) {
+        this.source = source;
+        this.executor = executor;
+        this.refreshing = new AtomicReference<FutureTask<Token>>();
+        this.refreshAheadNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_REFRESH_AHEAD);
+    }
+
+    /**
+     * Sets how long before its expiry a token is refreshed, at most half its lifetime
+     *
+     * @param millis time before the expiry in milliseconds
+     * @return own instance for chaining
+     */
+    public BearerTokenAuthenticator setRefreshAhead(long millis) {
+        this.refreshAheadNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    public void authenticate(HttpRequest request) throws IOException {
+        Token current = token;
+        long now = System.nanoTime();
+        if(current == null || current.isExpired(now)) {
+            current = await(refresh(false));
+        } else if(current.shouldRefresh(now)) {
+            refresh(true);
+        }
+        request.setHeader(AUTH.WWW_AUTH_RESP, current.header);
+    }
+
+    /**
+     * Drops the token the request was sent with, so the next request fetches a new one
+     */
+    public void onUnauthorized(HttpRequest request) {
+        Token current = token;
+        Header sent = request.getFirstHeader(AUTH.WWW_AUTH_RESP);
+        if(current != null && sent != null && current.header.equals(sent.getValue())) {
+            token = null;
+        }
+    }
+
+    /**
+     * Returns the cached token, fetching it if there is none or it expired
+     *
+     * @return valid token
+     * @throws IOException if the token could not be fetched
+     */
+    public Token getToken() throws IOException {
+        Token current = token;
+        return current == null || current.isExpired(System.nanoTime()) ? await(refresh(false)) : current;
+    }
+
+    /**
+     * Starts a refresh unless one is already in flight
+     *
+     * @param async whether to refresh on the executor or in the calling thread
+     * @return the refresh in flight
+     */
+    private FutureTask<Token> refresh(boolean async) {
+        FutureTask<Token> task = refreshing.get();
+        if(task != null) {
+            return task;
+        }
+
+        final FutureTask<Token> created = new FutureTask<Token>(new Callable<Token>() {
+            public Token call() throws Exception {
+                Token fetched = source.fetch();
+                if(fetched == null) {
+                    throw new IOException("Token source returned no token");
+                }
+                fetched.schedule(System.nanoTime(), refreshAheadNanos);
+                token = fetched;
+                return fetched;
+            }
+        });
+        if(!refreshing.compareAndSet(null, created)) {
+            task = refreshing.get();
+            return task != null ? task : refresh(async);
+        }
+
+        Runnable run = new Runnable() {
+            public void run() {
+                try {
+                    created.run();
+                } finally {
+                    refreshing.compareAndSet(created, null);
+                }
+            }
+        };
+        if(async) {
+            try {
+                executor.execute(run);
+            } catch (RuntimeException ex) {
+                logger.warn("Could not schedule token refresh, refreshing now", ex);
+                run.run();
+            }
+        } else {
+            run.run();
+        }
+        return created;
+    }
+
+    private Token await(FutureTask<Token> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a token");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            IOException error = new IOException("Could not fetch a token");
+            error.initCause(cause);
+            throw error;
+        }
+    }
+
+    private static ExecutorService refreshThread() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "easyj-http-token-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Fetches new tokens, usually from an OAuth token endpoint
+     */
+    public interface TokenSource {
+
+        /**
+         * Fetches a new token
+         *
+         * @return new token
+         * @throws IOException if the token could not be fetched
+         */
+        Token fetch() throws IOException;
+
+    }
+
+    /**
+     * Bearer token and its lifetime
+     */
+    public static class Token {
+
+        private final String value;
+        private final long expiresIn;
+        private final String header;
+        private long expiresAt;
+        private long refreshAt;
+
+        /**
+         * Creates a token
+         *
+         * @param value token value
+         * @param expiresIn lifetime in milliseconds from now, negative if it never expires
+         */
+        public Token(String value, long expiresIn) {
+            this.value = value;
+            this.expiresIn = expiresIn;
+            this.header = "Bearer " + value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Sets the expiry and refresh times, once the token is fetched
+         */
+        void schedule(long now, long refreshAheadNanos) {
+            if(expiresIn < 0) {
+                expiresAt = refreshAt = Long.MAX_VALUE;
+                return;
+            }
+            long lifetime = TimeUnit.MILLISECONDS.toNanos(expiresIn);
+            expiresAt = now + lifetime;
+            refreshAt = expiresAt - Math.min(refreshAheadNanos, lifetime / 2);
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+        }
+
+        boolean shouldRefresh(long now) {
+            return refreshAt != Long.MAX_VALUE && now - refreshAt >= 0;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Streams a request body from a {@code ReadableByteChannel} straight to the connection,
+ * in constant memory. When the length is unknown the body is sent with chunked transfer encoding.
+ *
+ * @since 1.3.0
+ */
+public class ChannelEntity extends AbstractHttpEntity {
+
+    public final static int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final long length;
+
+    /**
+     * Creates a new entity
+     *
+     * @param channel channel to read the body from, it is closed after the body is written
+     * @param length length of the body or -1 if unknown
+     */
+    public ChannelEntity(ReadableByteChannel channel, long length) {
+        if(channel == null) {
+            throw new IllegalArgumentException("Channel may not be null");
+        }
+        this.channel = channel;
+        this.length = length;
+        setChunked(length < 0);
+    }
+
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    public long getContentLength() {
+        return length;
+    }
+
+    public InputStream getContent() throws IOException {
+        return Channels.newInputStream(channel);
+    }
+
+    public void writeTo(OutputStream outstream) throws IOException {
+        if(outstream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        try {
+            copy(channel, outstream, length);
+        } finally {
+            channel.close();
+        }
+    }
+
+    public boolean isStreaming() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Copies {@code length} bytes from the channel to the stream, or everything if the length is negative
+     *
+     * @throws IOException if the channel ends before {@code length} bytes, which the declared length already promised
+     */
+    static void copy(ReadableByteChannel channel, OutputStream outstream, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (length < 0 ? BUFFER_SIZE : Math.min(BUFFER_SIZE, Math.max(1, length))));
+        long remaining = length;
+        int read;
+        while(remaining != 0) {
+            if(remaining > 0 && remaining < buffer.capacity()) {
+                buffer.limit((int) remaining);
+            }
+            if((read = channel.read(buffer)) == -1) {
+                if(remaining > 0) {
+                    throw new IOException("Premature end of body: expected " + length + ", sent " + (length - remaining));
+                }
+                break;
+            }
+            outstream.write(buffer.array(), 0, read);
+            buffer.clear();
+            if(remaining > 0) {
+                remaining -= read;
+            }
+        }
+        outstream.flush();
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive concurrency limiter, one limit per route.
+ * <p>
+ * Limits follow an additive increase / multiplicative decrease (AIMD) policy:
+ * each successful request grows the limit by {@code 1 / limit}, so it grows by about
+ * one per round of requests, and each dropped request (error, overload status or a
+ * latency above {@code latencyTolerance} times the route's minimum observed latency)
+ * multiplies it by {@code backoffRatio}. Requests over the current limit are refused
+ * right away instead of queueing behind a degraded backend.
+ * <p>
+ * The same instance can be shared by any number of {@code EasyHttpClient}s.
+ *
+ * @since 1.3.0
+ */
+public class ConcurrencyLimiter {
+
+    public final static int DEFAULT_INITIAL_LIMIT = 10;
+    public final static int DEFAULT_MIN_LIMIT = 1;
+    public final static double DEFAULT_BACKOFF_RATIO = 0.9;
+    public final static double DEFAULT_LATENCY_TOLERANCE = 2.0;
+    public final static int DEFAULT_MIN_LATENCY_WINDOW = 1000;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private double backoffRatio;
+    private double latencyTolerance;
+    private int minLatencyWindow;
+    private final ConcurrentMap<String, Route> routes;
+
+    /**
+     * Creates a limiter with limits adapting between {@link #DEFAULT_MIN_LIMIT} and {@code maxLimit}
+     *
+     * @param maxLimit upper bound of the limit for each route, usually the pool size
+     */
+    public ConcurrencyLimiter(int maxLimit) {
+        this(Math.min(DEFAULT_INITIAL_LIMIT, maxLimit), DEFAULT_MIN_LIMIT, maxLimit);
+    }
+
+    /**
+     * Creates a limiter
+     *
+     * @param initialLimit limit of a route before any sample
+     * @param minLimit lower bound of the limit
+     * @param maxLimit upper bound of the limit
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if(minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid limits: initial=" + initialLimit + ", min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = DEFAULT_BACKOFF_RATIO;
+        this.latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+        this.minLatencyWindow = DEFAULT_MIN_LATENCY_WINDOW;
+        this.routes = new ConcurrentHashMap<String, Route>();
+    }
+
+    /**
+     * Acquires a slot for a request on the route if it is under its current limit
+     *
+     * @param route route key, see {@link #keyFor(java.net.URI)}
+     * @return the permit to be released when the request completes or null if the limit was reached
+     */
+    public Permit tryAcquire(String route) {
+        Route r = route(route);
+        while(true) {
+            int inFlight = r.inFlight.get();
+            if(inFlight >= (int) r.getLimit()) {
+                return null;
+            }
+            if(r.inFlight.compareAndSet(inFlight, inFlight + 1)) {
+                return new Permit(r);
+            }
+        }
+    }
+
+    /**
+     * Returns the current limit of a route
+     *
+     * @param route route key
+     * @return current limit
+     */
+    public int getLimit(String route) {
+        return (int) route(route).getLimit();
+    }
+
+    /**
+     * Returns the requests currently in flight on a route
+     *
+     * @param route route key
+     * @return requests in flight
+     */
+    public int getInFlight(String route) {
+        return route(route).inFlight.get();
+    }
+
+    /**
+     * Sets the ratio the limit is multiplied by when a request is dropped
+     *
+     * @param backoffRatio ratio between 0 and 1
+     * @return own instance for chaining
+     */
+    public ConcurrencyLimiter setBackoffRatio(double backoffRatio) {
+        if(backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1: " + backoffRatio);
+        }
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * Sets how many times slower than the minimum observed latency a response may be before
+     * it is taken as a sign of congestion. 0 disables the latency check, leaving only errors.
+     *
+     * @param latencyTolerance latency tolerance ratio
+     * @return own instance for chaining
+     */
+    public ConcurrencyLimiter setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+        return this;
+    }
+
+    /**
+     * Sets after how many samples the minimum latency is forgotten, so the baseline follows
+     * backends whose latency changed permanently
+     *
+     * @param minLatencyWindow samples in the window, at least 1
+     * @return own instance for chaining
+     */
+    public ConcurrencyLimiter setMinLatencyWindow(int minLatencyWindow) {
+        if(minLatencyWindow < 1) {
+            throw new IllegalArgumentException("minLatencyWindow must be at least 1: " + minLatencyWindow);
+        }
+        this.minLatencyWindow = minLatencyWindow;
+        return this;
+    }
+
+    /**
+     * Builds the default route key for an URI, in the format scheme://host:port
+     *
+     * @param uri URI of the request
+     * @return route key
+     */
+    public static String keyFor(URI uri) {
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ENGLISH);
+        return scheme + "://" + RateLimiter.keyFor(uri);
+    }
+
+    private Route route(String key) {
+        Route route = routes.get(key);
+        if(route == null) {
+            route = new Route(initialLimit);
+            Route existing = routes.putIfAbsent(key, route);
+            if(existing != null) {
+                route = existing;
+            }
+        }
+        return route;
+    }
+
+    private class Route {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong limit;
+        private final AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicInteger samples = new AtomicInteger();
+
+        Route(double limit) {
+            this.limit = new AtomicLong(Double.doubleToLongBits(limit));
+        }
+
+        double getLimit() {
+            return Double.longBitsToDouble(limit.get());
+        }
+
+        void onSample(long latency, boolean dropped) {
+            if(!dropped && latencyTolerance > 0) {
+                if(samples.incrementAndGet() % minLatencyWindow == 0) {
+                    minLatency.set(latency);
+                }
+                long min = minLatency.get();
+                while(latency < min && !minLatency.compareAndSet(min, latency)) {
+                    min = minLatency.get();
+                }
+                dropped = min != Long.MAX_VALUE && latency > min * latencyTolerance;
+            }
+
+            while(true) {
+                long bits = limit.get();
+                double current = Double.longBitsToDouble(bits);
+                double next = dropped ? Math.max(minLimit, current * backoffRatio) : Math.min(maxLimit, current + 1.0 / current);
+                if(next == current || limit.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Slot held by a request in flight. Must be released exactly once with
+     * {@link #onSuccess()}, {@link #onDropped()} or {@link #onIgnore()}.
+     */
+    public class Permit {
+
+        private final Route route;
+        private final long start;
+        private boolean released;
+
+        private Permit(Route route) {
+            this.route = route;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Releases the slot, feeding the request latency to the limit
+         */
+        public void onSuccess() {
+            release(false, true);
+        }
+
+        /**
+         * Releases the slot, signaling an overloaded route
+         */
+        public void onDropped() {
+            release(true, true);
+        }
+
+        /**
+         * Releases the slot without affecting the limit
+         */
+        public void onIgnore() {
+            release(false, false);
+        }
+
+        private void release(boolean dropped, boolean sample) {
+            if(released) {
+                return;
+            }
+            released = true;
+            route.inFlight.decrementAndGet();
+            if(sample) {
+                route.onSample(System.nanoTime() - start, dropped);
+            }
+        }
+    }
+
+}
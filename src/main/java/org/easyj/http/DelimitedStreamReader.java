@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Reads delimited records from a long-lived stream, such as newline delimited json
+ * sent over a chunked response, one record at a time as they arrive.
+ * <p>
+ * Only the record being read is kept in memory, bounded by {@code maxRecordSize}.
+ * <pre>
+ * client.get(uri);
+ * DelimitedStreamReader reader = new DelimitedStreamReader(client.getResponse().getEntity().getContent(), "\n");
+ * String record;
+ * while((record = reader.readString()) != null) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @since 1.3.0
+ */
+public class DelimitedStreamReader implements Closeable {
+
+    public final static int DEFAULT_MAX_RECORD_SIZE = 1024 * 1024;
+
+    private final static int BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private byte[] record;
+    private int maxRecordSize;
+
+    /**
+     * Creates a reader of records delimited by an UTF-8 string
+     *
+     * @param in stream to read
+     * @param delimiter record delimiter
+     */
+    public DelimitedStreamReader(InputStream in, String delimiter) {
+        this(in, utf8(delimiter));
+    }
+
+    /**
+     * Creates a reader of records delimited by a byte sequence
+     *
+     * @param in stream to read
+     * @param delimiter record delimiter
+     */
+    public DelimitedStreamReader(InputStream in, byte[] delimiter) {
+        if(in == null) {
+            throw new IllegalArgumentException("Input stream may not be null");
+        }
+        if(delimiter == null || delimiter.length == 0) {
+            throw new IllegalArgumentException("Delimiter may not be empty");
+        }
+        this.in = in;
+        this.delimiter = delimiter.clone();
+        this.buffer = new byte[BUFFER_SIZE];
+        this.record = new byte[256];
+        this.maxRecordSize = DEFAULT_MAX_RECORD_SIZE;
+    }
+
+    /**
+     * Sets the maximum size of a record, protecting against streams without delimiters
+     *
+     * @param maxRecordSize maximum record size in bytes
+     * @return own instance for chaining
+     */
+    public DelimitedStreamReader setMaxRecordSize(int maxRecordSize) {
+        this.maxRecordSize = maxRecordSize;
+        return this;
+    }
+
+    /**
+     * Reads the next record, blocking until its delimiter or the end of the stream arrives
+     *
+     * @return the record without its delimiter or null at the end of the stream
+     * @throws IOException if reading fails or the record is larger than the maximum
+     */
+    public byte[] read() throws IOException {
+        int length = 0;
+        byte last = delimiter[delimiter.length - 1];
+        while(true) {
+            if(position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if(limit == -1) {
+                    limit = 0;
+                    return length == 0 ? null : copy(length);
+                }
+            }
+
+            byte b = buffer[position++];
+            if(length == record.length) {
+                if(length >= maxRecordSize + delimiter.length) {
+                    throw new IOException("Record larger than " + maxRecordSize + " bytes");
+                }
+                byte[] grown = new byte[Math.min(record.length * 2, maxRecordSize + delimiter.length)];
+                System.arraycopy(record, 0, grown, 0, length);
+                record = grown;
+            }
+            record[length++] = b;
+            if(b == last && endsWithDelimiter(length)) {
+                return copy(length - delimiter.length);
+            }
+        }
+    }
+
+    /**
+     * Reads the next record as an UTF-8 string
+     *
+     * @return the record without its delimiter or null at the end of the stream
+     * @throws IOException if reading fails or the record is larger than the maximum
+     */
+    public String readString() throws IOException {
+        byte[] bytes = read();
+        return bytes == null ? null : new String(bytes, "UTF-8");
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean endsWithDelimiter(int length) {
+        if(length < delimiter.length) {
+            return false;
+        }
+        for(int i = 0, j = length - delimiter.length; i < delimiter.length; i++, j++) {
+            if(record[j] != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] copy(int length) {
+        byte[] bytes = new byte[length];
+        System.arraycopy(record, 0, bytes, 0, length);
+        return bytes;
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch(UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
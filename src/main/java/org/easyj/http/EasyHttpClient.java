@@ -16,24 +16,36 @@
 
 package org.easyj.http;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpRequest;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
-import org.apache.http.ProtocolException;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
@@ -43,13 +55,16 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpTrace;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.client.DefaultRedirectStrategy;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,16 +79,49 @@ public class EasyHttpClient {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private HttpClient client;
+    private HttpTransport transport;
     private HttpRequestBase method;
     private HttpResponse response;
     private Map<String, Object> requestHeaders;
+    private Header[] defaultHeaders;
     private Map<String, Object> parameters;
-    private List<Integer> ignoreRedirectStatuses;
+    private BitSet ignoreRedirectStatuses;
     private boolean ignoreRedirect;
+    private RedirectCache redirectCache;
+    private Authenticator authenticator;
+    private HttpHost authenticatorOrigin;
+    private boolean crossOrigin;
     private HttpEntity entity;
+    private List<MultipartEntity.Part> parts;
     private String uri;
-    private ThreadSafeClientConnManager connManager;
+    private RateLimiter rateLimiter;
+    private String rateLimitKey;
+    private long rateLimitWait;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private ConcurrencyLimiter.Permit concurrencyPermit;
+    private boolean concurrencyDropped;
+    private PriorityBulkhead bulkhead;
+    private Priority priority;
+    private PriorityBulkhead admittedBulkhead;
+    private Priority admittedPriority;
+    private Tracer tracer;
+    private Span span;
+    private AccessLog accessLog;
+    private AccessLog requestLog;
+    private HttpStats stats;
+    private HttpStats requestStats;
+    private long requestBytes;
+    private long receivedBytes;
+    private long maxResponseSize;
+    private long responseMemoryThreshold;
+    private long maxStringSize;
+    private String requestMethod;
+    private String requestUri;
+    private long requestStart;
+    private long executeNanos;
+    private Timeouts timeouts;
+    private Timeouts requestTimeouts;
+    private RequestDeadline deadline;
 
     private Throwable exception;
     private String message;
@@ -81,39 +129,55 @@ public class EasyHttpClient {
     private int maxConnections;
     
     public final static int DEFAULT_MAX_CONNECTIONS = 30;
+    public final static long DEFAULT_PREWARM_TIMEOUT = 10000;
+    public final static long DEFAULT_RESPONSE_MEMORY_THRESHOLD = 1024 * 1024;
+    public final static long DEFAULT_MAX_STRING_SIZE = 16 * 1024 * 1024;
+
+    private final static Header DEFAULT_ACCEPT = new BasicHeader("Accept", "application/json");
     
 
     /**
      * Creates a new instance of EasyHttpClient wrapping the HttpClient and Method in the same class.
+     * Every route may use the whole pool.
      */
     public EasyHttpClient(int maxConnections) {
+        this(maxConnections, maxConnections);
+    }
+
+    /**
+     * Creates a new instance of EasyHttpClient wrapping the HttpClient and Method in the same class.
+     *
+     * @param maxConnections maximum connections in the pool
+     * @param maxConnectionsPerRoute maximum connections in the pool to the same route
+     */
+    public EasyHttpClient(int maxConnections, int maxConnectionsPerRoute) {
+        this(new ApacheHttpTransport(maxConnections, maxConnectionsPerRoute));
         this.maxConnections = maxConnections;
-        connManager = new ThreadSafeClientConnManager();
-        connManager.setMaxTotal(this.maxConnections);
-        
-        client = new DefaultHttpClient(connManager);
+    }
+
+    /**
+     * Creates a new instance of EasyHttpClient running on the given transport.
+     * The transport can be shared by several clients.
+     *
+     * @param transport engine that sends the requests
+     */
+    public EasyHttpClient(HttpTransport transport) {
+        this.transport = transport;
         requestHeaders = new HashMap<String, Object>();
+        defaultHeaders = new Header[] {DEFAULT_ACCEPT};
         parameters = new HashMap<String, Object>();
-        ignoreRedirectStatuses = new ArrayList<Integer>();
+        ignoreRedirectStatuses = new BitSet();
+        redirectCache = new RedirectCache();
+        parts = new ArrayList<MultipartEntity.Part>();
         response = null;
         entity = null;
         exception = null;
         responseString = "";
-         
-        ((DefaultHttpClient) client).setRedirectStrategy(new DefaultRedirectStrategy(){
-            @Override
-            public boolean isRedirected(HttpRequest request, HttpResponse response, HttpContext context)  {
-                boolean isRedirect = false;
-                int responseCode = response.getStatusLine().getStatusCode();
-                if(!isIgnoreRedirect() && !ignoreRedirectStatuses.contains(responseCode)) {
-                    try {
-                        isRedirect = super.isRedirected(request, response, context);
-                    } catch (ProtocolException e) {}
-                }
-                
-                return isRedirect;
-            }
-        });
+        rateLimitWait = -1;
+        maxResponseSize = -1;
+        responseMemoryThreshold = DEFAULT_RESPONSE_MEMORY_THRESHOLD;
+        maxStringSize = DEFAULT_MAX_STRING_SIZE;
+        priority = Priority.INTERACTIVE;
     }
 
     public EasyHttpClient() {
@@ -172,6 +236,60 @@ public class EasyHttpClient {
         return this;
     }
 
+    /**
+     * Sets a header sent with every request of this client, unless overridden by a request header.
+     * The header is formatted once, here, and survives {@link #clear()}.
+     * By default the client sends {@code Accept: application/json}.
+     *
+     * @param headerName Header name
+     * @param headerValue Header value, formatted as headerValue.toString()
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setDefaultHeader(String headerName, Object headerValue) {
+        if(headerName != null && !headerName.isEmpty() && headerValue != null) {
+            Header[] current = defaultHeaders;
+            List<Header> headers = new ArrayList<Header>(current.length + 1);
+            for(Header header : current) {
+                if(!header.getName().equalsIgnoreCase(headerName)) {
+                    headers.add(header);
+                }
+            }
+            headers.add(new BasicHeader(headerName, headerValue.toString()));
+            defaultHeaders = headers.toArray(new Header[headers.size()]);
+        }
+        return this;
+    }
+
+    /**
+     * Removes headers sent with every request of this client
+     *
+     * @param headerNames One or more header names to be removed
+     * @return own instance for chaining
+     */
+    public EasyHttpClient removeDefaultHeaders(String... headerNames) {
+        if(headerNames != null) {
+            List<Header> headers = new ArrayList<Header>(Arrays.asList(defaultHeaders));
+            for(String headerName : headerNames) {
+                for(Iterator<Header> it = headers.iterator(); it.hasNext();) {
+                    if(it.next().getName().equalsIgnoreCase(headerName)) {
+                        it.remove();
+                    }
+                }
+            }
+            defaultHeaders = headers.toArray(new Header[headers.size()]);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the headers sent with every request of this client
+     *
+     * @return copy of the default headers
+     */
+    public Header[] getDefaultHeaders() {
+        return defaultHeaders.clone();
+    }
+
     /**
      * Adds a single parameter to the request.
      * Doesn't matter what method is going to be used.
@@ -289,6 +407,105 @@ public class EasyHttpClient {
         return this;
     }
 
+    /**
+     * Adds a file part to the request, turning it into a streaming {@code multipart/form-data} request.
+     * Parameters are sent as text fields before the file and stream parts.
+     *
+     * @param name field name
+     * @param file file to upload
+     * @param contentType content type of the file or null for {@code application/octet-stream}
+     * @return own instance for chaining
+     * @see MultipartEntity
+     */
+    public EasyHttpClient addPart(String name, File file, String contentType) {
+        return addPart(MultipartEntity.Part.file(name, file, contentType));
+    }
+
+    /**
+     * Adds a stream part to the request, turning it into a streaming {@code multipart/form-data} request.
+     * Parameters are sent as text fields before the file and stream parts.
+     *
+     * @param name field name
+     * @param content stream to upload, closed after being sent
+     * @param length length of the content or -1 if unknown
+     * @param fileName file name sent with the part
+     * @param contentType content type or null for {@code application/octet-stream}
+     * @return own instance for chaining
+     * @see MultipartEntity
+     */
+    public EasyHttpClient addPart(String name, InputStream content, long length, String fileName, String contentType) {
+        return addPart(MultipartEntity.Part.stream(name, content, length, fileName, contentType));
+    }
+
+    /**
+     * Adds a part to the request, turning it into a streaming {@code multipart/form-data} request.
+     *
+     * @param part part to add
+     * @return own instance for chaining
+     */
+    public EasyHttpClient addPart(MultipartEntity.Part part) {
+        if(part != null) {
+            parts.add(part);
+        }
+        return this;
+    }
+
+    /**
+     * Streams the request body from an {@code InputStream}, in constant memory.
+     * The stream is closed after the body is sent.
+     *
+     * @param content stream with the body
+     * @param length length of the body or -1 if unknown, to send it chunked
+     * @param contentType content type of the body or null
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setEntity(InputStream content, long length, String contentType) {
+        return setEntity(Channels.newChannel(content), length, contentType);
+    }
+
+    /**
+     * Streams the request body from a {@code ReadableByteChannel}, in constant memory.
+     * The channel is closed after the body is sent.
+     *
+     * @param content channel with the body
+     * @param length length of the body or -1 if unknown, to send it chunked
+     * @param contentType content type of the body or null
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setEntity(ReadableByteChannel content, long length, String contentType) {
+        ChannelEntity channelEntity = new ChannelEntity(content, length);
+        channelEntity.setContentType(contentType);
+        return setEntity(channelEntity);
+    }
+
+    /**
+     * Streams the request body from a file, in constant memory
+     *
+     * @param file file with the body
+     * @param contentType content type of the body or null
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setEntity(File file, String contentType) {
+        return setEntity(new FileChannelEntity(file, contentType));
+    }
+
+    /**
+     * Streams the request body from a Reactive Streams {@code Publisher}, requesting
+     * buffers only as they are written to the connection.
+     *
+     * @param content publisher of the body
+     * @param length length of the body or -1 if unknown, to send it chunked
+     * @param contentType content type of the body or null
+     * @return own instance for chaining
+     * @see SubscriberEntity
+     */
+    public EasyHttpClient setEntity(Publisher<? extends ByteBuffer> content, long length, String contentType) {
+        SubscriberEntity subscriberEntity = new SubscriberEntity(length);
+        subscriberEntity.setContentType(contentType);
+        content.subscribe(subscriberEntity);
+        return setEntity(subscriberEntity);
+    }
+
     /**
      * Removes parameters from the request.
      *
@@ -304,6 +521,24 @@ public class EasyHttpClient {
         return this;
     }
 
+    /**
+     * Prepares a request from an URI template, parsed and validated only once.
+     * The prepared request can be executed many times binding different variables.
+     * <pre>
+     * PreparedRequest items = client.prepare("GET", "https://host/api/{id}/items{?page,size}");
+     * items.execute(variables).consumeAsString();
+     * </pre>
+     *
+     * @param methodName http method name, e.g. GET
+     * @param uriTemplate RFC 6570 URI template
+     * @return prepared request bound to this client
+     * @throws IllegalArgumentException if the method is unknown or the template is invalid
+     * @see UriTemplate
+     */
+    public PreparedRequest prepare(String methodName, String uriTemplate) {
+        return new PreparedRequest(this, methodName, new UriTemplate(uriTemplate));
+    }
+
     /**
      * Executes a GET HTTP request and returns the body response as {@code String}
      *
@@ -381,8 +616,338 @@ public class EasyHttpClient {
         return execute(uri);
     }
 
+    /**
+     * Sets a rate limiter to pace outgoing requests.
+     * Permits are acquired before leasing a connection from the pool.
+     * The limiter can be shared among several clients.
+     *
+     * @param rateLimiter rate limiter to use or null to disable it
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time to wait for a rate limit permit.
+     * 0 rejects the request right away if no permit is available and a negative value waits indefinitely,
+     * which is the default.
+     *
+     * @param millis maximum wait in milliseconds
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setRateLimitWait(long millis) {
+        this.rateLimitWait = millis;
+        return this;
+    }
+
+    /**
+     * Sets a custom rate limit key instead of the request's host. Like request headers,
+     * it applies to every request until {@link #clear()}.
+     *
+     * @param rateLimitKey rate limit key
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setRateLimitKey(String rateLimitKey) {
+        this.rateLimitKey = rateLimitKey;
+        return this;
+    }
+
+    /**
+     * Sets an adaptive concurrency limiter in front of each route.
+     * Requests over the route's current limit are rejected before leasing a connection.
+     * Requests hold their slot until the response is consumed, the client is cleared
+     * or the next request is executed. The limiter can be shared among several clients.
+     *
+     * @param concurrencyLimiter concurrency limiter to use or null to disable it
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    /**
+     * Sets the bulkhead that admits requests in priority order when the pool is saturated.
+     * Requests hold their admission until the response is consumed, the client is cleared
+     * or the next request is executed, which drops the connection of a response left unread.
+     *
+     * @param bulkhead bulkhead to use or null to disable it
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setBulkhead(PriorityBulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+        return this;
+    }
+
+    /**
+     * Sets the priority class of the requests made by this client. Defaults to {@code INTERACTIVE}.
+     *
+     * @param priority priority class
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setPriority(Priority priority) {
+        if(priority != null) {
+            this.priority = priority;
+        }
+        return this;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the tracer propagating trace context headers and recording spans of sampled requests.
+     * A request's span is reported once its body is consumed, or when the client is cleared.
+     *
+     * @param tracer tracer to use or null to disable tracing
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setTracer(Tracer tracer) {
+        this.tracer = tracer;
+        return this;
+    }
+
+    /**
+     * Sets the access log recording every request, once its body is consumed or the client is cleared
+     *
+     * @param accessLog access log to use or null to disable it
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setAccessLog(AccessLog accessLog) {
+        this.accessLog = accessLog;
+        return this;
+    }
+
+    /**
+     * Sets the authenticator adding credentials to every request before it is sent.
+     * The authenticator is usually shared by all clients calling the same service.
+     * The credentials are not sent along redirects, nor to the cached target of a permanent redirect,
+     * leading to another origin. Prefer {@link #setAuthenticator(Authenticator, String)} to bind them to one origin.
+     *
+     * @param authenticator authenticator to use or null to send no credentials
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setAuthenticator(Authenticator authenticator) {
+        this.authenticator = authenticator;
+        this.authenticatorOrigin = null;
+        return this;
+    }
+
+    /**
+     * Sets the authenticator adding credentials to the requests sent to one origin only: the same scheme,
+     * host and port as the given URI. Requests to other origins are sent without credentials.
+     *
+     * @param authenticator authenticator to use or null to send no credentials
+     * @param origin absolute URI of the origin, its path is ignored
+     * @return own instance for chaining
+     * @throws IllegalArgumentException if the origin is not an absolute URI
+     */
+    public EasyHttpClient setAuthenticator(Authenticator authenticator, String origin) {
+        HttpHost host = EasyRedirectStrategy.origin(URI.create(origin));
+        if(host == null) {
+            throw new IllegalArgumentException("origin must be an absolute URI: " + origin);
+        }
+        this.authenticator = authenticator;
+        this.authenticatorOrigin = host;
+        return this;
+    }
+
+    /**
+     * Sets the cache of permanent redirects, by default one per client. The cache can be shared among several clients.
+     * Only GET and HEAD requests are redirected through the cache.
+     *
+     * @param redirectCache redirect cache to use or null to always follow redirects
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setRedirectCache(RedirectCache redirectCache) {
+        this.redirectCache = redirectCache;
+        return this;
+    }
+
+    public RedirectCache getRedirectCache() {
+        return redirectCache;
+    }
+
+    /**
+     * Sets the client-wide timeouts of the requests, see {@link Timeouts}
+     *
+     * @param timeouts default timeouts or null to use the transport's defaults
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setTimeouts(Timeouts timeouts) {
+        this.timeouts = timeouts;
+        return this;
+    }
+
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Sets request timeouts, overriding the client-wide ones they set. Like request headers,
+     * they apply to every request until {@link #clear()}.
+     *
+     * @param requestTimeouts timeouts of the requests
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setRequestTimeouts(Timeouts requestTimeouts) {
+        this.requestTimeouts = requestTimeouts;
+        return this;
+    }
+
+    /**
+     * Sets the statistics recording every request, once its body is consumed or the client is cleared.
+     * Unless set already, the statistics also watch this client's transport and redirect cache.
+     * The same statistics are usually shared by all clients of a transport.
+     *
+     * @param stats statistics to use or null to disable them
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setStats(HttpStats stats) {
+        this.stats = stats;
+        if(stats != null) {
+            stats.watch(transport, redirectCache);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the maximum size of response bodies. Responses declaring a larger {@code Content-Length} fail
+     * right away, and bodies of unknown length fail as soon as they go over it while being consumed.
+     * In both cases the request is aborted and a {@link ResponseTooLargeException} is set.
+     *
+     * @param maxResponseSize maximum size in bytes or a negative value for no limit, which is the default
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setMaxResponseSize(long maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+        return this;
+    }
+
+    /**
+     * Sets how much of a response body is buffered in memory while it is consumed,
+     * the rest is spilled to a temporary file. Defaults to {@link #DEFAULT_RESPONSE_MEMORY_THRESHOLD}.
+     *
+     * @param responseMemoryThreshold maximum bytes buffered in memory
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setResponseMemoryThreshold(long responseMemoryThreshold) {
+        this.responseMemoryThreshold = responseMemoryThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size of response bodies consumed by {@link #consumeAsString()}. A larger body
+     * is not decoded into a {@code String}: the request is aborted and a {@link ResponseTooLargeException}
+     * is set. Read such bodies with {@link #consumeBuffered()}, which spills them to disk instead.
+     * Defaults to {@link #DEFAULT_MAX_STRING_SIZE}.
+     *
+     * @param maxStringSize maximum size in bytes or a negative value for no limit
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setMaxStringSize(long maxStringSize) {
+        this.maxStringSize = maxStringSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum connections in the pool to the same route.
+     * Only applies to the {@link ApacheHttpTransport}.
+     *
+     * @param maxConnectionsPerRoute maximum connections per route
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        if(transport instanceof ApacheHttpTransport) {
+            ((ApacheHttpTransport) transport).setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the maximum connections in the pool to the route of an URI, overriding the default per route.
+     * Only applies to the {@link ApacheHttpTransport}.
+     *
+     * @param uri URI of any resource on the route
+     * @param maxConnections maximum connections for the route
+     * @return own instance for chaining
+     */
+    public EasyHttpClient setMaxConnections(String uri, int maxConnections) {
+        if(transport instanceof ApacheHttpTransport) {
+            ((ApacheHttpTransport) transport).setMaxConnections(routeOf(uri), maxConnections);
+        }
+        return this;
+    }
+
+    /**
+     * Opens connections to the route of an URI ahead of traffic, including the TLS handshake
+     * for https, and leaves them idle in the pool. Only applies to the {@link ApacheHttpTransport}.
+     * Call it at startup, after the pool is sized.
+     *
+     * @param uri URI of any resource on the route
+     * @param connections connections to have open
+     * @return connections opened, 0 if the transport does not pool connections or opening failed
+     * @see JitWarmup
+     */
+    public int prewarm(String uri, int connections) {
+        if(!(transport instanceof ApacheHttpTransport)) {
+            return 0;
+        }
+        try {
+            return ((ApacheHttpTransport) transport).prewarm(routeOf(uri), connections, DEFAULT_PREWARM_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch(IOException ex) {
+            logger.warn("Could not warm up connections to [{}]", uri);
+            setException("Could not warm up connections to [" + uri + "]", ex);
+            return 0;
+        }
+    }
+
+    private HttpRoute routeOf(String uri) {
+        URI target = URI.create(buildURI(uri));
+        boolean secure = "https".equalsIgnoreCase(target.getScheme());
+        return new HttpRoute(URIUtils.extractHost(target), null, secure);
+    }
+
     public void shutdown() {
-        client.getConnectionManager().shutdown();
+        transport.shutdown();
+    }
+
+    /**
+     * Creates a client sharing this client's transport and settings, such as its authenticator, timeouts,
+     * limiters, bulkhead, tracer, access log and statistics, with a copy of its request and default headers,
+     * request timeouts and rate limit key. Parameters and body are not copied. Used by helpers that run requests alongside
+     * the caller's own, so each of them goes through the whole execution path without touching this client.
+     *
+     * @return new client
+     */
+    EasyHttpClient fork() {
+        EasyHttpClient fork = new EasyHttpClient(transport);
+        fork.requestHeaders.putAll(requestHeaders);
+        fork.defaultHeaders = defaultHeaders;
+        fork.ignoreRedirectStatuses = (BitSet) ignoreRedirectStatuses.clone();
+        fork.ignoreRedirect = ignoreRedirect;
+        fork.redirectCache = redirectCache;
+        fork.authenticator = authenticator;
+        fork.authenticatorOrigin = authenticatorOrigin;
+        fork.rateLimiter = rateLimiter;
+        fork.rateLimitKey = rateLimitKey;
+        fork.rateLimitWait = rateLimitWait;
+        fork.concurrencyLimiter = concurrencyLimiter;
+        fork.bulkhead = bulkhead;
+        fork.priority = priority;
+        fork.tracer = tracer;
+        fork.accessLog = accessLog;
+        fork.stats = stats;
+        fork.maxResponseSize = maxResponseSize;
+        fork.responseMemoryThreshold = responseMemoryThreshold;
+        fork.maxStringSize = maxStringSize;
+        fork.timeouts = timeouts;
+        fork.requestTimeouts = requestTimeouts;
+        fork.maxConnections = maxConnections;
+        return fork;
     }
 
     /**
@@ -393,48 +958,586 @@ public class EasyHttpClient {
      * @return Wrapped response for the resource requested
      */
     protected EasyHttpClient execute(String uri) {
-
         setURI(uri);
+        return execute();
+    }
+
+    /**
+     * Executes a prepared request, skipping URI building and parsing
+     *
+     * @param request method of the request
+     * @param uri expanded URI of the request
+     * @param headers headers formatted when the request was prepared
+     * @return Wrapped response for the resource requested
+     * @see #prepare(String, String)
+     */
+    EasyHttpClient execute(HttpRequestBase request, URI uri, Header[] headers) {
+        this.method = request;
+        this.uri = uri.toString();
+        method.setURI(uri);
+        for(Header header : headers) {
+            method.addHeader(header);
+        }
+        return execute();
+    }
+
+    /**
+     * Executes the wrapped method, its URI already set, after configuring the request headers and parameters.
+     *
+     * @return Wrapped response for the resource requested
+     */
+    private EasyHttpClient execute() {
         setMethodRequestHeaders();
         setMethodParameters();
-        
-        if (!method.containsHeader("Accept")) {
-            method.addHeader("Accept", "application/json");
+        applyRedirectCache();
+
+        discardResponse();
+        releaseConcurrencyPermit(false);
+        releaseAdmission();
+        finishRequest();
+        resetResponse();
+        startTimeouts();
+        long start = startRequest();
+        if(!authenticate() || !acquireRateLimit() || !acquireAdmission()) {
+            finishRequest();
+            return this;
+        }
+        if(!acquireConcurrencyPermit()) {
+            releaseAdmission();
+            finishRequest();
+            return this;
         }
 
+        boolean dropped = true;
+        long sent = 0;
         try {
             if(method.getURI() != null) {
-                response = client.execute(method);
+                if(deadline != null && deadline.isExpired()) {
+                    throw new RequestTimeoutException(RequestTimeoutException.Kind.DEADLINE, "Deadline exceeded before sending the request", null);
+                }
+                if(start != 0) {
+                    sent = System.nanoTime();
+                    if(span != null) {
+                        span.addPhase(Span.Phase.ADMISSION, sent - start);
+                    }
+                }
+                response = transport.execute(method, createContext());
+                int status = response.getStatusLine().getStatusCode();
+                dropped = isOverloaded(status);
+                if(status == HttpStatus.SC_UNAUTHORIZED && authenticator != null) {
+                    authenticator.onUnauthorized(method);
+                }
+                HttpEntity responseEntity = response.getEntity();
+                if(maxResponseSize >= 0 && responseEntity != null && responseEntity.getContentLength() > maxResponseSize) {
+                    method.abort();
+                    throw tooLarge();
+                }
             }
         } catch (ClientProtocolException ex) {
             logger.error("Http Error while trying to connect to [{}]", method.getURI(), ex);
             setException("Http Error while trying to connect to [" + method.getURI() + "]", ex);
+        } catch (ResponseTooLargeException ex) {
+            logger.warn("{}, request aborted", ex.getMessage());
+            setException(ex.getMessage(), ex);
         } catch (IOException ex) {
-            logger.error("IO Error while trying to connect to [{}]", method.getURI(), ex);
-            setException("IO Error while trying to connect to [" + method.getURI() + "]", ex);
+            RequestTimeoutException timeout = toTimeout(ex);
+            if(timeout != null) {
+                logger.warn("{} timeout on [{}]", timeout.getKind(), method.getURI());
+                setException(timeout.getKind() + " timeout on [" + method.getURI() + "]", timeout);
+            } else {
+                logger.error("IO Error while trying to connect to [{}]", method.getURI(), ex);
+                setException("IO Error while trying to connect to [" + method.getURI() + "]", ex);
+            }
+        } finally {
+            concurrencyDropped = dropped;
+            if(sent != 0) {
+                executeNanos = System.nanoTime() - sent;
+                if(span != null) {
+                    span.addPhase(Span.Phase.EXECUTE, executeNanos);
+                }
+            }
+        }
+
+        if(response == null || response.getEntity() == null || exception != null) {
+            releaseConcurrencyPermit(true);
+            releaseAdmission();
+            finishRequest();
         }
         return this;
     }
 
+    /**
+     * Releases the connection of a previous response whose body was not consumed, before its
+     * admission is given back. The connection is dropped rather than drained, as the body may
+     * be large or never end.
+     */
+    private void discardResponse() {
+        HttpEntity previous = response == null ? null : response.getEntity();
+        if(previous == null) {
+            return;
+        }
+        try {
+            if(previous instanceof ConnectionReleaseTrigger) {
+                ((ConnectionReleaseTrigger) previous).abortConnection();
+            } else {
+                EntityUtils.consume(previous);
+            }
+        } catch (IOException ex) {
+            logger.debug("Problem releasing the previous response", ex);
+        }
+    }
+
+    /**
+     * Forgets the outcome of the previous request, so it does not leak into the current one
+     */
+    private void resetResponse() {
+        this.exception = null;
+        this.message = null;
+        this.response = null;
+        this.responseString = "";
+    }
+
+    /**
+     * Sends the current GET or HEAD request straight to the target of a cached permanent redirect, unless redirects are ignored.
+     * A target on another origin is sent without the credential headers of the request.
+     */
+    private void applyRedirectCache() {
+        crossOrigin = false;
+        if(redirectCache == null || method.getURI() == null || ignoreRedirect || !EasyRedirectStrategy.isSafe(method)
+                || ignoreRedirectStatuses.get(HttpStatus.SC_MOVED_PERMANENTLY)
+                || ignoreRedirectStatuses.get(EasyRedirectStrategy.SC_PERMANENT_REDIRECT)) {
+            return;
+        }
+        String target = redirectCache.resolve(method.getURI().toString());
+        if(target != null) {
+            logger.debug("Permanent redirect cached from [{}] to [{}]", method.getURI(), target);
+            URI source = method.getURI();
+            method.setURI(URI.create(target));
+            if(!EasyRedirectStrategy.isSameOrigin(source, URIUtils.extractHost(method.getURI()))) {
+                crossOrigin = true;
+                for(String name : EasyRedirectStrategy.CREDENTIAL_HEADERS) {
+                    method.removeHeaders(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the timeouts of the current request on its parameters and streamed body, and starts its deadline, if any
+     */
+    private void startTimeouts() {
+        Timeouts effective = requestTimeouts != null ? requestTimeouts.orElse(timeouts) : timeouts;
+        if(effective == null || method.getURI() == null) {
+            return;
+        }
+        effective.applyTo(method.getParams());
+        if(method instanceof HttpEntityEnclosingRequestBase) {
+            HttpEntity body = ((HttpEntityEnclosingRequestBase) method).getEntity();
+            if(body instanceof SubscriberEntity) {
+                ((SubscriberEntity) body).applyTimeout(effective.getRead());
+            }
+        }
+        if(effective.getDeadline() > 0) {
+            deadline = RequestDeadline.start(method, effective.getDeadline());
+        }
+    }
+
+    /**
+     * Tells whether an I/O error of the current request was caused by one of its timeouts
+     *
+     * @param ex I/O error of the current request
+     * @return the error as a timeout or null if it is not one
+     */
+    private RequestTimeoutException toTimeout(IOException ex) {
+        if(deadline != null && deadline.isExpired()) {
+            return ex instanceof RequestTimeoutException ? (RequestTimeoutException) ex
+                    : new RequestTimeoutException(RequestTimeoutException.Kind.DEADLINE, "Deadline of " + deadline.getMillis() + "ms exceeded", ex);
+        }
+        RequestTimeoutException.Kind kind = Timeouts.kindOf(ex);
+        if(kind == null) {
+            return null;
+        }
+        return ex instanceof RequestTimeoutException ? (RequestTimeoutException) ex : new RequestTimeoutException(kind, ex.getMessage(), ex);
+    }
+
+    /**
+     * Starts the span, access log entry and statistics of the current request, when enabled
+     *
+     * @return start of the request in nanoseconds or 0 if it is not timed
+     */
+    private long startRequest() {
+        if(tracer != null) {
+            span = tracer.start(method);
+        }
+        requestLog = accessLog;
+        requestStats = stats;
+        receivedBytes = -1;
+        if(requestStats != null) {
+            HttpEntity requestEntity = method instanceof HttpEntityEnclosingRequestBase ? ((HttpEntityEnclosingRequestBase) method).getEntity() : null;
+            requestBytes = requestEntity == null ? -1 : requestEntity.getContentLength();
+        }
+        executeNanos = 0;
+        if(requestLog != null) {
+            requestMethod = method.getMethod();
+            requestUri = uri;
+        }
+        requestStart = span != null || requestLog != null ? System.nanoTime() : 0;
+        return requestStart;
+    }
+
+    /**
+     * Reports the span, writes the access log entry and records the statistics of the current request, if any
+     */
+    private void finishRequest() {
+        if(deadline != null) {
+            deadline.cancel();
+            deadline = null;
+        }
+        int status = response == null ? 0 : response.getStatusLine().getStatusCode();
+        if(span != null) {
+            Span finished = span;
+            span = null;
+            finished.finish(status, exception);
+        }
+        HttpEntity responseEntity = response == null ? null : response.getEntity();
+        long received = receivedBytes >= 0 || responseEntity == null ? receivedBytes : responseEntity.getContentLength();
+        if(requestStats != null) {
+            HttpStats counted = requestStats;
+            requestStats = null;
+            counted.record(status, received, requestBytes, exception);
+        }
+        if(requestLog != null) {
+            AccessLog log = requestLog;
+            requestLog = null;
+            log.log(requestMethod, requestUri, status, received,
+                    executeNanos, System.nanoTime() - requestStart, exception == null ? null : exception.getClass().getName());
+            requestMethod = null;
+            requestUri = null;
+        }
+    }
+
+    /**
+     * Creates the execution context of the current request, carrying its redirect settings
+     *
+     * @return execution context
+     */
+    protected HttpContext createContext() {
+        HttpContext context = new BasicHttpContext();
+        if(ignoreRedirect) {
+            context.setAttribute(EasyRedirectStrategy.IGNORE_REDIRECT, Boolean.TRUE);
+        }
+        if(!ignoreRedirectStatuses.isEmpty()) {
+            context.setAttribute(EasyRedirectStrategy.IGNORE_REDIRECT_STATUSES, ignoreRedirectStatuses);
+        }
+        if(redirectCache != null) {
+            context.setAttribute(EasyRedirectStrategy.REDIRECT_CACHE, redirectCache);
+        }
+        return context;
+    }
+
+    /**
+     * Adds the credentials of the authenticator, if any, to the current request, unless it goes to another origin
+     * than the authenticator's or than the one requested
+     *
+     * @return true if the request can proceed
+     */
+    private boolean authenticate() {
+        if(authenticator == null || method.getURI() == null) {
+            return true;
+        }
+        if(authenticatorOrigin != null ? !EasyRedirectStrategy.isSameOrigin(method.getURI(), authenticatorOrigin) : crossOrigin) {
+            return true;
+        }
+
+        try {
+            authenticator.authenticate(method);
+        } catch (IOException ex) {
+            logger.error("Could not authenticate request to [{}]", method.getURI(), ex);
+            setException("Could not authenticate request to [" + method.getURI() + "]", ex);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Acquires a permit from the rate limiter, if any, for the current request
+     *
+     * @return true if the request can proceed
+     */
+    private boolean acquireRateLimit() {
+        if(rateLimiter == null || method.getURI() == null) {
+            return true;
+        }
+
+        String key = rateLimitKey != null ? rateLimitKey : RateLimiter.keyFor(method.getURI());
+        try {
+            if(rateLimitWait < 0) {
+                rateLimiter.acquire(key);
+            } else if(!rateLimiter.tryAcquire(key, rateLimitWait, TimeUnit.MILLISECONDS)) {
+                logger.warn("Rate limit exceeded for [{}], request to [{}] rejected", key, method.getURI());
+                setException("Rate limit exceeded for [" + key + "]", new RequestRejectedException("Rate limit exceeded for [" + key + "]"));
+                return false;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            setException("Interrupted while waiting for rate limit on [" + key + "]", ex);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the bulkhead, if any, to admit the current request with the client's priority
+     *
+     * @return true if the request can proceed
+     */
+    private boolean acquireAdmission() {
+        if(bulkhead == null || method.getURI() == null) {
+            return true;
+        }
+
+        try {
+            if(!bulkhead.acquire(priority)) {
+                logger.warn("Timed out waiting for {} admission, request to [{}] rejected", priority, method.getURI());
+                setException("Timed out waiting for " + priority + " admission", new RequestRejectedException("Timed out waiting for " + priority + " admission"));
+                return false;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            setException("Interrupted while waiting for " + priority + " admission", ex);
+            return false;
+        }
+        admittedBulkhead = bulkhead;
+        admittedPriority = priority;
+        return true;
+    }
+
+    /**
+     * Gives back the bulkhead admission held by the current request, if any
+     */
+    private void releaseAdmission() {
+        if(admittedBulkhead != null) {
+            admittedBulkhead.release(admittedPriority);
+            admittedBulkhead = null;
+            admittedPriority = null;
+        }
+    }
+
+    /**
+     * Acquires a slot from the concurrency limiter, if any, for the current request's route
+     *
+     * @return true if the request can proceed
+     */
+    private boolean acquireConcurrencyPermit() {
+        if(concurrencyLimiter == null || method.getURI() == null) {
+            return true;
+        }
+
+        String route = ConcurrencyLimiter.keyFor(method.getURI());
+        concurrencyPermit = concurrencyLimiter.tryAcquire(route);
+        if(concurrencyPermit == null) {
+            logger.warn("Concurrency limit reached for [{}], request to [{}] rejected", route, method.getURI());
+            setException("Concurrency limit reached for [" + route + "]", new RequestRejectedException("Concurrency limit reached for [" + route + "]"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the concurrency limiter slot held by the current request, if any.
+     * Like the bulkhead admission, the slot is held until the response body is consumed,
+     * as the connection stays leased until then.
+     *
+     * @param completed whether the request ended, its body consumed or not expected; otherwise the caller
+     *        held the response, so its latency only tells about the caller and is not fed to the limit
+     */
+    private void releaseConcurrencyPermit(boolean completed) {
+        if(concurrencyPermit != null) {
+            if(concurrencyDropped || (completed && exception != null)) {
+                concurrencyPermit.onDropped();
+            } else if(completed) {
+                concurrencyPermit.onSuccess();
+            } else {
+                concurrencyPermit.onIgnore();
+            }
+            concurrencyPermit = null;
+            concurrencyDropped = false;
+        }
+    }
+
+    /**
+     * Whether a response status means the server is overloaded or failing
+     *
+     * @param status http response status
+     * @return true for 429 and 5xx statuses
+     */
+    protected boolean isOverloaded(int status) {
+        return status == 429 || status >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
     /**
      * Returns the http response body of the method executed.
+     * The body is buffered in memory up to the response memory threshold and in a temporary file above it,
+     * and can not be larger than the maximum response size nor the maximum string size.
      *
      * @return http response content as {@code String}
+     * @see #setMaxResponseSize(long)
+     * @see #setMaxStringSize(long)
+     * @see #setResponseMemoryThreshold(long)
      */
     public String consumeAsString() {
-        HttpEntity responseEntity = response.getEntity();
-        if(responseEntity != null && responseString.isEmpty()) {
+        HttpEntity responseEntity = response == null ? null : response.getEntity();
+        if(responseEntity != null && responseString.isEmpty() && exception == null) {
+            long start = span == null ? 0 : System.nanoTime();
             try {
-                responseString = EntityUtils.toString(responseEntity);
-                responseEntity.getContent().close();
+                if(maxStringSize >= 0 && responseEntity.getContentLength() > maxStringSize) {
+                    method.abort();
+                    throw stringTooLarge();
+                }
+                responseString = decode(buffer(responseEntity, maxStringSize), responseEntity);
             } catch(IOException ex) {
-                logger.error("Problem consuming entity as String: [{}]", this.uri);
+                consumeFailed(ex, "String");
             } catch(IllegalArgumentException ex) {
                 logger.error("Problem consuming entity as String: [{}] - Entity null or too big", this.uri);
+                setException("Entity of [" + this.uri + "] null or too big to consume as String", ex);
+            } finally {
+                consumed(start);
             }
         }
         return responseString;
     }
+
+    /**
+     * Reads the whole http response body of the method executed and releases its connection.
+     * The body is buffered in memory up to the response memory threshold and in a temporary file above it,
+     * and can not be larger than the maximum response size. The body can only be consumed once.
+     *
+     * @return http response content, to be closed by the caller, or null if there is none or it could not be read
+     * @see #setMaxResponseSize(long)
+     * @see #setResponseMemoryThreshold(long)
+     */
+    public InputStream consumeBuffered() {
+        HttpEntity responseEntity = response == null ? null : response.getEntity();
+        if(responseEntity == null || exception != null) {
+            return null;
+        }
+        long start = span == null ? 0 : System.nanoTime();
+        try {
+            return buffer(responseEntity, -1).getInputStream();
+        } catch(IOException ex) {
+            consumeFailed(ex, "buffer");
+            return null;
+        } finally {
+            consumed(start);
+        }
+    }
+
+    /**
+     * Reads a response body into a buffer, failing as soon as it goes over the maximum response size
+     *
+     * @param responseEntity response body
+     * @param maxStringSize maximum string size, or a negative value if the body is not decoded into a string
+     */
+    private SpillBuffer buffer(HttpEntity responseEntity, long maxStringSize) throws IOException {
+        SpillBuffer buffer = new SpillBuffer(responseMemoryThreshold);
+        InputStream in = responseEntity.getContent();
+        try {
+            byte[] chunk = new byte[8192];
+            int read;
+            while((read = in.read(chunk)) != -1) {
+                if(maxResponseSize >= 0 && buffer.getLength() + read > maxResponseSize) {
+                    method.abort();
+                    throw tooLarge();
+                }
+                if(maxStringSize >= 0 && buffer.getLength() + read > maxStringSize) {
+                    method.abort();
+                    throw stringTooLarge();
+                }
+                buffer.write(chunk, 0, read);
+            }
+            buffer.close();
+            in.close();
+        } catch(IOException ex) {
+            buffer.delete();
+            try {
+                in.close();
+            } catch (IOException closing) {
+                //silent ignore, the request failed already
+            }
+            throw ex;
+        }
+        receivedBytes = buffer.getLength();
+        return buffer;
+    }
+
+    private String decode(SpillBuffer buffer, HttpEntity responseEntity) throws IOException {
+        if(buffer.getLength() > Integer.MAX_VALUE) {
+            buffer.delete();
+            throw new IllegalArgumentException("HTTP entity too large to be buffered in memory");
+        }
+        Reader reader = new InputStreamReader(buffer.getInputStream(), charsetOf(responseEntity));
+        try {
+            StringBuilder text = new StringBuilder((int) Math.min(buffer.getLength(), 8192));
+            char[] chars = new char[4096];
+            int read;
+            while((read = reader.read(chars)) != -1) {
+                text.append(chars, 0, read);
+            }
+            return text.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Charset of a response body, defaulting to UTF-8 for json and ISO-8859-1 otherwise,
+     * like {@code EntityUtils.toString} does since HttpClient 4.4
+     */
+    private String charsetOf(HttpEntity responseEntity) {
+        String charset = EntityUtils.getContentCharSet(responseEntity);
+        if(charset == null) {
+            Header contentType = responseEntity.getContentType();
+            boolean json = contentType != null && contentType.getValue().toLowerCase(Locale.ENGLISH).startsWith("application/json");
+            charset = json ? "UTF-8" : HTTP.DEFAULT_CONTENT_CHARSET;
+        }
+        return charset;
+    }
+
+    private ResponseTooLargeException tooLarge() {
+        return new ResponseTooLargeException(maxResponseSize, "Response of [" + method.getURI() + "] is over the maximum size of " + maxResponseSize + " bytes");
+    }
+
+    private ResponseTooLargeException stringTooLarge() {
+        return new ResponseTooLargeException(maxStringSize, "Response of [" + method.getURI() + "] is over the maximum string size of "
+                + maxStringSize + " bytes, read it with consumeBuffered()");
+    }
+
+    private void consumeFailed(IOException ex, String as) {
+        RequestTimeoutException timeout = toTimeout(ex);
+        if(timeout != null) {
+            logger.warn("{} timeout consuming entity as {}: [{}]", timeout.getKind(), as, this.uri);
+            setException(timeout.getKind() + " timeout consuming entity of [" + this.uri + "]", timeout);
+        } else if(ex instanceof ResponseTooLargeException) {
+            logger.warn("{}, request aborted", ex.getMessage());
+            setException(ex.getMessage(), ex);
+        } else {
+            logger.error("Problem consuming entity as {}: [{}]", as, this.uri);
+        }
+    }
+
+    /**
+     * Ends the current request once its body was consumed
+     *
+     * @param start start of the consumption in nanoseconds or 0 if it is not timed
+     */
+    private void consumed(long start) {
+        releaseConcurrencyPermit(true);
+        releaseAdmission();
+        if(span != null) {
+            span.addPhase(Span.Phase.CONSUME, System.nanoTime() - start);
+        }
+        finishRequest();
+    }
     
     /**
      * Sets the statuses not to redirect
@@ -442,7 +1545,7 @@ public class EasyHttpClient {
      * @param status HttpStatus to ignore redirect
      */
     public EasyHttpClient ignoreRedirect(int status) {
-        ignoreRedirectStatuses.add(status);
+        ignoreRedirectStatuses.set(status);
         return this;
     }
 
@@ -498,14 +1601,21 @@ public class EasyHttpClient {
     }
 
     /**
-     * Sets request headers map on actual method implementation for execution
+     * Sets request headers map on actual method implementation for execution.
+     * Request headers replace headers of the same name already on the method, such as those of a prepared request.
      */
     protected void setMethodRequestHeaders() {
         Object header;
-        for(String headerName : requestHeaders.keySet()) {
-            header = requestHeaders.get(headerName);
+        for(Map.Entry<String, Object> requestHeader : requestHeaders.entrySet()) {
+            header = requestHeader.getValue();
             if(header != null) {
-                method.addHeader(headerName, header.toString());
+                method.setHeader(requestHeader.getKey(), header.toString());
+            }
+        }
+
+        for(Header defaultHeader : defaultHeaders) {
+            if(!method.containsHeader(defaultHeader.getName())) {
+                method.addHeader(defaultHeader);
             }
         }
     }
@@ -520,8 +1630,10 @@ public class EasyHttpClient {
             try {
                 if(this.entity != null) {
                     req.setEntity(this.entity);
+                } else if(!this.parts.isEmpty()) {
+                    req.setEntity(new MultipartEntity(prepareParameters(), parts));
                 } else {
-                    req.setEntity(new UrlEncodedFormEntity(prepareParameters(), HTTP.UTF_8));
+                    req.setEntity(new FormEntity(prepareParameters(), HTTP.UTF_8));
                 }
             } catch (UnsupportedEncodingException ex) {
                 logger.error("Encoding Not Supported while setting entity parameters: ", ex);
@@ -570,11 +1682,22 @@ public class EasyHttpClient {
 
     /**
      * Returns the wrapped {@code HttpClient}
-     * @return the {@code HttpClient} instance
+     * @return the {@code HttpClient} instance or null if not running on the {@link ApacheHttpTransport}
      * @see org.apache.commons.httpclient.HttpClient
      */
     public HttpClient getHttpClient() {
-        return this.client;
+        if(transport instanceof ApacheHttpTransport) {
+            return ((ApacheHttpTransport) transport).getHttpClient();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the transport the requests run on
+     * @return the {@code HttpTransport} instance
+     */
+    public HttpTransport getTransport() {
+        return this.transport;
     }
 
     /**
@@ -595,6 +1718,20 @@ public class EasyHttpClient {
         return this.response;
     }
 
+    /**
+     * Returns the body of the response as a Reactive Streams {@code Publisher}, read from the
+     * connection as the subscriber requests it. Cancelling the subscription aborts the request.
+     * As with {@link #getResponse()}, the bulkhead admission is held until {@link #clear()}.
+     *
+     * @param executor executor running the blocking reads, null to read on the requesting thread
+     * @return publisher of the response body
+     * @see ResponsePublisher
+     */
+    public ResponsePublisher publishResponse(Executor executor) {
+        HttpEntity responseEntity = response == null ? null : response.getEntity();
+        return new ResponsePublisher(responseEntity, executor).setRequest(method);
+    }
+
     /**
      * Transforms a {@code Map<String, Object>} into query string format.
      *
@@ -662,12 +1799,15 @@ public class EasyHttpClient {
 
     /**
      * Gets the http response status returned by the execution of a method.
+     * Timeouts are reported as 504 and other errors as 500.
      *
      * @return http response status
      */
     public int getStatus() {
         int statusCode = -1;
-        if(exception != null) {
+        if(exception instanceof RequestTimeoutException) {
+            statusCode = HttpStatus.SC_GATEWAY_TIMEOUT;
+        } else if(exception != null) {
             statusCode = HttpStatus.SC_INTERNAL_SERVER_ERROR;
         } else if(response != null) {
             statusCode = response.getStatusLine().getStatusCode();
@@ -726,13 +1866,17 @@ public class EasyHttpClient {
      * Clears client leaving it like a new instance
      */
     public void clear() {
+        finishRequest();
         this.requestHeaders.clear();
         this.parameters.clear();
         this.method = null;
         this.message = null;
         this.exception = null;
         this.entity = null;
+        this.parts.clear();
         this.uri = null;
+        this.rateLimitKey = null;
+        this.requestTimeouts = null;
         this.responseString = "";
         if(this.response != null && this.response.getEntity() != null) {
             try {
@@ -742,6 +1886,8 @@ public class EasyHttpClient {
             }
         }
         this.response = null;
+        releaseConcurrencyPermit(false);
+        releaseAdmission();
     }
 
 }
\ No newline at end of file
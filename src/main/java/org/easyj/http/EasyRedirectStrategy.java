@@ -0,0 +1,192 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Locale;
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolException;
+import org.apache.http.auth.AUTH;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.cookie.SM;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Redirect strategy shared by all transports. The redirect settings of each request are read from
+ * the execution context, so clients with different settings can share the same transport.
+ * <p>
+ * 308 is handled here like 301, so it does not depend on the httpclient version in use: only GET and
+ * HEAD requests are redirected, and only their permanent redirects are recorded in the {@link RedirectCache}.
+ * <p>
+ * Credentials never follow a redirect to another origin: the transports remove the {@link #CREDENTIAL_HEADERS}
+ * of the original request from every request sent to an origin other than its own.
+ *
+ * @since 1.3.0
+ */
+public class EasyRedirectStrategy extends DefaultRedirectStrategy {
+
+    /**
+     * Context attribute with a {@code Boolean} to ignore all redirects
+     */
+    public final static String IGNORE_REDIRECT = "easyj.redirect.ignore";
+
+    /**
+     * Context attribute with a {@code BitSet}, or a {@code Collection<Integer>}, of statuses not to redirect
+     */
+    public final static String IGNORE_REDIRECT_STATUSES = "easyj.redirect.ignore-statuses";
+
+    /**
+     * Context attribute with the {@link RedirectCache} recording permanent redirects
+     */
+    public final static String REDIRECT_CACHE = "easyj.redirect.cache";
+
+    public final static int SC_PERMANENT_REDIRECT = 308;
+
+    /**
+     * Headers carrying credentials, only sent to the origin of the request they were set on
+     */
+    public final static String[] CREDENTIAL_HEADERS = {AUTH.WWW_AUTH_RESP, SM.COOKIE};
+
+    @Override
+    public boolean isRedirected(HttpRequest request, HttpResponse response, HttpContext context) {
+        boolean isRedirect = false;
+        int responseCode = response.getStatusLine().getStatusCode();
+        if(!isIgnoreRedirect(context) && !isIgnoreRedirectStatus(context, responseCode)) {
+            if(responseCode == SC_PERMANENT_REDIRECT) {
+                isRedirect = isSafe(request) && response.containsHeader("Location");
+            } else try {
+                isRedirect = super.isRedirected(request, response, context);
+            } catch (ProtocolException e) {}
+        }
+
+        return isRedirect;
+    }
+
+    @Override
+    public HttpUriRequest getRedirect(HttpRequest request, HttpResponse response, HttpContext context) throws ProtocolException {
+        HttpUriRequest redirect = super.getRedirect(request, response, context);
+        int status = response.getStatusLine().getStatusCode();
+        Object cache = context == null ? null : context.getAttribute(REDIRECT_CACHE);
+        if(cache instanceof RedirectCache && isSafe(request) && (status == HttpStatus.SC_MOVED_PERMANENTLY || status == SC_PERMANENT_REDIRECT)) {
+            URI source = sourceURI(request, context);
+            if(source != null) {
+                ((RedirectCache) cache).put(source.toString(), redirect.getURI().toString());
+            }
+        }
+        return redirect;
+    }
+
+    /**
+     * Absolute URI of a request, which Apache HttpClient rewrites relative to its target host
+     */
+    private URI sourceURI(HttpRequest request, HttpContext context) {
+        try {
+            URI uri = request instanceof HttpUriRequest ? ((HttpUriRequest) request).getURI() : new URI(request.getRequestLine().getUri());
+            if(!uri.isAbsolute()) {
+                Object target = context.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+                if(!(target instanceof HttpHost)) {
+                    return null;
+                }
+                uri = URIUtils.rewriteURI(uri, (HttpHost) target);
+            }
+            return uri;
+        } catch (URISyntaxException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the request is a GET or a HEAD, the only methods whose permanent redirects are followed and cached
+     */
+    static boolean isSafe(HttpRequest request) {
+        String method = request.getRequestLine().getMethod();
+        return HttpGet.METHOD_NAME.equalsIgnoreCase(method) || HttpHead.METHOD_NAME.equalsIgnoreCase(method);
+    }
+
+    /**
+     * Origin of an URI: its scheme, host and port, the default port of the scheme when missing
+     *
+     * @param uri URI to get the origin from
+     * @return origin of the URI or null if it is not absolute
+     */
+    static HttpHost origin(URI uri) {
+        return uri == null || !uri.isAbsolute() || uri.getHost() == null ? null : origin(URIUtils.extractHost(uri));
+    }
+
+    static HttpHost origin(HttpHost host) {
+        String scheme = host.getSchemeName().toLowerCase(Locale.ENGLISH);
+        int port = host.getPort();
+        if(port < 0) {
+            port = "https".equals(scheme) ? 443 : "http".equals(scheme) ? 80 : port;
+        }
+        return new HttpHost(host.getHostName().toLowerCase(Locale.ENGLISH), port, scheme);
+    }
+
+    /**
+     * Whether a request to the target goes to the origin of an URI, assumed so when the URI is not absolute
+     *
+     * @param uri URI giving the origin
+     * @param target host the request is sent to
+     * @return false if the target is another origin
+     */
+    static boolean isSameOrigin(URI uri, HttpHost target) {
+        HttpHost origin = origin(uri);
+        return origin == null || target == null || origin.equals(origin(target));
+    }
+
+    /**
+     * Removes from a request sent to another origin the credentials copied from the original request
+     *
+     * @param request request sent to another origin
+     * @param original request the credentials were set on
+     */
+    static void removeCredentials(HttpRequest request, HttpRequest original) {
+        for(String name : CREDENTIAL_HEADERS) {
+            for(Header credential : original.getHeaders(name)) {
+                for(Header header : request.getHeaders(name)) {
+                    if(header.getValue() != null && header.getValue().equals(credential.getValue())) {
+                        request.removeHeader(header);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isIgnoreRedirect(HttpContext context) {
+        return context != null && Boolean.TRUE.equals(context.getAttribute(IGNORE_REDIRECT));
+    }
+
+    private boolean isIgnoreRedirectStatus(HttpContext context, int status) {
+        Object statuses = context == null ? null : context.getAttribute(IGNORE_REDIRECT_STATUSES);
+        if(statuses instanceof BitSet) {
+            return status >= 0 && ((BitSet) statuses).get(status);
+        }
+        return statuses instanceof Collection && ((Collection<?>) statuses).contains(status);
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server-Sent Events consumer with automatic reconnection.
+ * <p>
+ * Events are parsed incrementally and handed to the listener as they arrive. When the
+ * connection ends or fails, the source reconnects after the reconnection time, which the
+ * server may change with {@code retry:}, sending {@code Last-Event-ID} so the server can
+ * resume after the last event received. A {@code 204 No Content} or a response that is not
+ * an event stream stops it, as do overload statuses once the reconnections are exhausted.
+ * <p>
+ * {@link #run()} consumes the stream on the calling thread until {@link #close()};
+ * {@link #start(java.util.concurrent.Executor)} runs it on an executor instead. Reads are
+ * blocking, so each open stream occupies one thread of that executor while it waits for events.
+ * <pre>
+ * EventSource source = new EventSource(client, uri, listener);
+ * source.start(executor);
+ * ...
+ * source.close();
+ * </pre>
+ *
+ * @since 1.3.0
+ */
+public class EventSource implements Runnable, Closeable {
+
+    public final static String CONTENT_TYPE = "text/event-stream";
+    public final static long DEFAULT_RETRY_DELAY = 3000;
+
+    private final static Header[] NO_HEADERS = new Header[0];
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final EasyHttpClient client;
+    private final String uri;
+    private final Listener listener;
+    private volatile long retryDelay;
+    private int maxReconnects;
+    private volatile String lastEventId;
+    private volatile boolean closed;
+    private volatile HttpRequestBase current;
+
+    /**
+     * Creates an event source
+     *
+     * @param client client executing the requests, used only by this source while it runs
+     * @param uri URI of the event stream
+     * @param listener listener of the events
+     */
+    public EventSource(EasyHttpClient client, String uri, Listener listener) {
+        if(listener == null) {
+            throw new IllegalArgumentException("Listener may not be null");
+        }
+        this.client = client;
+        this.uri = uri;
+        this.listener = listener;
+        this.retryDelay = DEFAULT_RETRY_DELAY;
+        this.maxReconnects = -1;
+    }
+
+    /**
+     * Sets the reconnection time used until the server sends one
+     *
+     * @param retryDelay reconnection time in milliseconds
+     * @return own instance for chaining
+     */
+    public EventSource setRetryDelay(long retryDelay) {
+        this.retryDelay = Math.max(0, retryDelay);
+        return this;
+    }
+
+    /**
+     * Sets how many times in a row the source reconnects without receiving an event. Negative never gives up, which is the default.
+     *
+     * @param maxReconnects maximum consecutive reconnections
+     * @return own instance for chaining
+     */
+    public EventSource setMaxReconnects(int maxReconnects) {
+        this.maxReconnects = maxReconnects;
+        return this;
+    }
+
+    /**
+     * Sets the id of the last event already processed, to resume a stream consumed before
+     *
+     * @param lastEventId last event id
+     * @return own instance for chaining
+     */
+    public EventSource setLastEventId(String lastEventId) {
+        this.lastEventId = lastEventId;
+        return this;
+    }
+
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Consumes the stream on an executor
+     *
+     * @param executor executor running the stream
+     * @return own instance for chaining
+     */
+    public EventSource start(Executor executor) {
+        executor.execute(this);
+        return this;
+    }
+
+    /**
+     * Consumes the stream on the calling thread, reconnecting as needed, until it is closed or fails
+     */
+    public void run() {
+        Map<String, Object> headers = new HashMap<String, Object>(client.getRequestHeaders());
+        int reconnects = 0;
+        try {
+            while(!closed) {
+                if(connect(headers)) {
+                    reconnects = 0;
+                } else if(closed || (maxReconnects >= 0 && ++reconnects > maxReconnects)) {
+                    break;
+                }
+                if(!closed) {
+                    logger.debug("Reconnecting to [{}] in {}ms", uri, retryDelay);
+                    Thread.sleep(retryDelay);
+                }
+            }
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch(StreamFailedException ex) {
+            listener.onError(this, ex.getCause());
+        } finally {
+            closed = true;
+            client.clear();
+            client.addRequestHeaders(headers);
+            listener.onClosed(this);
+        }
+    }
+
+    /**
+     * Stops the stream, aborting the current connection
+     */
+    public void close() {
+        closed = true;
+        HttpRequestBase request = current;
+        if(request != null) {
+            request.abort();
+        }
+    }
+
+    /**
+     * Opens a connection and dispatches its events until it ends
+     *
+     * @return true if any event was received
+     */
+    private boolean connect(Map<String, Object> headers) throws StreamFailedException {
+        client.clear();
+        client.addRequestHeaders(headers);
+        client.addRequestHeader("Accept", CONTENT_TYPE);
+        client.addRequestHeader("Cache-Control", "no-cache");
+        if(lastEventId != null && lastEventId.length() > 0) {
+            client.addRequestHeader("Last-Event-ID", lastEventId);
+        }
+
+        URI target;
+        try {
+            target = new URI(client.buildURI(uri));
+        } catch(URISyntaxException ex) {
+            throw new StreamFailedException(ex);
+        }
+        HttpGet request = new HttpGet();
+        current = request;
+        if(closed) {
+            request.abort();
+            current = null;
+            return false;
+        }
+        client.execute(request, target, NO_HEADERS);
+        if(closed) {
+            request.abort();
+            current = null;
+            return false;
+        }
+        if(client.getException() != null) {
+            listener.onError(this, client.getException());
+            return false;
+        }
+
+        HttpResponse response = client.getResponse();
+        int status = response.getStatusLine().getStatusCode();
+        if(status == HttpStatus.SC_NO_CONTENT) {
+            closed = true;
+            return false;
+        }
+        if(client.isOverloaded(status)) {
+            current.abort();
+            listener.onError(this, new IOException("Event stream [" + uri + "] returned " + status));
+            return false;
+        }
+        HttpEntity entity = response.getEntity();
+        Header contentType = entity == null ? null : entity.getContentType();
+        if(status != HttpStatus.SC_OK || contentType == null || !contentType.getValue().toLowerCase(Locale.ENGLISH).startsWith(CONTENT_TYPE)) {
+            current.abort();
+            throw new StreamFailedException(new IOException("Event stream [" + uri + "] returned " + status
+                    + " with content type " + (contentType == null ? null : contentType.getValue())));
+        }
+
+        listener.onOpen(this);
+        boolean received = false;
+        EventStreamParser parser = null;
+        try {
+            parser = new EventStreamParser(entity.getContent(), lastEventId);
+            ServerSentEvent event;
+            while(!closed && (event = parser.next()) != null) {
+                received = true;
+                lastEventId = parser.getLastEventId();
+                updateRetry(parser);
+                listener.onEvent(this, event);
+            }
+            lastEventId = parser.getLastEventId();
+            updateRetry(parser);
+        } catch(IOException ex) {
+            if(!closed) {
+                listener.onError(this, ex);
+            }
+        } finally {
+            current.abort();
+            current = null;
+        }
+        return received;
+    }
+
+    private void updateRetry(EventStreamParser parser) {
+        if(parser.getRetry() >= 0) {
+            retryDelay = parser.getRetry();
+        }
+    }
+
+    /**
+     * Failure that stops the stream instead of reconnecting
+     */
+    private static class StreamFailedException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        StreamFailedException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Receives the events and state changes of an {@code EventSource}, on the thread running it
+     */
+    public interface Listener {
+
+        /**
+         * Called when a connection is open and events are about to be read
+         */
+        void onOpen(EventSource source);
+
+        void onEvent(EventSource source, ServerSentEvent event);
+
+        /**
+         * Called when a connection fails; the source reconnects unless it stopped
+         */
+        void onError(EventSource source, Throwable error);
+
+        /**
+         * Called once when the source stops
+         */
+        void onClosed(EventSource source);
+    }
+
+}
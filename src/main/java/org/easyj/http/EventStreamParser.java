@@ -0,0 +1,221 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Incremental parser of {@code text/event-stream} bodies, as specified for Server-Sent Events.
+ * <p>
+ * Events are returned as soon as their terminating blank line arrives. Only the event being
+ * parsed is kept in memory, bounded by {@code maxEventSize}. Lines may end with CRLF, LF or CR.
+ *
+ * @see EventSource
+ * @since 1.3.0
+ */
+public class EventStreamParser implements Closeable {
+
+    public final static int DEFAULT_MAX_EVENT_SIZE = 1024 * 1024;
+
+    private final static int BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private byte[] line;
+    private boolean skipLineFeed;
+    private boolean started;
+    private int maxEventSize;
+
+    private String lastEventId;
+    private long retry;
+
+    /**
+     * Creates a parser
+     *
+     * @param in event stream
+     * @param lastEventId last event id seen before this stream, may be null
+     */
+    public EventStreamParser(InputStream in, String lastEventId) {
+        if(in == null) {
+            throw new IllegalArgumentException("Input stream may not be null");
+        }
+        this.in = in;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.line = new byte[256];
+        this.maxEventSize = DEFAULT_MAX_EVENT_SIZE;
+        this.lastEventId = lastEventId;
+        this.retry = -1;
+    }
+
+    /**
+     * Sets the maximum size of an event
+     *
+     * @param maxEventSize maximum event size in bytes
+     * @return own instance for chaining
+     */
+    public EventStreamParser setMaxEventSize(int maxEventSize) {
+        this.maxEventSize = maxEventSize;
+        return this;
+    }
+
+    /**
+     * Reads the next event, blocking until it is complete
+     *
+     * @return next event or null at the end of the stream
+     * @throws IOException if reading fails or the event is larger than the maximum
+     */
+    public ServerSentEvent next() throws IOException {
+        StringBuilder data = null;
+        String event = null;
+        int size = 0;
+        String current;
+        while((current = readLine()) != null) {
+            if(current.length() == 0) {
+                if(data == null) {
+                    event = null;
+                    continue;
+                }
+                return new ServerSentEvent(lastEventId, event, data.toString());
+            }
+
+            size += current.length();
+            if(size > maxEventSize) {
+                throw new IOException("Event larger than " + maxEventSize + " bytes");
+            }
+
+            int colon = current.indexOf(':');
+            if(colon == 0) {
+                continue;
+            }
+            String field = colon < 0 ? current : current.substring(0, colon);
+            String value = "";
+            if(colon > 0) {
+                int start = colon + 1 < current.length() && current.charAt(colon + 1) == ' ' ? colon + 2 : colon + 1;
+                value = current.substring(start);
+            }
+
+            if("data".equals(field)) {
+                if(data == null) {
+                    data = new StringBuilder(value);
+                } else {
+                    data.append('\n').append(value);
+                }
+            } else if("event".equals(field)) {
+                event = value;
+            } else if("id".equals(field)) {
+                if(value.indexOf('\0') < 0) {
+                    lastEventId = value;
+                }
+            } else if("retry".equals(field)) {
+                if(isDigits(value)) {
+                    try {
+                        retry = Long.parseLong(value);
+                    } catch(NumberFormatException ex) {
+                        // too large, ignored
+                    }
+                }
+            }
+        }
+        // an incomplete event at the end of the stream is discarded
+        return null;
+    }
+
+    /**
+     * Returns the last event id received, to resume the stream with {@code Last-Event-ID}
+     *
+     * @return last event id or null
+     */
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * Returns the reconnection time last sent by the server
+     *
+     * @return reconnection time in milliseconds or -1 if none was sent
+     */
+    public long getRetry() {
+        return retry;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readLine() throws IOException {
+        int length = 0;
+        while(true) {
+            if(position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if(limit == -1) {
+                    limit = 0;
+                    return null;
+                }
+            }
+
+            byte b = buffer[position++];
+            if(skipLineFeed) {
+                skipLineFeed = false;
+                if(b == '\n') {
+                    continue;
+                }
+            }
+            if(b == '\n' || b == '\r') {
+                skipLineFeed = b == '\r';
+                return decode(length);
+            }
+            if(length == line.length) {
+                if(length >= maxEventSize) {
+                    throw new IOException("Event larger than " + maxEventSize + " bytes");
+                }
+                byte[] grown = new byte[Math.min(line.length * 2, maxEventSize)];
+                System.arraycopy(line, 0, grown, 0, length);
+                line = grown;
+            }
+            line[length++] = b;
+        }
+    }
+
+    private String decode(int length) throws IOException {
+        int offset = 0;
+        if(!started) {
+            started = true;
+            // skips the byte order mark
+            if(length >= 3 && line[0] == (byte) 0xEF && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+                offset = 3;
+            }
+        }
+        return new String(line, offset, length - offset, "UTF-8");
+    }
+
+    private static boolean isDigits(String value) {
+        if(value.length() == 0) {
+            return false;
+        }
+        for(int i = 0; i < value.length(); i++) {
+            if(value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Streams a request body from a file straight to the connection, in constant memory.
+ * The file is opened each time the body is written, so the entity is repeatable
+ * and can be resent on redirects.
+ *
+ * @since 1.3.0
+ */
+public class FileChannelEntity extends AbstractHttpEntity {
+
+    private final File file;
+
+    /**
+     * Creates a new entity
+     *
+     * @param file file with the body
+     * @param contentType content type of the file or null
+     */
+    public FileChannelEntity(File file, String contentType) {
+        if(file == null) {
+            throw new IllegalArgumentException("File may not be null");
+        }
+        this.file = file;
+        setContentType(contentType);
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public long getContentLength() {
+        return file.length();
+    }
+
+    public InputStream getContent() throws IOException {
+        return new FileInputStream(file);
+    }
+
+    public void writeTo(OutputStream outstream) throws IOException {
+        if(outstream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            ChannelEntity.copy(channel, outstream, channel.size());
+        } finally {
+            channel.close();
+        }
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import org.apache.http.NameValuePair;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * Streaming {@code application/x-www-form-urlencoded} request body.
+ * <p>
+ * Parameters are encoded straight from the map into the output stream through a small buffer,
+ * with the same rules as {@code java.net.URLEncoder}, instead of building the whole form as a
+ * {@code List<NameValuePair>} and a {@code String} first. The content length is computed, without
+ * allocating, when every value is a {@code CharSequence}; otherwise the form is sent chunked.
+ * A {@code List<NameValuePair>} is streamed the same way, without building the {@code String}.
+ * <p>
+ * The parameters are read when the body is written, so they must not change while the request is sent.
+ *
+ * @since 1.3.0
+ */
+public class FormEntity extends AbstractHttpEntity {
+
+    private final static int BUFFER_SIZE = 8 * 1024;
+    private final static byte[] HEX = "0123456789ABCDEF".getBytes();
+    private final static boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for(int c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for(int c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for(int c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    private final Map<String, ?> parameters;
+    private final List<? extends NameValuePair> pairs;
+    private final String charset;
+    private final boolean utf8;
+    private long length;
+
+    /**
+     * Creates a new entity
+     *
+     * @param parameters form parameters, values are sent as their {@code toString()}
+     * @param charset charset of the encoded parameters
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    public FormEntity(Map<String, ?> parameters, String charset) throws UnsupportedEncodingException {
+        this(parameters, null, charset);
+    }
+
+    /**
+     * Creates a new entity
+     *
+     * @param pairs form parameters, in order
+     * @param charset charset of the encoded parameters
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    public FormEntity(List<? extends NameValuePair> pairs, String charset) throws UnsupportedEncodingException {
+        this(null, pairs, charset);
+    }
+
+    private FormEntity(Map<String, ?> parameters, List<? extends NameValuePair> pairs, String charset) throws UnsupportedEncodingException {
+        if(!Charset.isSupported(charset)) {
+            throw new UnsupportedEncodingException(charset);
+        }
+        this.parameters = parameters;
+        this.pairs = pairs;
+        this.charset = charset;
+        this.utf8 = Charset.forName(charset).equals(Charset.forName(HTTP.UTF_8));
+        this.length = -2;
+        setContentType("application/x-www-form-urlencoded; charset=" + charset);
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public long getContentLength() {
+        if(length == -2) {
+            length = computeLength();
+        }
+        return length;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return getContentLength() < 0;
+    }
+
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    public void writeTo(OutputStream outstream) throws IOException {
+        if(outstream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        Encoder encoder = new Encoder(outstream);
+        boolean first = true;
+        if(pairs != null) {
+            for(NameValuePair pair : pairs) {
+                first = write(encoder, pair.getName(), pair.getValue(), first);
+            }
+        } else {
+            for(Map.Entry<String, ?> parameter : parameters.entrySet()) {
+                first = write(encoder, parameter.getKey(), parameter.getValue(), first);
+            }
+        }
+        encoder.flush();
+    }
+
+    /**
+     * Writes a parameter, skipping those without a name
+     *
+     * @return whether the next parameter is still the first one written
+     */
+    private boolean write(Encoder encoder, String name, Object value, boolean first) throws IOException {
+        if(name == null) {
+            return first;
+        }
+        if(!first) {
+            encoder.raw('&');
+        }
+        encoder.encode(name);
+        encoder.raw('=');
+        encoder.encode(value == null ? "" : value.toString());
+        return false;
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Computes the encoded length or -1 if it would require converting values to {@code String}
+     */
+    private long computeLength() {
+        long total = 0;
+        boolean first = true;
+        if(pairs != null) {
+            for(NameValuePair pair : pairs) {
+                long length = parameterLength(pair.getName(), pair.getValue());
+                if(length == -1) {
+                    return -1;
+                } else if(length >= 0) {
+                    total += length + (first ? 0 : 1);
+                    first = false;
+                }
+            }
+        } else {
+            for(Map.Entry<String, ?> parameter : parameters.entrySet()) {
+                long length = parameterLength(parameter.getKey(), parameter.getValue());
+                if(length == -1) {
+                    return -1;
+                } else if(length >= 0) {
+                    total += length + (first ? 0 : 1);
+                    first = false;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Encoded length of {@code name=value}, -1 if unknown or -2 if the parameter is skipped for having no name
+     */
+    private long parameterLength(String name, Object value) {
+        if(name == null) {
+            return -2;
+        }
+        if(value != null && !(value instanceof CharSequence)) {
+            return -1;
+        }
+        long key = encodedLength(name);
+        long val = value == null ? 0 : encodedLength((CharSequence) value);
+        return key < 0 || val < 0 ? -1 : key + 1 + val;
+    }
+
+    /**
+     * Encoded length of a value in UTF-8 or -1 for other charsets
+     */
+    private long encodedLength(CharSequence value) {
+        if(!utf8) {
+            return -1;
+        }
+        long total = 0;
+        int len = value.length();
+        for(int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if(c < 128) {
+                total += UNRESERVED[c] || c == ' ' ? 1 : 3;
+            } else if(c < 0x800) {
+                total += 6;
+            } else if(Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                total += 12;
+                i++;
+            } else if(isSurrogate(c)) {
+                total += 3;
+            } else {
+                total += 9;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Unpaired surrogates are replaced by '?', as {@code String.getBytes} does
+     */
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    /**
+     * Percent encodes characters into a fixed buffer, flushing it to the stream when full
+     */
+    private class Encoder {
+
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int pos;
+
+        Encoder(OutputStream out) {
+            this.out = out;
+        }
+
+        void encode(String value) throws IOException {
+            if(!utf8) {
+                for(byte b : value.getBytes(charset)) {
+                    encodeByte(b & 0xFF, b == ' ');
+                }
+                return;
+            }
+
+            int len = value.length();
+            for(int i = 0; i < len; i++) {
+                char c = value.charAt(i);
+                if(c < 128) {
+                    encodeByte(c, c == ' ');
+                } else if(c < 0x800) {
+                    escape(0xC0 | (c >> 6));
+                    escape(0x80 | (c & 0x3F));
+                } else if(Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    escape(0xF0 | (cp >> 18));
+                    escape(0x80 | ((cp >> 12) & 0x3F));
+                    escape(0x80 | ((cp >> 6) & 0x3F));
+                    escape(0x80 | (cp & 0x3F));
+                } else if(isSurrogate(c)) {
+                    escape('?');
+                } else {
+                    escape(0xE0 | (c >> 12));
+                    escape(0x80 | ((c >> 6) & 0x3F));
+                    escape(0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void encodeByte(int b, boolean space) throws IOException {
+            if(space) {
+                raw('+');
+            } else if(b < 128 && UNRESERVED[b]) {
+                raw(b);
+            } else {
+                escape(b);
+            }
+        }
+
+        void raw(int b) throws IOException {
+            if(pos == buffer.length) {
+                flushBuffer();
+            }
+            buffer[pos++] = (byte) b;
+        }
+
+        private void escape(int b) throws IOException {
+            if(pos + 3 > buffer.length) {
+                flushBuffer();
+            }
+            buffer[pos++] = '%';
+            buffer[pos++] = HEX[(b >> 4) & 0x0F];
+            buffer[pos++] = HEX[b & 0x0F];
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Live statistics of the requests of one or more clients and of the connection pool of their transport.
+ * <p>
+ * Counts requests, errors by type, bytes sent and received, and reads the pool's leased, available and
+ * pending connections per route, the redirect cache hit rate and the TLS session resumption rate when
+ * watching an {@link ApacheHttpTransport}, a {@link RedirectCache} or a {@link TlsConfig}. The statistics
+ * can be read with {@link #snapshot()} or over JMX, see {@link #register(String)}.
+ * <p>
+ * Errors are counted by exception class, timeouts by kind, and {@code 5xx} responses as {@code "HTTP 5xx"}.
+ * Bytes received are counted exactly for bodies consumed by the client, sent bytes and other received bytes
+ * are the content lengths declared by the entities, so entities of unknown length are not counted.
+ *
+ * @see EasyHttpClient#setStats(HttpStats)
+ * @since 1.3.0
+ */
+public class HttpStats implements HttpStatsMXBean {
+
+    public final static String SERVER_ERROR = "HTTP 5xx";
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> errorsByType = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private volatile ApacheHttpTransport transport;
+    private volatile RedirectCache redirectCache;
+    private volatile TlsConfig tlsConfig;
+    private ObjectName objectName;
+
+    /**
+     * Watches the connection pool of a transport, and its HTTPS configuration if any.
+     * Other transports have no pool to watch.
+     *
+     * @param transport transport of the clients
+     * @return own instance for chaining
+     */
+    public HttpStats setTransport(HttpTransport transport) {
+        if(transport instanceof ApacheHttpTransport) {
+            this.transport = (ApacheHttpTransport) transport;
+            if(tlsConfig == null) {
+                this.tlsConfig = this.transport.getTlsConfig();
+            }
+        } else {
+            this.transport = null;
+        }
+        return this;
+    }
+
+    public HttpStats setRedirectCache(RedirectCache redirectCache) {
+        this.redirectCache = redirectCache;
+        return this;
+    }
+
+    public HttpStats setTlsConfig(TlsConfig tlsConfig) {
+        this.tlsConfig = tlsConfig;
+        return this;
+    }
+
+    /**
+     * Watches the transport and redirect cache of a client, unless others were set already
+     */
+    void watch(HttpTransport clientTransport, RedirectCache clientRedirectCache) {
+        if(transport == null) {
+            setTransport(clientTransport);
+        }
+        if(redirectCache == null) {
+            redirectCache = clientRedirectCache;
+        }
+    }
+
+    /**
+     * Records a completed request
+     *
+     * @param status response status or 0 if there was no response
+     * @param received response content length or -1 if unknown
+     * @param sent request content length or -1 if unknown
+     * @param error error of the request or null
+     */
+    public void record(int status, long received, long sent, Throwable error) {
+        requests.incrementAndGet();
+        if(received > 0) {
+            bytesIn.addAndGet(received);
+        }
+        if(sent > 0) {
+            bytesOut.addAndGet(sent);
+        }
+        if(error != null) {
+            recordError(error instanceof RequestTimeoutException
+                    ? "RequestTimeoutException(" + ((RequestTimeoutException) error).getKind() + ")"
+                    : error.getClass().getSimpleName());
+        } else if(status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            recordError(SERVER_ERROR);
+        }
+    }
+
+    private void recordError(String type) {
+        errors.incrementAndGet();
+        AtomicLong count = errorsByType.get(type);
+        if(count == null) {
+            count = new AtomicLong();
+            AtomicLong existing = errorsByType.putIfAbsent(type, count);
+            if(existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public Map<String, Long> getErrorsByType() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for(Map.Entry<String, AtomicLong> entry : errorsByType.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public int getLeasedConnections() {
+        int total = 0;
+        for(PoolStats route : getPoolStats()) {
+            total += route.getLeased();
+        }
+        return total;
+    }
+
+    public int getAvailableConnections() {
+        int total = 0;
+        for(PoolStats route : getPoolStats()) {
+            total += route.getAvailable();
+        }
+        return total;
+    }
+
+    public int getPendingConnections() {
+        int total = 0;
+        for(PoolStats route : getPoolStats()) {
+            total += route.getPending();
+        }
+        return total;
+    }
+
+    public List<PoolStats> getPoolStats() {
+        ApacheHttpTransport watched = transport;
+        return watched == null ? Collections.<PoolStats>emptyList() : watched.getPoolStats();
+    }
+
+    public double getRedirectCacheHitRate() {
+        RedirectCache cache = redirectCache;
+        return cache == null ? 0 : cache.getHitRate();
+    }
+
+    public double getTlsResumptionRate() {
+        TlsConfig tls = tlsConfig;
+        return tls == null ? 0 : tls.getResumptionRate();
+    }
+
+    /**
+     * Zeroes the request, error and byte counters. Pool and cache statistics are live and not affected.
+     */
+    public void reset() {
+        requests.set(0);
+        errors.set(0);
+        errorsByType.clear();
+        bytesIn.set(0);
+        bytesOut.set(0);
+    }
+
+    /**
+     * Takes a copy of the current statistics
+     *
+     * @return statistics at this moment
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Registers the statistics in the platform MBean server, as {@code org.easyj.http:type=HttpStats,name=<name>}
+     *
+     * @param name name of the statistics, e.g. the service called
+     * @return own instance for chaining
+     */
+    public synchronized HttpStats register(String name) {
+        try {
+            ObjectName registered = new ObjectName("org.easyj.http:type=HttpStats,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+            objectName = registered;
+        } catch (JMException ex) {
+            logger.error("Could not register HttpStats [{}] in the MBean server", name, ex);
+        }
+        return this;
+    }
+
+    /**
+     * Removes the statistics from the platform MBean server, if registered
+     */
+    public synchronized void unregister() {
+        if(objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            logger.warn("Could not unregister HttpStats [{}]", objectName, ex);
+        }
+        objectName = null;
+    }
+
+    /**
+     * Statistics at a given moment
+     */
+    public static class Snapshot {
+
+        private final long timestamp;
+        private final long requests;
+        private final long errors;
+        private final Map<String, Long> errorsByType;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final List<PoolStats> poolStats;
+        private final double redirectCacheHitRate;
+        private final double tlsResumptionRate;
+
+        private Snapshot(HttpStats stats) {
+            this.timestamp = System.currentTimeMillis();
+            this.requests = stats.getRequests();
+            this.errors = stats.getErrors();
+            this.errorsByType = Collections.unmodifiableMap(stats.getErrorsByType());
+            this.bytesIn = stats.getBytesIn();
+            this.bytesOut = stats.getBytesOut();
+            this.poolStats = Collections.unmodifiableList(stats.getPoolStats());
+            this.redirectCacheHitRate = stats.getRedirectCacheHitRate();
+            this.tlsResumptionRate = stats.getTlsResumptionRate();
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public Map<String, Long> getErrorsByType() {
+            return errorsByType;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public List<PoolStats> getPoolStats() {
+            return poolStats;
+        }
+
+        public int getLeasedConnections() {
+            int total = 0;
+            for(PoolStats route : poolStats) {
+                total += route.getLeased();
+            }
+            return total;
+        }
+
+        public int getPendingConnections() {
+            int total = 0;
+            for(PoolStats route : poolStats) {
+                total += route.getPending();
+            }
+            return total;
+        }
+
+        public int getAvailableConnections() {
+            int total = 0;
+            for(PoolStats route : poolStats) {
+                total += route.getAvailable();
+            }
+            return total;
+        }
+
+        public double getRedirectCacheHitRate() {
+            return redirectCacheHitRate;
+        }
+
+        public double getTlsResumptionRate() {
+            return tlsResumptionRate;
+        }
+
+        @Override
+        public String toString() {
+            return "requests: " + requests + "; errors: " + errors + " " + errorsByType + "; bytes in: " + bytesIn
+                    + "; bytes out: " + bytesOut + "; pool: " + poolStats + "; redirect cache hit rate: " + redirectCacheHitRate
+                    + "; TLS resumption rate: " + tlsResumptionRate;
+        }
+    }
+
+}
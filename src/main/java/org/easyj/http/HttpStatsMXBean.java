@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of {@link HttpStats}
+ *
+ * @since 1.3.0
+ */
+public interface HttpStatsMXBean {
+
+    long getRequests();
+
+    long getErrors();
+
+    Map<String, Long> getErrorsByType();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    int getLeasedConnections();
+
+    int getAvailableConnections();
+
+    int getPendingConnections();
+
+    List<PoolStats> getPoolStats();
+
+    double getRedirectCacheHitRate();
+
+    double getTlsResumptionRate();
+
+    void reset();
+
+}
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Engine that actually sends the requests built by {@code EasyHttpClient}.
+ * <p>
+ * Implementations must be thread safe, as one transport can be shared by several clients,
+ * and must follow redirects as decided by {@link EasyRedirectStrategy}, which reads the
+ * redirect settings of each request from the execution context.
+ *
+ * @see ApacheHttpTransport
+ * @see UrlConnectionTransport
+ * @see InMemoryTransport
+ * @since 1.3.0
+ */
+public interface HttpTransport {
+
+    /**
+     * Executes a request, following redirects
+     *
+     * @param request request to execute
+     * @param context execution context of the request
+     * @return response of the request, its entity not consumed yet
+     * @throws IOException in case of a problem or the connection was aborted
+     */
+    HttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException;
+
+    /**
+     * Releases all the resources of the transport
+     */
+    void shutdown();
+
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.protocol.HttpRequestHandlerRegistry;
+
+/**
+ * Transport that answers requests in process with {@code HttpRequestHandler}s, no sockets involved.
+ * Meant for benchmarks and tests of the client itself, measuring its own overhead without the network
+ * stack adding noise.
+ * <p>
+ * Handlers are looked up by the request path, with the same patterns as Apache HttpCore's handler
+ * registry: {@code *}, {@code /prefix*} and {@code *suffix}. Requests no handler matches get a {@code 404}.
+ *
+ * @since 1.3.0
+ */
+public class InMemoryTransport extends AbstractHttpTransport {
+
+    private final HttpRequestHandlerRegistry handlers;
+
+    /**
+     * Creates a new transport with no handlers, see {@link #register(String, HttpRequestHandler)}
+     */
+    public InMemoryTransport() {
+        this.handlers = new HttpRequestHandlerRegistry();
+    }
+
+    /**
+     * Creates a new transport answering every request with the same handler
+     *
+     * @param handler handler that fills the response of each request, must be thread safe
+     */
+    public InMemoryTransport(HttpRequestHandler handler) {
+        this();
+        register("*", handler);
+    }
+
+    /**
+     * Registers the handler of the requests whose path matches a pattern.
+     * Handlers should be registered before the transport is used.
+     *
+     * @param pattern path pattern, e.g. {@code /api/*}
+     * @param handler handler that fills the response of each request, must be thread safe
+     * @return own instance for chaining
+     */
+    public InMemoryTransport register(String pattern, HttpRequestHandler handler) {
+        handlers.register(pattern, handler);
+        return this;
+    }
+
+    @Override
+    protected HttpResponse send(HttpUriRequest request, HttpContext context) throws IOException {
+        String path = request.getURI().getRawPath();
+        HttpRequestHandler handler = handlers.lookup(path == null || path.length() == 0 ? "/" : path);
+        if(handler == null) {
+            return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "Not Found");
+        }
+
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        try {
+            handler.handle(request, response, context);
+        } catch (HttpException ex) {
+            throw new ClientProtocolException(ex);
+        }
+        return response;
+    }
+
+    public void shutdown() {
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+
+/**
+ * Pooled connection manager counting, per route, the connections leased and the requests waiting for one,
+ * which {@code ThreadSafeClientConnManager} keeps to itself
+ *
+ * @since 1.3.0
+ */
+class InstrumentedConnManager extends ThreadSafeClientConnManager {
+
+    private final ConcurrentMap<HttpRoute, RouteCounters> routes = new ConcurrentHashMap<HttpRoute, RouteCounters>();
+    private final ConcurrentMap<ManagedClientConnection, RouteCounters> leased = new ConcurrentHashMap<ManagedClientConnection, RouteCounters>();
+
+    @Override
+    public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ClientConnectionRequest request = super.requestConnection(route, state);
+        final RouteCounters counters = counters(route);
+        return new ClientConnectionRequest() {
+            public ManagedClientConnection getConnection(long timeout, TimeUnit unit) throws InterruptedException, ConnectionPoolTimeoutException {
+                ManagedClientConnection connection;
+                counters.pending.incrementAndGet();
+                try {
+                    connection = request.getConnection(timeout, unit);
+                } finally {
+                    counters.pending.decrementAndGet();
+                }
+                if(leased.put(connection, counters) == null) {
+                    counters.leased.incrementAndGet();
+                }
+                return connection;
+            }
+
+            public void abortRequest() {
+                request.abortRequest();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(ManagedClientConnection connection, long validDuration, TimeUnit timeUnit) {
+        try {
+            super.releaseConnection(connection, validDuration, timeUnit);
+        } finally {
+            RouteCounters counters = leased.remove(connection);
+            if(counters != null) {
+                counters.leased.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the connections of every route requested so far
+     *
+     * @return connections per route
+     */
+    List<PoolStats> getPoolStats() {
+        List<PoolStats> stats = new ArrayList<PoolStats>(routes.size());
+        for(Map.Entry<HttpRoute, RouteCounters> entry : routes.entrySet()) {
+            HttpRoute route = entry.getKey();
+            int leasedConnections = entry.getValue().leased.get();
+            stats.add(new PoolStats(route.getTargetHost().toURI(), leasedConnections,
+                    Math.max(0, getConnectionsInPool(route) - leasedConnections),
+                    entry.getValue().pending.get(), getMaxForRoute(route)));
+        }
+        return stats;
+    }
+
+    private RouteCounters counters(HttpRoute route) {
+        RouteCounters counters = routes.get(route);
+        if(counters == null) {
+            counters = new RouteCounters();
+            RouteCounters existing = routes.putIfAbsent(route, counters);
+            if(existing != null) {
+                counters = existing;
+            }
+        }
+        return counters;
+    }
+
+    private static class RouteCounters {
+
+        final AtomicInteger leased = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger();
+    }
+
+}
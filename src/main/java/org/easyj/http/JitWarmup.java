@@ -0,0 +1,199 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.params.HttpConnectionParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up the JIT compiler by running synthetic requests through the whole client stack,
+ * against a throwaway endpoint on the loopback interface, before real traffic arrives.
+ * <p>
+ * Requests run on a client with its own connection pool, shut down afterwards, so the
+ * application's pools are left untouched. Combine it with {@link EasyHttpClient#prewarm(String, int)}
+ * to also have the connections open:
+ * <pre>
+ * new JitWarmup().run();
+ * client.prewarm("https://api.example.com", 10);
+ * </pre>
+ *
+ * @since 1.3.0
+ */
+public class JitWarmup {
+
+    public final static int DEFAULT_ITERATIONS = 5000;
+
+    private final static byte[] RESPONSE_BODY = "{\"warmup\":true}".getBytes();
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private int iterations;
+
+    public JitWarmup() {
+        this.iterations = DEFAULT_ITERATIONS;
+    }
+
+    /**
+     * Sets how many rounds of requests are executed
+     *
+     * @param iterations rounds of requests, each a GET, a form POST and a json PUT
+     * @return own instance for chaining
+     */
+    public JitWarmup setIterations(int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    /**
+     * Runs the synthetic requests
+     *
+     * @return time taken in milliseconds
+     * @throws IOException if the local endpoint could not be started
+     */
+    public long run() throws IOException {
+        long start = System.currentTimeMillis();
+        Endpoint endpoint = new Endpoint();
+        EasyHttpClient client = new EasyHttpClient(2, 2);
+        // the endpoint never closes idle connections, checking them would only add a blocking read per request
+        HttpConnectionParams.setStaleCheckingEnabled(client.getHttpClient().getParams(), false);
+        try {
+            String uri = "http://127.0.0.1:" + endpoint.getPort() + "/warmup";
+            for(int i = 0; i < iterations; i++) {
+                client.addRequestHeader("X-Warmup", i).addParameter("id", i).get(uri).consumeAsString();
+                client.clear();
+                client.addParameters("id", String.valueOf(i), "name", "warm up").post(uri).consumeAsString();
+                client.clear();
+                client.setEntity(new StringEntity("{\"id\":" + i + "}", "UTF-8")).put(uri).consumeAsString();
+                client.clear();
+            }
+        } finally {
+            client.shutdown();
+            endpoint.close();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        logger.info("JIT warm up of {} iterations took {}ms", iterations, elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Minimal keep-alive HTTP/1.1 endpoint answering every request with a small json body
+     */
+    private static class Endpoint implements Runnable {
+
+        private final ServerSocket server;
+
+        Endpoint() throws IOException {
+            server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread thread = new Thread(this, "easyj-http-warmup");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        public void run() {
+            while(!server.isClosed()) {
+                try {
+                    final Socket socket = server.accept();
+                    Thread thread = new Thread("easyj-http-warmup-connection") {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    };
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch(IOException ex) {
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            try {
+                server.close();
+            } catch(IOException ex) {
+                // nothing left to release
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                socket.setTcpNoDelay(true);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                byte[] head = ("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: "
+                        + RESPONSE_BODY.length + "\r\n\r\n").getBytes("ISO-8859-1");
+                String line;
+                while((line = readLine(in)) != null) {
+                    long contentLength = 0;
+                    while((line = readLine(in)) != null && line.length() > 0) {
+                        if(line.toLowerCase(Locale.ENGLISH).startsWith("content-length:")) {
+                            contentLength = Long.parseLong(line.substring(15).trim());
+                        }
+                    }
+                    while(contentLength > 0) {
+                        long skipped = in.skip(contentLength);
+                        if(skipped <= 0) {
+                            if(in.read() == -1) {
+                                return;
+                            }
+                            skipped = 1;
+                        }
+                        contentLength -= skipped;
+                    }
+                    out.write(head);
+                    out.write(RESPONSE_BODY);
+                    out.flush();
+                }
+            } catch(IOException ex) {
+                // client went away
+            } finally {
+                try {
+                    socket.close();
+                } catch(IOException ex) {
+                    // already closed
+                }
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while((b = in.read()) != -1) {
+                if(b == '\n') {
+                    int length = line.length();
+                    return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+                }
+                line.append((char) b);
+            }
+            return line.length() > 0 ? line.toString() : null;
+        }
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.http.NameValuePair;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * Streaming {@code multipart/form-data} request body.
+ * <p>
+ * Parts are encoded one by one while the body is written to the connection, files and streams
+ * are copied straight from their source, so the whole payload is never held in memory.
+ * The content length is known when every part has a known length, otherwise the body is sent chunked.
+ * A stream part ending before its declared length fails the write rather than falling short of the content length.
+ * The entity is repeatable unless it has stream parts, which can only be read once, including by
+ * {@link #getContent()}.
+ *
+ * @since 1.3.0
+ */
+public class MultipartEntity extends AbstractHttpEntity {
+
+    private final static long MEMORY_THRESHOLD = 1024 * 1024;
+    private final static byte[] CRLF = {'\r', '\n'};
+    private final static byte[] DASHES = {'-', '-'};
+    private final static char[] BOUNDARY_CHARS = "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private final String boundary;
+    private final byte[] boundaryBytes;
+    private final List<Part> parts;
+
+    /**
+     * Creates an empty multipart entity with a random boundary
+     */
+    public MultipartEntity() {
+        this.boundary = generateBoundary();
+        this.boundaryBytes = ascii(boundary);
+        this.parts = new ArrayList<Part>();
+        setContentType("multipart/form-data; boundary=" + boundary);
+    }
+
+    /**
+     * Creates a multipart entity with a text field for each parameter followed by the given parts
+     *
+     * @param parameters parameters sent as text fields
+     * @param parts other parts
+     */
+    public MultipartEntity(Map<String, Object> parameters, List<Part> parts) {
+        this();
+        if(parameters != null) {
+            Object value;
+            for(String name : parameters.keySet()) {
+                value = parameters.get(name);
+                addPart(Part.field(name, value != null ? value.toString() : ""));
+            }
+        }
+        addParts(parts);
+    }
+
+    /**
+     * Creates a multipart entity with a text field for each pair followed by the given parts
+     *
+     * @param fields pairs sent as text fields, in order
+     * @param parts other parts
+     */
+    public MultipartEntity(List<? extends NameValuePair> fields, List<Part> parts) {
+        this();
+        if(fields != null) {
+            for(NameValuePair field : fields) {
+                addPart(Part.field(field.getName(), field.getValue() != null ? field.getValue() : ""));
+            }
+        }
+        addParts(parts);
+    }
+
+    private void addParts(List<Part> parts) {
+        if(parts != null) {
+            for(Part part : parts) {
+                addPart(part);
+            }
+        }
+    }
+
+    /**
+     * Adds a text field
+     *
+     * @param name field name
+     * @param value field value
+     * @return own instance for chaining
+     */
+    public MultipartEntity addField(String name, String value) {
+        return addPart(Part.field(name, value));
+    }
+
+    /**
+     * Adds a file part
+     *
+     * @param name field name
+     * @param file file with the content
+     * @param contentType content type of the file or null for {@code application/octet-stream}
+     * @return own instance for chaining
+     */
+    public MultipartEntity addPart(String name, File file, String contentType) {
+        return addPart(Part.file(name, file, contentType));
+    }
+
+    /**
+     * Adds a stream part. A stream can only be read once, so the entity will not be repeatable.
+     *
+     * @param name field name
+     * @param content stream with the content, closed after being sent
+     * @param length length of the content or -1 if unknown
+     * @param fileName file name sent with the part
+     * @param contentType content type or null for {@code application/octet-stream}
+     * @return own instance for chaining
+     */
+    public MultipartEntity addPart(String name, InputStream content, long length, String fileName, String contentType) {
+        return addPart(Part.stream(name, content, length, fileName, contentType));
+    }
+
+    public MultipartEntity addPart(Part part) {
+        if(part != null) {
+            parts.add(part);
+        }
+        return this;
+    }
+
+    public List<Part> getParts() {
+        return Collections.unmodifiableList(parts);
+    }
+
+    public String getBoundary() {
+        return boundary;
+    }
+
+    public boolean isRepeatable() {
+        for(Part part : parts) {
+            if(part.content != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getContentLength() {
+        long length = 0;
+        for(Part part : parts) {
+            long partLength = part.getLength();
+            if(partLength < 0) {
+                return -1;
+            }
+            length += DASHES.length + boundaryBytes.length + CRLF.length + part.getHeader().length + partLength + CRLF.length;
+        }
+        return length + DASHES.length + boundaryBytes.length + DASHES.length + CRLF.length;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return getContentLength() < 0;
+    }
+
+    /**
+     * Encodes the whole body into a buffer, kept in memory up to 1MB and in a temporary file above it.
+     * Requests are sent through {@link #writeTo(OutputStream)}, which streams the parts instead.
+     *
+     * @return encoded body, which deletes its temporary file when closed
+     * @throws IOException if a part could not be read or the buffer written
+     */
+    public InputStream getContent() throws IOException {
+        SpillBuffer buffer = new SpillBuffer(MEMORY_THRESHOLD);
+        try {
+            writeTo(buffer);
+            buffer.close();
+        } catch (IOException ex) {
+            buffer.delete();
+            throw ex;
+        }
+        return buffer.getInputStream();
+    }
+
+    public void writeTo(OutputStream outstream) throws IOException {
+        if(outstream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        for(Part part : parts) {
+            outstream.write(DASHES);
+            outstream.write(boundaryBytes);
+            outstream.write(CRLF);
+            outstream.write(part.getHeader());
+            part.writeTo(outstream);
+            outstream.write(CRLF);
+        }
+        outstream.write(DASHES);
+        outstream.write(boundaryBytes);
+        outstream.write(DASHES);
+        outstream.write(CRLF);
+        outstream.flush();
+    }
+
+    public boolean isStreaming() {
+        return !isRepeatable();
+    }
+
+    private static String generateBoundary() {
+        Random random = new Random();
+        StringBuilder boundary = new StringBuilder(40);
+        for(int i = 0; i < 40; i++) {
+            boundary.append(BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)]);
+        }
+        return boundary.toString();
+    }
+
+    private static byte[] ascii(String value) {
+        try {
+            return value.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Single part of a multipart body: a text field, a file or a stream
+     */
+    public static class Part {
+
+        private final String name;
+        private final String fileName;
+        private final String contentType;
+        private final String value;
+        private final File file;
+        private final InputStream content;
+        private final long length;
+        private byte[] header;
+        private byte[] valueBytes;
+
+        private Part(String name, String fileName, String contentType, String value, File file, InputStream content, long length) {
+            if(name == null) {
+                throw new IllegalArgumentException("Part name may not be null");
+            }
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.value = value;
+            this.file = file;
+            this.content = content;
+            this.length = length;
+        }
+
+        public static Part field(String name, String value) {
+            return new Part(name, null, null, value == null ? "" : value, null, null, -1);
+        }
+
+        public static Part file(String name, File file, String contentType) {
+            if(file == null) {
+                throw new IllegalArgumentException("File may not be null");
+            }
+            return new Part(name, file.getName(), contentType, null, file, null, -1);
+        }
+
+        public static Part stream(String name, InputStream content, long length, String fileName, String contentType) {
+            if(content == null) {
+                throw new IllegalArgumentException("Content may not be null");
+            }
+            return new Part(name, fileName == null ? name : fileName, contentType, null, null, content, length);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        long getLength() {
+            if(value != null) {
+                return getValueBytes().length;
+            } else if(file != null) {
+                return file.length();
+            }
+            return length;
+        }
+
+        byte[] getHeader() {
+            if(header == null) {
+                StringBuilder sb = new StringBuilder(128);
+                sb.append("Content-Disposition: form-data; name=\"").append(escape(name)).append('"');
+                if(fileName != null) {
+                    sb.append("; filename=\"").append(escape(fileName)).append('"');
+                    sb.append("\r\nContent-Type: ").append(contentType != null ? contentType : "application/octet-stream");
+                } else if(contentType != null) {
+                    sb.append("\r\nContent-Type: ").append(contentType);
+                }
+                sb.append("\r\n\r\n");
+                header = utf8(sb.toString());
+            }
+            return header;
+        }
+
+        void writeTo(OutputStream outstream) throws IOException {
+            if(value != null) {
+                outstream.write(getValueBytes());
+            } else if(file != null) {
+                FileChannel channel = new FileInputStream(file).getChannel();
+                try {
+                    ChannelEntity.copy(channel, outstream, channel.size());
+                } finally {
+                    channel.close();
+                }
+            } else {
+                try {
+                    ChannelEntity.copy(Channels.newChannel(content), outstream, length);
+                } finally {
+                    content.close();
+                }
+            }
+        }
+
+        private byte[] getValueBytes() {
+            if(valueBytes == null) {
+                valueBytes = utf8(value);
+            }
+            return valueBytes;
+        }
+
+        private static String escape(String value) {
+            return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+        }
+
+        private static byte[] utf8(String value) {
+            try {
+                return value.getBytes(HTTP.UTF_8);
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+/**
+ * Connections of a route in a connection pool, at a given moment
+ *
+ * @see ApacheHttpTransport#getPoolStats()
+ * @since 1.3.0
+ */
+public class PoolStats {
+
+    private final String route;
+    private final int leased;
+    private final int available;
+    private final int pending;
+    private final int max;
+
+    public PoolStats(String route, int leased, int available, int pending, int max) {
+        this.route = route;
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Returns the connections in use by requests
+     *
+     * @return leased connections
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Returns the idle connections kept open in the pool
+     *
+     * @return available connections
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns the requests waiting for a connection
+     *
+     * @return pending requests
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Returns the maximum connections to the route
+     *
+     * @return maximum connections
+     */
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return route + " [leased: " + leased + "; pending: " + pending + "; available: " + available + "; max: " + max + "]";
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpOptions;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpTrace;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Request prepared once from an URI template and static headers, then executed many times
+ * binding variables. Executing it skips URI parsing and validation: only {@code buildURI}
+ * is applied to each expanded URI, so a variable can hold the scheme and host.
+ * <p>
+ * Created by {@link EasyHttpClient#prepare(String, String)}. Request headers, parameters and
+ * entity set on the client still apply to each execution; request headers replace static
+ * headers of the same name.
+ *
+ * @since 1.3.0
+ */
+public class PreparedRequest {
+
+    private final EasyHttpClient client;
+    private final String methodName;
+    private final UriTemplate template;
+    private Header[] headers;
+
+    PreparedRequest(EasyHttpClient client, String methodName, UriTemplate template) {
+        if(methodName == null) {
+            throw new IllegalArgumentException("Method may not be null");
+        }
+        this.client = client;
+        this.methodName = methodName.toUpperCase(Locale.ENGLISH);
+        this.template = template;
+        this.headers = new Header[0];
+        createMethod();
+    }
+
+    /**
+     * Adds a static header, formatted once here
+     *
+     * @param headerName Header name
+     * @param headerValue Header value, formatted as headerValue.toString()
+     * @return own instance for chaining
+     */
+    public PreparedRequest addHeader(String headerName, Object headerValue) {
+        if(headerName != null && !headerName.isEmpty() && headerValue != null) {
+            List<Header> list = new ArrayList<Header>(headers.length + 1);
+            Collections.addAll(list, headers);
+            list.add(new BasicHeader(headerName, headerValue.toString()));
+            headers = list.toArray(new Header[list.size()]);
+        }
+        return this;
+    }
+
+    /**
+     * Executes the request binding the template variables
+     *
+     * @param variables variable values, formatted as value.toString()
+     * @return the client, with the response of the request
+     */
+    public EasyHttpClient execute(Map<String, ?> variables) {
+        return client.execute(createMethod(), expand(variables), headers);
+    }
+
+    /**
+     * Executes the request binding the template variables
+     *
+     * @param variablePairs variable pairs in format: name=value
+     * @return the client, with the response of the request
+     */
+    public EasyHttpClient execute(String... variablePairs) {
+        Map<String, Object> variables = client.toMap(variablePairs);
+        return execute(variables != null ? variables : Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * Expands the URI template, completed by {@code buildURI}, without executing the request
+     *
+     * @param variables variable values, formatted as value.toString()
+     * @return expanded URI
+     */
+    public URI expand(Map<String, ?> variables) {
+        return URI.create(client.buildURI(template.expand(variables)));
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public UriTemplate getTemplate() {
+        return template;
+    }
+
+    private HttpRequestBase createMethod() {
+        if(HttpGet.METHOD_NAME.equals(methodName)) {
+            return new HttpGet();
+        } else if(HttpPost.METHOD_NAME.equals(methodName)) {
+            return new HttpPost();
+        } else if(HttpPut.METHOD_NAME.equals(methodName)) {
+            return new HttpPut();
+        } else if(HttpDelete.METHOD_NAME.equals(methodName)) {
+            return new HttpDelete();
+        } else if(HttpHead.METHOD_NAME.equals(methodName)) {
+            return new HttpHead();
+        } else if(HttpOptions.METHOD_NAME.equals(methodName)) {
+            return new HttpOptions();
+        } else if(HttpTrace.METHOD_NAME.equals(methodName)) {
+            return new HttpTrace();
+        }
+        throw new IllegalArgumentException("Unsupported method: " + methodName);
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control in front of a connection pool with one bulkhead per {@link Priority}.
+ * <p>
+ * At most {@code capacity} requests are admitted at once and each priority class
+ * is further capped by its own limit, so lower classes can never take the whole pool.
+ * When the pool is saturated, waiting requests are admitted in priority order.
+ * <p>
+ * By default {@code INTERACTIVE} may use the whole capacity, {@code BATCH} three quarters
+ * of it and {@code BACKGROUND} half of it. The same instance is usually shared by all
+ * clients of a pool, with its capacity set to the pool size.
+ *
+ * @since 1.3.0
+ */
+public class PriorityBulkhead {
+
+    private final static Priority[] PRIORITIES = Priority.values();
+
+    private final int capacity;
+    private final int[] limits;
+    private final int[] used;
+    private final int[] waiting;
+    private int inUse;
+    private long maxWaitNanos;
+
+    private final ReentrantLock lock;
+    private final Condition[] admissions;
+
+    /**
+     * Creates a bulkhead with the default limits for each priority
+     *
+     * @param capacity maximum requests admitted at once, usually the pool size
+     */
+    public PriorityBulkhead(int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.limits = new int[PRIORITIES.length];
+        this.used = new int[PRIORITIES.length];
+        this.waiting = new int[PRIORITIES.length];
+        this.maxWaitNanos = -1;
+        this.lock = new ReentrantLock();
+        this.admissions = new Condition[PRIORITIES.length];
+        for(int i = 0; i < PRIORITIES.length; i++) {
+            admissions[i] = lock.newCondition();
+        }
+
+        limits[Priority.INTERACTIVE.ordinal()] = capacity;
+        limits[Priority.BATCH.ordinal()] = Math.max(1, capacity * 3 / 4);
+        limits[Priority.BACKGROUND.ordinal()] = Math.max(1, capacity / 2);
+    }
+
+    /**
+     * Sets the maximum concurrent requests of a priority class
+     *
+     * @param priority priority class
+     * @param limit maximum concurrent requests, between 1 and the capacity
+     * @return own instance for chaining
+     */
+    public PriorityBulkhead setLimit(Priority priority, int limit) {
+        if(limit < 1 || limit > capacity) {
+            throw new IllegalArgumentException("limit must be between 1 and " + capacity + ": " + limit);
+        }
+        lock.lock();
+        try {
+            limits[priority.ordinal()] = limit;
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Sets the maximum time a request waits to be admitted. Negative waits indefinitely, which is the default.
+     *
+     * @param maxWait maximum wait
+     * @param unit unit of the maximum wait
+     * @return own instance for chaining
+     */
+    public PriorityBulkhead setMaxWait(long maxWait, TimeUnit unit) {
+        this.maxWaitNanos = maxWait < 0 ? -1 : unit.toNanos(maxWait);
+        return this;
+    }
+
+    /**
+     * Admits a request of the given priority, waiting up to the configured maximum wait
+     *
+     * @param priority priority class of the request
+     * @return true if admitted, false if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire(Priority priority) throws InterruptedException {
+        int p = priority.ordinal();
+        long remaining = maxWaitNanos;
+        lock.lockInterruptibly();
+        try {
+            if(canAdmit(p)) {
+                admit(p);
+                return true;
+            }
+
+            waiting[p]++;
+            try {
+                while(!canAdmit(p)) {
+                    if(remaining < 0) {
+                        admissions[p].await();
+                    } else if(remaining == 0) {
+                        return false;
+                    } else {
+                        remaining = Math.max(0, admissions[p].awaitNanos(remaining));
+                    }
+                }
+            } finally {
+                waiting[p]--;
+            }
+            admit(p);
+            return true;
+        } finally {
+            signalNext();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admits a request only if it can proceed right away
+     *
+     * @param priority priority class of the request
+     * @return true if admitted
+     */
+    public boolean tryAcquire(Priority priority) {
+        lock.lock();
+        try {
+            if(canAdmit(priority.ordinal())) {
+                admit(priority.ordinal());
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a request previously admitted with the same priority
+     *
+     * @param priority priority class of the request
+     */
+    public void release(Priority priority) {
+        int p = priority.ordinal();
+        lock.lock();
+        try {
+            if(used[p] > 0) {
+                used[p]--;
+                inUse--;
+            }
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getLimit(Priority priority) {
+        lock.lock();
+        try {
+            return limits[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the requests currently admitted for a priority class
+     *
+     * @param priority priority class
+     * @return admitted requests
+     */
+    public int getInUse(Priority priority) {
+        lock.lock();
+        try {
+            return used[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the requests waiting to be admitted for a priority class
+     *
+     * @param priority priority class
+     * @return waiting requests
+     */
+    public int getWaiting(Priority priority) {
+        lock.lock();
+        try {
+            return waiting[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void admit(int p) {
+        used[p]++;
+        inUse++;
+    }
+
+    /**
+     * A class can be admitted if there is room for it and no more urgent class is waiting for that room
+     */
+    private boolean canAdmit(int p) {
+        if(inUse >= capacity || used[p] >= limits[p]) {
+            return false;
+        }
+        for(int q = 0; q < p; q++) {
+            if(waiting[q] > 0 && used[q] < limits[q]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wakes up one waiter of the most urgent class that can be admitted
+     */
+    private void signalNext() {
+        for(int p = 0; p < PRIORITIES.length; p++) {
+            if(waiting[p] > 0 && canAdmit(p)) {
+                admissions[p].signal();
+                return;
+            }
+        }
+    }
+
+}
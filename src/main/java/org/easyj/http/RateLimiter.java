@@ -0,0 +1,220 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket rate limiter keyed by host or by any caller supplied key.
+ * Each bucket keeps a single theoretical arrival time updated with compare-and-set,
+ * allowing up to {@code burst} back to back permits and then one permit every
+ * {@code 1 / permitsPerSecond} seconds.
+ * <p>
+ * The same instance can be shared by any number of {@code EasyHttpClient}s.
+ *
+ * @since 1.3.0
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final ConcurrentMap<String, Bucket> buckets;
+
+    /**
+     * Creates a new rate limiter applying the same rate to every key
+     *
+     * @param permitsPerSecond sustained permits per second for each key
+     * @param burst maximum permits that can be acquired back to back
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if(permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+        }
+        if(burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1: " + burst);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.buckets = new ConcurrentHashMap<String, Bucket>();
+    }
+
+    /**
+     * Overrides the rate of a single key, e.g. a host with a tighter quota
+     *
+     * @param key host key or custom key
+     * @param permitsPerSecond sustained permits per second for this key
+     * @param burst maximum permits that can be acquired back to back for this key
+     * @return own instance for chaining
+     */
+    public RateLimiter setRate(String key, double permitsPerSecond, int burst) {
+        buckets.put(key, new Bucket(permitsPerSecond, burst));
+        return this;
+    }
+
+    /**
+     * Acquires a permit only if one is immediately available
+     *
+     * @param key host key or custom key
+     * @return true if the permit was acquired
+     */
+    public boolean tryAcquire(String key) {
+        return reserve(key, 0) == 0;
+    }
+
+    /**
+     * Acquires a permit waiting at most {@code timeout} for it.
+     * The permit is only reserved if it becomes available within the timeout.
+     *
+     * @param key host key or custom key
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if the permit was acquired
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean tryAcquire(String key, long timeout, TimeUnit unit) throws InterruptedException {
+        long wait = reserve(key, unit.toNanos(timeout));
+        if(wait < 0) {
+            return false;
+        }
+        if(wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return true;
+    }
+
+    /**
+     * Acquires a permit, blocking until it is available
+     *
+     * @param key host key or custom key
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(String key) throws InterruptedException {
+        long wait = reserve(key);
+        if(wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Reserves a permit without blocking and returns how long the caller must wait
+     * before using it. Useful for callers that schedule the work themselves.
+     *
+     * @param key host key or custom key
+     * @return nanoseconds until the reserved permit can be used, 0 if right away
+     */
+    public long reserve(String key) {
+        return reserve(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reserves a permit without blocking and schedules {@code task} to run once it is available.
+     *
+     * @param key host key or custom key
+     * @param executor executor that runs the task
+     * @param task task to run holding the permit
+     * @return future of the scheduled task
+     */
+    public ScheduledFuture<?> acquireAsync(String key, ScheduledExecutorService executor, Runnable task) {
+        return executor.schedule(task, reserve(key), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Builds the default key for an URI, in the format host:port
+     *
+     * @param uri URI of the request
+     * @return key for the URI's host
+     */
+    public static String keyFor(URI uri) {
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ENGLISH);
+        int port = uri.getPort();
+        if(port == -1) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return host + ":" + port;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Reserves a permit if it is available within {@code maxWaitNanos}
+     *
+     * @return nanoseconds to wait for the permit or -1 if it was not reserved
+     */
+    private long reserve(String key, long maxWaitNanos) {
+        return bucket(key).reserve(maxWaitNanos);
+    }
+
+    private Bucket bucket(String key) {
+        Bucket bucket = buckets.get(key);
+        if(bucket == null) {
+            bucket = new Bucket(permitsPerSecond, burst);
+            Bucket existing = buckets.putIfAbsent(key, bucket);
+            if(existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Generic cell rate algorithm: equivalent to a token bucket but with a single word of state.
+     */
+    private static class Bucket {
+
+        private final long interval;
+        private final long tolerance;
+        private final AtomicLong arrival;
+
+        Bucket(double permitsPerSecond, int burst) {
+            this.interval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.tolerance = interval * (burst - 1);
+            this.arrival = new AtomicLong(System.nanoTime());
+        }
+
+        long reserve(long maxWaitNanos) {
+            while(true) {
+                long now = System.nanoTime();
+                long current = arrival.get();
+                long base = current - now > 0 ? current : now;
+                long wait = base - tolerance - now;
+                if(wait < 0) {
+                    wait = 0;
+                }
+                if(wait > maxWaitNanos) {
+                    return -1;
+                }
+                if(arrival.compareAndSet(current, base + interval)) {
+                    return wait;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of permanent redirects ({@code 301} and {@code 308}), from source to target URI.
+ * <p>
+ * {@code EasyHttpClient} looks requests up here before sending them, so later requests to a URI that
+ * was permanently moved go straight to its target instead of paying an extra round trip.
+ * When full, the least recently used redirect is evicted. The same instance can be shared
+ * by any number of clients.
+ *
+ * @since 1.3.0
+ */
+public class RedirectCache {
+
+    public final static int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Maximum chained redirects followed in a single lookup, guarding against cycles
+     */
+    public final static int MAX_HOPS = 5;
+
+    private final Map<String, String> redirects;
+    private final AtomicLong hits;
+    private final AtomicLong lookups;
+
+    public RedirectCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache
+     *
+     * @param capacity maximum redirects kept
+     */
+    public RedirectCache(final int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.redirects = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.lookups = new AtomicLong();
+    }
+
+    /**
+     * Records a permanent redirect
+     *
+     * @param source absolute URI that was requested
+     * @param target absolute URI it redirected to
+     */
+    public synchronized void put(String source, String target) {
+        if(!source.equals(target)) {
+            redirects.put(source, target);
+        }
+    }
+
+    /**
+     * Returns the final target of an URI, following chained redirects
+     *
+     * @param uri absolute URI to be requested
+     * @return target URI or null if the URI was not permanently redirected
+     */
+    public String resolve(String uri) {
+        String target = null;
+        synchronized(this) {
+            String next = redirects.get(uri);
+            for(int hops = 0; next != null && hops < MAX_HOPS; hops++) {
+                target = next;
+                next = redirects.get(next);
+            }
+        }
+        lookups.incrementAndGet();
+        if(target != null) {
+            hits.incrementAndGet();
+        }
+        return target;
+    }
+
+    /**
+     * Forgets the redirect of an URI, e.g. when its target stopped answering
+     *
+     * @param source absolute URI that was requested
+     */
+    public synchronized void remove(String source) {
+        redirects.remove(source);
+    }
+
+    public synchronized void clear() {
+        redirects.clear();
+    }
+
+    public synchronized int size() {
+        return redirects.size();
+    }
+
+    /**
+     * Returns how many requests were sent straight to a cached target
+     *
+     * @return cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns how many requests were looked up
+     *
+     * @return cache lookups
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * Returns the ratio of lookups that found a cached target
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        long total = lookups.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Deadline of a request, aborting it when it expires, along with a request body still waiting
+ * for its publisher. All deadlines share a single daemon timer thread.
+ *
+ * @since 1.3.0
+ */
+class RequestDeadline implements Runnable {
+
+    private final static int PURGE_INTERVAL = 1024;
+
+    private final static ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "easyj-http-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final static AtomicInteger CANCELLED = new AtomicInteger();
+
+    private final HttpRequestBase request;
+    private final long millis;
+    private volatile boolean expired;
+    private ScheduledFuture<?> future;
+
+    private RequestDeadline(HttpRequestBase request, long millis) {
+        this.request = request;
+        this.millis = millis;
+    }
+
+    /**
+     * Starts the deadline of a request
+     *
+     * @param request request to abort when the deadline expires
+     * @param millis deadline in milliseconds from now
+     * @return started deadline
+     */
+    static RequestDeadline start(HttpRequestBase request, long millis) {
+        RequestDeadline deadline = new RequestDeadline(request, millis);
+        deadline.future = TIMER.schedule(deadline, millis, TimeUnit.MILLISECONDS);
+        return deadline;
+    }
+
+    public void run() {
+        expired = true;
+        request.abort();
+        if(request instanceof HttpEntityEnclosingRequestBase) {
+            HttpEntity body = ((HttpEntityEnclosingRequestBase) request).getEntity();
+            if(body instanceof SubscriberEntity) {
+                ((SubscriberEntity) body).abort();
+            }
+        }
+    }
+
+    boolean isExpired() {
+        return expired;
+    }
+
+    long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Stops the deadline of a request that completed in time.
+     * Cancelled deadlines stay in the timer queue until they would expire,
+     * so they are purged every once in a while.
+     */
+    void cancel() {
+        if(future.cancel(false) && CANCELLED.incrementAndGet() % PURGE_INTERVAL == 0) {
+            TIMER.purge();
+        }
+    }
+
+}
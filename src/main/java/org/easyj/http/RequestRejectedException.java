@@ -0,0 +1,35 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+
+/**
+ * Signals that a request was refused by the client itself before being sent,
+ * e.g. when no rate limit permit was available in time.
+ *
+ * @since 1.3.0
+ */
+public class RequestRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RequestRejectedException(String message) {
+        super(message);
+    }
+
+}
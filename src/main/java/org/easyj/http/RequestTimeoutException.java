@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Signals that a request did not complete within one of its timeouts.
+ * {@code EasyHttpClient.getStatus()} reports it as {@code 504 Gateway Timeout}.
+ *
+ * @see Timeouts
+ * @since 1.3.0
+ */
+public class RequestTimeoutException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Timeout that expired
+     */
+    public enum Kind {
+
+        /**
+         * The connection to the server could not be established in time
+         */
+        CONNECT,
+
+        /**
+         * The server stopped sending data for longer than the read timeout
+         */
+        READ,
+
+        /**
+         * No pooled connection became available in time
+         */
+        LEASE,
+
+        /**
+         * The whole request, redirects included, took longer than its deadline
+         */
+        DEADLINE
+
+    }
+
+    private final Kind kind;
+
+    public RequestTimeoutException(Kind kind, String message, Throwable cause) {
+        super(message);
+        initCause(cause);
+        this.kind = kind;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+}
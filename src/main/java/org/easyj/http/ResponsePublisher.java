@@ -0,0 +1,271 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Publishes a response body as a Reactive Streams {@code Publisher} of {@code ByteBuffer}s.
+ * <p>
+ * The body is read from the connection only when the subscriber signals demand, one chunk of
+ * up to {@code chunkSize} bytes per requested item, so backpressure reaches the socket.
+ * Reads are blocking: they run on the given executor or, without one, on the thread calling
+ * {@code request}. Each item is a new buffer the subscriber may keep.
+ * <p>
+ * A publisher serves a single subscriber. Cancelling aborts the request, if one was given,
+ * instead of draining the rest of the body.
+ *
+ * @since 1.3.0
+ */
+public class ResponsePublisher implements Publisher<ByteBuffer> {
+
+    public final static int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+    private final HttpEntity entity;
+    private final Executor executor;
+    private final AtomicBoolean subscribed;
+    private AbortableHttpRequest request;
+    private int chunkSize;
+
+    /**
+     * Creates a publisher reading on the thread that requests data
+     *
+     * @param entity response entity, null publishes an empty body
+     */
+    public ResponsePublisher(HttpEntity entity) {
+        this(entity, null);
+    }
+
+    /**
+     * Creates a publisher reading on an executor
+     *
+     * @param entity response entity, null publishes an empty body
+     * @param executor executor running the blocking reads
+     */
+    public ResponsePublisher(HttpEntity entity, Executor executor) {
+        this.entity = entity;
+        this.executor = executor;
+        this.subscribed = new AtomicBoolean();
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Sets the maximum size of each published buffer
+     *
+     * @param chunkSize chunk size in bytes
+     * @return own instance for chaining
+     */
+    public ResponsePublisher setChunkSize(int chunkSize) {
+        if(chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets the request to abort when the subscription is cancelled
+     *
+     * @param request request of the response
+     * @return own instance for chaining
+     */
+    public ResponsePublisher setRequest(AbortableHttpRequest request) {
+        this.request = request;
+        return this;
+    }
+
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        if(subscriber == null) {
+            throw new NullPointerException("Subscriber may not be null");
+        }
+        if(!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Response body can only be subscribed once"));
+            return;
+        }
+        BodySubscription subscription = new BodySubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.schedule();
+    }
+
+    /**
+     * Reads the body as demand arrives. Signals are serialized by the work-in-progress counter:
+     * only the thread that takes it from zero drains, others just add work.
+     */
+    private class BodySubscription implements Subscription, Runnable {
+
+        private final Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+        private InputStream content;
+
+        BodySubscription(Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        public void request(long n) {
+            if(n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested items must be positive: " + n);
+            } else {
+                long current, next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while(!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            if(!cancelled) {
+                cancelled = true;
+                if(request != null) {
+                    request.abort();
+                }
+                schedule();
+            }
+        }
+
+        void schedule() {
+            if(wip.getAndIncrement() != 0) {
+                return;
+            }
+            if(executor == null) {
+                run();
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch(RejectedExecutionException ex) {
+                terminate(ex);
+            }
+        }
+
+        public void run() {
+            int missed = 1;
+            while(true) {
+                drain();
+                missed = wip.addAndGet(-missed);
+                if(missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void drain() {
+            if(done) {
+                return;
+            }
+            if(cancelled) {
+                done = true;
+                close();
+                return;
+            }
+            if(invalidRequest != null) {
+                terminate(invalidRequest);
+                return;
+            }
+
+            try {
+                while(demand.get() > 0 && !cancelled) {
+                    if(content == null) {
+                        if(entity == null || (content = entity.getContent()) == null) {
+                            complete();
+                            return;
+                        }
+                    }
+                    byte[] chunk = new byte[chunkSize];
+                    int read = content.read(chunk);
+                    if(read == -1) {
+                        complete();
+                        return;
+                    }
+                    if(read > 0) {
+                        if(demand.get() != Long.MAX_VALUE) {
+                            demand.decrementAndGet();
+                        }
+                        subscriber.onNext(ByteBuffer.wrap(chunk, 0, read));
+                    }
+                }
+                if(cancelled) {
+                    done = true;
+                    close();
+                }
+            } catch(IOException ex) {
+                terminate(cancelled ? null : ex);
+            } catch(RuntimeException ex) {
+                // a subscriber throwing breaks the contract, stop reading
+                cancelled = true;
+                done = true;
+                if(request != null) {
+                    request.abort();
+                }
+                close();
+            }
+        }
+
+        private void complete() {
+            done = true;
+            close();
+            subscriber.onComplete();
+        }
+
+        private void terminate(Throwable error) {
+            done = true;
+            cancelled = true;
+            if(request != null) {
+                request.abort();
+            }
+            close();
+            if(error != null) {
+                subscriber.onError(error);
+            }
+        }
+
+        private void close() {
+            if(content != null) {
+                try {
+                    content.close();
+                } catch(IOException ex) {
+                    // connection already aborted or broken
+                }
+                content = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+
+/**
+ * Signals that a response body is over the maximum size allowed by the client.
+ * The request is aborted as soon as the limit is known to be exceeded, without reading the rest of the body.
+ *
+ * @see EasyHttpClient#setMaxResponseSize(long)
+ * @since 1.3.0
+ */
+public class ResponseTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long limit;
+
+    public ResponseTooLargeException(long limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+}
@@ -0,0 +1,336 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Properties;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads a resource into a file, resuming from the last byte received after a failure.
+ * <p>
+ * Progress is recorded in a checkpoint file next to the target, {@code <target>.checkpoint},
+ * holding the URI, the resource validator (strong ETag or Last-Modified date) and the bytes
+ * safely written. After an error while executing or consuming the request, the download
+ * resumes with a {@code Range} request validated by {@code If-Range}: if the resource changed,
+ * the server sends it whole and the download starts over. A checkpoint left by a previous
+ * process is resumed the same way. The checkpoint is deleted once the download completes.
+ * <p>
+ * Each attempt runs on its own fork of the client, so it goes through the client's settings and
+ * carries its request and default headers, without changing the client itself.
+ *
+ * @since 1.3.0
+ */
+public class ResumableDownload {
+
+    public final static int DEFAULT_MAX_ATTEMPTS = 5;
+    public final static long DEFAULT_RETRY_DELAY = 1000;
+    public final static long DEFAULT_CHECKPOINT_INTERVAL = 1024 * 1024;
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final EasyHttpClient client;
+    private int maxAttempts;
+    private long retryDelay;
+    private long checkpointInterval;
+
+    /**
+     * Creates a resumable download running on the client
+     *
+     * @param client client executing the requests
+     */
+    public ResumableDownload(EasyHttpClient client) {
+        this.client = client;
+        this.maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        this.retryDelay = DEFAULT_RETRY_DELAY;
+        this.checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    }
+
+    /**
+     * Sets how many requests are made before giving up
+     *
+     * @param maxAttempts maximum attempts
+     * @return own instance for chaining
+     */
+    public ResumableDownload setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        return this;
+    }
+
+    /**
+     * Sets the pause between attempts, doubled after each failure
+     *
+     * @param retryDelay delay in milliseconds
+     * @return own instance for chaining
+     */
+    public ResumableDownload setRetryDelay(long retryDelay) {
+        this.retryDelay = Math.max(0, retryDelay);
+        return this;
+    }
+
+    /**
+     * Sets how many bytes are received between checkpoints
+     *
+     * @param checkpointInterval bytes between checkpoints
+     * @return own instance for chaining
+     */
+    public ResumableDownload setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+        return this;
+    }
+
+    /**
+     * Downloads a resource, resuming a previous checkpoint of the same URI if any
+     *
+     * @param uri URI of the resource
+     * @param target file to write
+     * @return size of the downloaded file
+     * @throws IOException if all attempts failed, the checkpoint is kept to resume later
+     */
+    public long download(String uri, File target) throws IOException {
+        File checkpointFile = checkpointFile(target);
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile, uri, target);
+
+        IOException failure = null;
+        long delay = retryDelay;
+        for(int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if(attempt > 1) {
+                logger.warn("Download of [{}] failed at byte {}, resuming (attempt {} of {})",
+                        new Object[] {uri, checkpoint.bytes, attempt, maxAttempts});
+                sleep(delay);
+                delay *= 2;
+            }
+            try {
+                if(attempt(uri, target, checkpoint, checkpointFile)) {
+                    checkpointFile.delete();
+                    return checkpoint.bytes;
+                }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+        throw failure != null ? failure : new IOException("Download of [" + uri + "] failed after " + maxAttempts + " attempts");
+    }
+
+    /**
+     * Returns the checkpoint file of a download target
+     *
+     * @param target download target
+     * @return checkpoint file
+     */
+    public static File checkpointFile(File target) {
+        return new File(target.getPath() + ".checkpoint");
+    }
+
+    /**
+     * Runs one request on a fork of the client, writing from the checkpoint on
+     *
+     * @return true if the download completed
+     */
+    private boolean attempt(String uri, File target, Checkpoint checkpoint, File checkpointFile) throws IOException {
+        EasyHttpClient request = client.fork().removeRequesHeaders("Range", "If-Range");
+        try {
+            if(checkpoint.bytes > 0 && checkpoint.validator != null) {
+                request.addRequestHeader("Range", "bytes=" + checkpoint.bytes + "-");
+                request.addRequestHeader("If-Range", checkpoint.validator);
+            }
+
+            request.get(uri);
+            if(request.getException() != null) {
+                throw request.getException() instanceof IOException ? (IOException) request.getException()
+                        : new IOException(request.getMessage());
+            }
+            return transfer(uri, target, checkpoint, checkpointFile, request.getResponse());
+        } finally {
+            request.clear();
+        }
+    }
+
+    /**
+     * Writes a response from the checkpoint on
+     *
+     * @return true if the download completed
+     */
+    private boolean transfer(String uri, File target, Checkpoint checkpoint, File checkpointFile, HttpResponse response) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        long expected = contentLength(response);
+        if(status == HttpStatus.SC_PARTIAL_CONTENT) {
+            Header range = response.getFirstHeader("Content-Range");
+            if(range == null || !range.getValue().startsWith("bytes " + checkpoint.bytes + "-")) {
+                throw new IOException("Unexpected Content-Range for [" + uri + "]: " + (range == null ? null : range.getValue()));
+            }
+        } else if(status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && checkpoint.bytes > 0 && checkpoint.bytes == target.length()) {
+            return true;
+        } else if(status == HttpStatus.SC_OK) {
+            checkpoint.reset(validator(response));
+        } else {
+            throw new IOException("GET [" + uri + "] returned " + status);
+        }
+
+        HttpEntity entity = response.getEntity();
+        if(entity == null) {
+            checkpoint.save(checkpointFile);
+            return expected <= 0;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            file.setLength(checkpoint.bytes);
+            file.seek(checkpoint.bytes);
+
+            InputStream in = entity.getContent();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long received = 0;
+            long sinceCheckpoint = 0;
+            int read;
+            try {
+                while((read = in.read(buffer)) != -1) {
+                    file.write(buffer, 0, read);
+                    received += read;
+                    sinceCheckpoint += read;
+                    if(sinceCheckpoint >= checkpointInterval) {
+                        checkpoint.bytes += sinceCheckpoint;
+                        sinceCheckpoint = 0;
+                        file.getFD().sync();
+                        checkpoint.save(checkpointFile);
+                    }
+                }
+            } finally {
+                checkpoint.bytes += sinceCheckpoint;
+                file.getFD().sync();
+                checkpoint.save(checkpointFile);
+            }
+            if(expected >= 0 && received < expected) {
+                throw new IOException("Premature end of [" + uri + "] after " + received + " of " + expected + " bytes");
+            }
+            return true;
+        } finally {
+            file.close();
+        }
+    }
+
+    private void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to resume");
+        }
+    }
+
+    private static String validator(HttpResponse response) {
+        Header etag = response.getFirstHeader("ETag");
+        if(etag != null && !etag.getValue().startsWith("W/")) {
+            return etag.getValue();
+        }
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        return lastModified != null ? lastModified.getValue() : null;
+    }
+
+    private static long contentLength(HttpResponse response) {
+        Header header = response.getFirstHeader("Content-Length");
+        if(header != null) {
+            try {
+                return Long.parseLong(header.getValue().trim());
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Progress of a download, persisted as a properties file
+     */
+    private static class Checkpoint {
+
+        private final String uri;
+        private String validator;
+        private long bytes;
+
+        Checkpoint(String uri) {
+            this.uri = uri;
+        }
+
+        static Checkpoint load(File checkpointFile, String uri, File target) {
+            Checkpoint checkpoint = new Checkpoint(uri);
+            if(!checkpointFile.exists()) {
+                return checkpoint;
+            }
+
+            Properties properties = new Properties();
+            try {
+                InputStream in = new FileInputStream(checkpointFile);
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+                if(uri.equals(properties.getProperty("uri"))) {
+                    checkpoint.validator = properties.getProperty("validator");
+                    checkpoint.bytes = Math.min(Long.parseLong(properties.getProperty("bytes", "0")), target.length());
+                }
+            } catch (IOException ex) {
+                checkpoint.reset(null);
+            } catch (NumberFormatException ex) {
+                checkpoint.reset(null);
+            }
+            return checkpoint;
+        }
+
+        void reset(String validator) {
+            this.validator = validator;
+            this.bytes = 0;
+        }
+
+        void save(File checkpointFile) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("uri", uri);
+            properties.setProperty("bytes", String.valueOf(bytes));
+            if(validator != null) {
+                properties.setProperty("validator", validator);
+            }
+
+            File temp = new File(checkpointFile.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                properties.store(out, null);
+            } finally {
+                out.close();
+            }
+            if(!temp.renameTo(checkpointFile)) {
+                checkpointFile.delete();
+                if(!temp.renameTo(checkpointFile)) {
+                    throw new IOException("Could not write checkpoint " + checkpointFile);
+                }
+            }
+        }
+    }
+
+}
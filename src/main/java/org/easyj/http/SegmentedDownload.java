@@ -0,0 +1,304 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads large resources as several byte ranges fetched in parallel over the client's pool.
+ * <p>
+ * A HEAD request first checks {@code Content-Length} and {@code Accept-Ranges: bytes}. The target
+ * file is then preallocated and each segment is written straight into its own region of it.
+ * Segments are validated with {@code If-Range} against the resource's ETag or Last-Modified date,
+ * so a resource changing during the download fails it instead of mixing versions.
+ * Resources without range support, without a known length or smaller than two segments are
+ * downloaded as a single stream.
+ * <p>
+ * Each request runs on its own fork of the client, so it goes through the client's authenticator,
+ * timeouts, limiters, bulkhead, tracer, access log and statistics and carries its request and default
+ * headers, without changing the client itself. The pool must allow as many connections per route as
+ * segments for them to run fully in parallel, as must the client's concurrency limiter and bulkhead.
+ *
+ * @since 1.3.0
+ */
+public class SegmentedDownload {
+
+    public final static int DEFAULT_SEGMENTS = 4;
+    public final static long DEFAULT_MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static Header[] NO_HEADERS = new Header[0];
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final EasyHttpClient client;
+    private int segments;
+    private long minSegmentSize;
+    private ExecutorService executor;
+
+    /**
+     * Creates a segmented download running on the client's transport
+     *
+     * @param client client whose transport, headers and settings are used
+     */
+    public SegmentedDownload(EasyHttpClient client) {
+        this.client = client;
+        this.segments = DEFAULT_SEGMENTS;
+        this.minSegmentSize = DEFAULT_MIN_SEGMENT_SIZE;
+    }
+
+    /**
+     * Sets how many ranges are fetched in parallel
+     *
+     * @param segments number of segments
+     * @return own instance for chaining
+     */
+    public SegmentedDownload setSegments(int segments) {
+        if(segments < 1) {
+            throw new IllegalArgumentException("segments must be at least 1: " + segments);
+        }
+        this.segments = segments;
+        return this;
+    }
+
+    /**
+     * Sets the minimum size of a segment, smaller resources use fewer segments
+     *
+     * @param minSegmentSize minimum segment size in bytes
+     * @return own instance for chaining
+     */
+    public SegmentedDownload setMinSegmentSize(long minSegmentSize) {
+        this.minSegmentSize = Math.max(1, minSegmentSize);
+        return this;
+    }
+
+    /**
+     * Sets the executor running the segments. By default a thread pool is created for each download.
+     *
+     * @param executor executor running the segments
+     * @return own instance for chaining
+     */
+    public SegmentedDownload setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Downloads a resource into a file, replacing its content
+     *
+     * @param uri URI of the resource
+     * @param target file to write
+     * @return bytes downloaded
+     * @throws IOException if the download failed
+     */
+    public long download(String uri, File target) throws IOException {
+        URI resource = URI.create(client.buildURI(uri));
+
+        EasyHttpClient headClient = execute(new HttpHead(resource));
+        HttpResponse head = headClient.getResponse();
+        headClient.clear();
+        int status = head.getStatusLine().getStatusCode();
+        if(status < 200 || status >= 300) {
+            throw new IOException("HEAD [" + resource + "] returned " + status);
+        }
+
+        long length = contentLength(head);
+        Header acceptRanges = head.getFirstHeader("Accept-Ranges");
+        boolean ranges = acceptRanges != null && acceptRanges.getValue().toLowerCase(Locale.ENGLISH).contains("bytes");
+        int count = length < 0 ? 1 : (int) Math.max(1, Math.min(segments, length / minSegmentSize));
+
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            if(!ranges || count == 1) {
+                logger.debug("Downloading [{}] as a single stream", resource);
+                file.setLength(0);
+                return fetch(new HttpGet(resource), channel, 0, -1);
+            }
+
+            file.setLength(length);
+            return fetchSegments(resource, validator(head), channel, length, count);
+        } finally {
+            file.close();
+        }
+    }
+
+    private long fetchSegments(final URI resource, final String validator, final FileChannel channel, long length, int count) throws IOException {
+        logger.debug("Downloading [{}] in {} segments of {} bytes", new Object[] {resource, count, length / count});
+        ExecutorService runner = executor != null ? executor : Executors.newFixedThreadPool(count);
+        List<Future<Long>> results = new ArrayList<Future<Long>>(count);
+        final List<HttpGet> requests = new ArrayList<HttpGet>(count);
+        long segmentSize = length / count;
+        try {
+            for(int i = 0; i < count; i++) {
+                final long start = i * segmentSize;
+                final long end = i == count - 1 ? length - 1 : start + segmentSize - 1;
+                final HttpGet get = new HttpGet(resource);
+                get.addHeader("Range", "bytes=" + start + "-" + end);
+                if(validator != null) {
+                    get.addHeader("If-Range", validator);
+                }
+                requests.add(get);
+                results.add(runner.submit(new Callable<Long>() {
+                    public Long call() throws IOException {
+                        return fetch(get, channel, start, end - start + 1);
+                    }
+                }));
+            }
+
+            long total = 0;
+            for(Future<Long> result : results) {
+                total += result.get();
+            }
+            requests.clear();
+            return total;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading [" + resource + "]");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Error downloading [" + resource + "]: " + cause);
+        } finally {
+            for(HttpGet request : requests) {
+                request.abort();
+            }
+            if(runner != executor) {
+                runner.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Fetches a range, or the whole resource if length is negative, writing it at its position in the file
+     */
+    private long fetch(HttpRequestBase request, FileChannel channel, long position, long length) throws IOException {
+        EasyHttpClient fetchClient = execute(request);
+        HttpResponse response = fetchClient.getResponse();
+        HttpEntity entity = response.getEntity();
+        boolean completed = false;
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            int expected = length < 0 ? HttpStatus.SC_OK : HttpStatus.SC_PARTIAL_CONTENT;
+            if(status != expected) {
+                throw new IOException(request.getMethod() + " [" + request.getURI() + "] " + rangeOf(request)
+                        + "returned " + status + (status == HttpStatus.SC_OK ? ", resource changed during the download" : ""));
+            }
+            if(entity == null) {
+                throw new IOException("No content for [" + request.getURI() + "] " + rangeOf(request));
+            }
+
+            InputStream in = entity.getContent();
+            byte[] bytes = new byte[BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long written = 0;
+            int read;
+            while((length < 0 || written < length) && (read = in.read(bytes, 0, (int) (length < 0 ? bytes.length : Math.min(bytes.length, length - written)))) != -1) {
+                buffer.limit(read).position(0);
+                while(buffer.hasRemaining()) {
+                    written += channel.write(buffer, position + written);
+                }
+            }
+            if(length >= 0 && written != length) {
+                throw new IOException("Premature end of [" + request.getURI() + "] " + rangeOf(request) + "after " + written + " bytes");
+            }
+            completed = true;
+            return written;
+        } finally {
+            if(completed) {
+                EntityUtils.consume(entity);
+            } else {
+                request.abort();
+            }
+            fetchClient.clear();
+        }
+    }
+
+    /**
+     * Executes a request on a fork of the client
+     *
+     * @return the fork holding the response, to be cleared once it is read
+     */
+    private EasyHttpClient execute(HttpRequestBase request) throws IOException {
+        EasyHttpClient fork = client.fork().removeRequesHeaders("Range", "If-Range");
+        fork.execute(request, request.getURI(), NO_HEADERS);
+        if(fork.getException() != null) {
+            Throwable error = fork.getException();
+            String message = fork.getMessage();
+            fork.clear();
+            if(error instanceof IOException) {
+                throw (IOException) error;
+            }
+            IOException ex = new IOException(message != null ? message : error.toString());
+            ex.initCause(error);
+            throw ex;
+        }
+        return fork;
+    }
+
+    private static String rangeOf(HttpRequestBase request) {
+        Header range = request.getFirstHeader("Range");
+        return range == null ? "" : "(" + range.getValue() + ") ";
+    }
+
+    /**
+     * Strong ETag or Last-Modified date to validate the ranges with
+     */
+    private static String validator(HttpResponse response) {
+        Header etag = response.getFirstHeader("ETag");
+        if(etag != null && !etag.getValue().startsWith("W/")) {
+            return etag.getValue();
+        }
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        return lastModified != null ? lastModified.getValue() : null;
+    }
+
+    private static long contentLength(HttpResponse response) {
+        Header header = response.getFirstHeader("Content-Length");
+        if(header != null) {
+            try {
+                return Long.parseLong(header.getValue().trim());
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+}
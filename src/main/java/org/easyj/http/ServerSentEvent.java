@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+/**
+ * Event received from a {@code text/event-stream}
+ *
+ * @see EventStreamParser
+ * @since 1.3.0
+ */
+public class ServerSentEvent {
+
+    public final static String DEFAULT_EVENT = "message";
+
+    private final String id;
+    private final String event;
+    private final String data;
+
+    /**
+     * Creates a new event
+     *
+     * @param id last event id of the stream, may be null
+     * @param event event type, {@link #DEFAULT_EVENT} if null or empty
+     * @param data event data
+     */
+    public ServerSentEvent(String id, String event, String data) {
+        this.id = id;
+        this.event = event == null || event.length() == 0 ? DEFAULT_EVENT : event;
+        this.data = data;
+    }
+
+    /**
+     * Returns the last event id of the stream when the event was dispatched
+     *
+     * @return event id or null
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerSentEvent[id=" + id + ", event=" + event + ", data=" + data + "]";
+    }
+
+}
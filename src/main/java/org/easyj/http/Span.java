@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.net.URI;
+
+/**
+ * Timing of a sampled request, split in the phases it went through inside the client.
+ * <ul>
+ * <li>{@link Phase#ADMISSION}: waiting on the rate limiter, bulkhead and concurrency limiter</li>
+ * <li>{@link Phase#EXECUTE}: connection lease, connect, sending the request and receiving the response head</li>
+ * <li>{@link Phase#CONSUME}: reading the response body</li>
+ * </ul>
+ *
+ * @see Tracer
+ * @since 1.3.0
+ */
+public class Span {
+
+    /**
+     * Phases of a request
+     */
+    public enum Phase {
+        ADMISSION, EXECUTE, CONSUME
+    }
+
+    private final Tracer tracer;
+    private final TraceContext context;
+    private final long parentSpanId;
+    private final String method;
+    private final URI uri;
+    private final long startMillis;
+    private final long startNanos;
+    private final long[] phases;
+    private long durationNanos;
+    private int status;
+    private Throwable error;
+
+    Span(Tracer tracer, TraceContext context, long parentSpanId, String method, URI uri) {
+        this.tracer = tracer;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.method = method;
+        this.uri = uri;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.phases = new long[Phase.values().length];
+    }
+
+    void addPhase(Phase phase, long nanos) {
+        phases[phase.ordinal()] += nanos;
+    }
+
+    void finish(int status, Throwable error) {
+        this.durationNanos = System.nanoTime() - startNanos;
+        this.status = status;
+        this.error = error;
+        tracer.report(this);
+    }
+
+    public TraceContext getContext() {
+        return context;
+    }
+
+    public String getTraceId() {
+        return context.getTraceId();
+    }
+
+    public String getSpanId() {
+        return context.getSpanId();
+    }
+
+    /**
+     * Returns the span id of the parent, when the request was part of an existing trace
+     *
+     * @return parent span id or null
+     */
+    public String getParentSpanId() {
+        return parentSpanId == 0 ? null : TraceContext.toHex(parentSpanId);
+    }
+
+    /**
+     * Returns the span name, {@code HTTP <method>}
+     *
+     * @return span name
+     */
+    public String getName() {
+        return "HTTP " + method;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * Returns when the request started
+     *
+     * @return start time in milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Returns the total duration of the request, from execution to the body consumed
+     *
+     * @return duration in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the time spent in a phase
+     *
+     * @param phase request phase
+     * @return time spent in nanoseconds, 0 if the request did not reach the phase
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Returns the response status
+     *
+     * @return status or 0 if there was no response
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the error that failed the request
+     *
+     * @return error or null
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " " + uri + " [trace=" + getTraceId() + ", span=" + getSpanId() + ", status=" + status
+                + ", durationNanos=" + durationNanos + ", admission=" + phases[0] + ", execute=" + phases[1]
+                + ", consume=" + phases[2] + "]";
+    }
+
+}
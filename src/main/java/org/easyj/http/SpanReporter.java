@@ -0,0 +1,29 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+/**
+ * Receives the spans of sampled requests when they finish, on the thread that made the request.
+ * Implementations should hand spans off quickly, such as to a queue, and not throw.
+ *
+ * @see Tracer
+ * @since 1.3.0
+ */
+public interface SpanReporter {
+
+    void report(Span span);
+
+}
@@ -0,0 +1,156 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Buffer kept in memory up to a threshold and spilled to a temporary file above it.
+ * Write the content, close the buffer, then read it back with {@link #getInputStream()}.
+ * The temporary file is deleted when the stream reading it is closed, or by {@link #delete()}.
+ *
+ * @since 1.3.0
+ */
+class SpillBuffer extends OutputStream {
+
+    private final long threshold;
+    private ExposedByteArrayOutputStream memory;
+    private File file;
+    private OutputStream out;
+    private long length;
+
+    /**
+     * Creates a buffer
+     *
+     * @param threshold maximum bytes kept in memory
+     */
+    public SpillBuffer(long threshold) {
+        this.threshold = threshold;
+        this.memory = new ExposedByteArrayOutputStream();
+        this.out = memory;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(file == null && length + len > threshold) {
+            spill();
+        }
+        out.write(b, off, len);
+        length += len;
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("easyj-http", ".body");
+        OutputStream spilled = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            memory.writeTo(spilled);
+        } catch (IOException ex) {
+            spilled.close();
+            delete();
+            throw ex;
+        }
+        memory = null;
+        out = spilled;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Returns the bytes written
+     *
+     * @return length of the content
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Whether the content went over the threshold and is in a temporary file
+     *
+     * @return true if spilled to disk
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Returns a stream reading the content written, once the buffer is closed
+     *
+     * @return content, which deletes the temporary file when closed
+     * @throws IOException if the temporary file can not be read
+     */
+    public InputStream getInputStream() throws IOException {
+        if(file == null) {
+            return new ByteArrayInputStream(memory.buffer(), 0, memory.size());
+        }
+        final File spilled = file;
+        return new FileInputStream(spilled) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    spilled.delete();
+                }
+            }
+        };
+    }
+
+    /**
+     * Discards the content, deleting the temporary file if any
+     */
+    public void delete() {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            //silent ignore
+        }
+        if(file != null) {
+            file.delete();
+        }
+        memory = null;
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Request body fed by a Reactive Streams {@code Publisher} of {@code ByteBuffer}s.
+ * <p>
+ * The entity subscribes to the publisher and requests data only as the body is written to
+ * the connection, keeping at most {@code prefetch} buffers queued, so a slow connection
+ * slows the publisher down. Nothing is requested before the request is sent.
+ * When the length is unknown the body is sent with chunked transfer encoding.
+ * <p>
+ * Waiting for the subscription and for each buffer is bounded by the entity's timeout, which
+ * defaults to the read timeout of the client sending it, and fails with a
+ * {@code SocketTimeoutException}. A request deadline or closing the content wakes the
+ * connection up right away and cancels the subscription.
+ * <pre>
+ * publisher.subscribe(entity);
+ * client.setEntity(entity).post(uri);
+ * </pre>
+ *
+ * @see EasyHttpClient#setEntity(org.reactivestreams.Publisher, long, String)
+ * @since 1.3.0
+ */
+public class SubscriberEntity extends AbstractHttpEntity implements Subscriber<ByteBuffer> {
+
+    public final static int DEFAULT_PREFETCH = 4;
+
+    private final static ByteBuffer COMPLETE = ByteBuffer.allocate(0);
+
+    private final long length;
+    private final BlockingQueue<ByteBuffer> queue;
+    private final CountDownLatch subscribed;
+    private volatile Subscription subscription;
+    private volatile Throwable error;
+    private volatile boolean aborted;
+    private volatile long timeout;
+    private int prefetch;
+    private BodyStream content;
+
+    /**
+     * Creates a new entity
+     *
+     * @param length length of the body or -1 if unknown
+     */
+    public SubscriberEntity(long length) {
+        this.length = length;
+        this.queue = new LinkedBlockingQueue<ByteBuffer>();
+        this.subscribed = new CountDownLatch(1);
+        this.prefetch = DEFAULT_PREFETCH;
+        this.timeout = -1;
+        setChunked(length < 0);
+    }
+
+    /**
+     * Sets how many buffers are requested ahead of the connection
+     *
+     * @param prefetch buffers requested ahead
+     * @return own instance for chaining
+     */
+    public SubscriberEntity setPrefetch(int prefetch) {
+        if(prefetch < 1) {
+            throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+        }
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    /**
+     * Sets how long the connection waits for the subscription and for each buffer before failing.
+     * Unless set, the read timeout of the client sending the entity is used.
+     *
+     * @param timeout timeout in milliseconds, 0 to wait indefinitely
+     * @return own instance for chaining
+     */
+    public SubscriberEntity setTimeout(long timeout) {
+        if(timeout < 0) {
+            throw new IllegalArgumentException("timeout can not be negative: " + timeout);
+        }
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Uses a request's read timeout, unless a timeout was set
+     *
+     * @param readTimeout read timeout in milliseconds or -1 if unset
+     */
+    void applyTimeout(long readTimeout) {
+        if(timeout < 0 && readTimeout >= 0) {
+            timeout = readTimeout;
+        }
+    }
+
+    /**
+     * Fails the body of an aborted request, waking up the connection waiting for the next buffer,
+     * and cancels the subscription
+     */
+    void abort() {
+        aborted = true;
+        Subscription current = subscription;
+        if(current != null) {
+            current.cancel();
+        }
+        subscribed.countDown();
+        queue.clear();
+        queue.offer(COMPLETE);
+    }
+
+    public void onSubscribe(Subscription subscription) {
+        if(subscription == null) {
+            throw new NullPointerException("Subscription may not be null");
+        }
+        if(this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscribed.countDown();
+    }
+
+    public void onNext(ByteBuffer buffer) {
+        if(buffer == null) {
+            throw new NullPointerException("Buffer may not be null");
+        }
+        queue.offer(buffer);
+    }
+
+    public void onError(Throwable error) {
+        if(error == null) {
+            throw new NullPointerException("Error may not be null");
+        }
+        this.error = error;
+        queue.offer(COMPLETE);
+    }
+
+    public void onComplete() {
+        queue.offer(COMPLETE);
+    }
+
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    public long getContentLength() {
+        return length;
+    }
+
+    public synchronized InputStream getContent() throws IOException {
+        if(content != null) {
+            throw new IllegalStateException("Content already consumed");
+        }
+        content = new BodyStream();
+        return content;
+    }
+
+    public void writeTo(OutputStream outstream) throws IOException {
+        if(outstream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        InputStream in = getContent();
+        try {
+            byte[] buffer = new byte[ChannelEntity.BUFFER_SIZE];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                outstream.write(buffer, 0, read);
+            }
+            outstream.flush();
+        } finally {
+            in.close();
+        }
+    }
+
+    public boolean isStreaming() {
+        return content == null || !content.finished;
+    }
+
+    /**
+     * Reads the queued buffers, requesting one more for each buffer taken
+     */
+    private class BodyStream extends InputStream {
+
+        private ByteBuffer current;
+        private boolean started;
+        private volatile boolean finished;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) {
+                return 0;
+            }
+            while(current == null || !current.hasRemaining()) {
+                if(aborted) {
+                    throw new InterruptedIOException("Request body aborted");
+                }
+                if(finished) {
+                    return -1;
+                }
+                current = next();
+            }
+            int count = Math.min(len, current.remaining());
+            current.get(b, off, count);
+            return count;
+        }
+
+        private ByteBuffer next() throws IOException {
+            try {
+                if(!started) {
+                    long wait = timeout;
+                    if(wait <= 0) {
+                        subscribed.await();
+                    } else if(!subscribed.await(wait, TimeUnit.MILLISECONDS)) {
+                        close();
+                        throw new SocketTimeoutException("Request body publisher did not subscribe within " + wait + "ms");
+                    }
+                    if(aborted) {
+                        throw new InterruptedIOException("Request body aborted");
+                    }
+                    started = true;
+                    subscription.request(prefetch);
+                }
+                long wait = timeout;
+                ByteBuffer buffer = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue.take();
+                if(buffer == null) {
+                    close();
+                    throw new SocketTimeoutException("No request body from the publisher within " + wait + "ms");
+                }
+                if(aborted) {
+                    throw new InterruptedIOException("Request body aborted");
+                }
+                if(buffer == COMPLETE) {
+                    finished = true;
+                    if(error != null) {
+                        IOException ex = new IOException("Request body publisher failed: " + error.getMessage());
+                        ex.initCause(error);
+                        throw ex;
+                    }
+                    return null;
+                }
+                subscription.request(1);
+                return buffer;
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new InterruptedIOException("Interrupted while waiting for the request body");
+            }
+        }
+
+        /**
+         * Cancels the subscription of an unfinished body. Closed from another thread,
+         * it wakes up the connection waiting for the next buffer, failing the body.
+         */
+        @Override
+        public void close() {
+            if(!finished) {
+                finished = true;
+                abort();
+            } else {
+                queue.clear();
+            }
+        }
+    }
+
+}
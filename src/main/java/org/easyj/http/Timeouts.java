@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Locale;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Timeouts of a request, in milliseconds.
+ * <p>
+ * A negative value leaves the timeout unset, so per-request timeouts fall back to the
+ * client-wide ones and those to the transport's defaults. 0 waits indefinitely.
+ * <ul>
+ * <li>{@code connect}: establishing the connection to the server</li>
+ * <li>{@code read}: maximum inactivity while waiting for data from the server</li>
+ * <li>{@code lease}: waiting for a pooled connection, only applies to the {@link ApacheHttpTransport}</li>
+ * <li>{@code deadline}: the whole request from the moment it is executed, admission, redirects
+ * and retries included, until its body is consumed. When it expires the request is aborted.</li>
+ * </ul>
+ *
+ * @see EasyHttpClient#setTimeouts(Timeouts)
+ * @see EasyHttpClient#setRequestTimeouts(Timeouts)
+ * @since 1.3.0
+ */
+public class Timeouts {
+
+    private long connect;
+    private long read;
+    private long lease;
+    private long deadline;
+
+    public Timeouts() {
+        this.connect = -1;
+        this.read = -1;
+        this.lease = -1;
+        this.deadline = -1;
+    }
+
+    public Timeouts setConnect(long millis) {
+        this.connect = millis;
+        return this;
+    }
+
+    public Timeouts setRead(long millis) {
+        this.read = millis;
+        return this;
+    }
+
+    public Timeouts setLease(long millis) {
+        this.lease = millis;
+        return this;
+    }
+
+    public Timeouts setDeadline(long millis) {
+        this.deadline = millis;
+        return this;
+    }
+
+    public long getConnect() {
+        return connect;
+    }
+
+    public long getRead() {
+        return read;
+    }
+
+    public long getLease() {
+        return lease;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns the timeouts with the unset ones taken from the defaults
+     *
+     * @param defaults timeouts used when not set here, may be null
+     * @return merged timeouts
+     */
+    Timeouts orElse(Timeouts defaults) {
+        if(defaults == null) {
+            return this;
+        }
+        return new Timeouts()
+                .setConnect(connect < 0 ? defaults.connect : connect)
+                .setRead(read < 0 ? defaults.read : read)
+                .setLease(lease < 0 ? defaults.lease : lease)
+                .setDeadline(deadline < 0 ? defaults.deadline : deadline);
+    }
+
+    /**
+     * Sets the connect, read and lease timeouts on the parameters of a request, where transports pick them up
+     *
+     * @param params parameters of the request
+     */
+    void applyTo(HttpParams params) {
+        if(connect >= 0) {
+            HttpConnectionParams.setConnectionTimeout(params, (int) Math.min(connect, Integer.MAX_VALUE));
+        }
+        if(read >= 0) {
+            HttpConnectionParams.setSoTimeout(params, (int) Math.min(read, Integer.MAX_VALUE));
+        }
+        if(lease >= 0) {
+            ConnManagerParams.setTimeout(params, lease);
+        }
+    }
+
+    /**
+     * Tells which timeout an I/O error stands for
+     *
+     * @param ex I/O error of a request
+     * @return kind of timeout or null if the error is not a timeout
+     */
+    static RequestTimeoutException.Kind kindOf(IOException ex) {
+        if(ex instanceof RequestTimeoutException) {
+            return ((RequestTimeoutException) ex).getKind();
+        }
+        if(ex instanceof ConnectionPoolTimeoutException) {
+            return RequestTimeoutException.Kind.LEASE;
+        }
+        if(ex instanceof ConnectTimeoutException) {
+            return RequestTimeoutException.Kind.CONNECT;
+        }
+        if(ex instanceof SocketTimeoutException) {
+            String message = ex.getMessage();
+            return message != null && message.toLowerCase(Locale.ENGLISH).contains("connect") ? RequestTimeoutException.Kind.CONNECT : RequestTimeoutException.Kind.READ;
+        }
+        return null;
+    }
+
+}
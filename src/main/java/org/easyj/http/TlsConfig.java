@@ -0,0 +1,273 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+import org.apache.http.conn.ssl.SSLInitializationException;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+
+/**
+ * HTTPS configuration, meant to be shared by the transports talking to the same servers.
+ * <p>
+ * The {@code SSLContext} is built once, on first use, and cached: every connection made
+ * with the same configuration shares its client session cache, so new pooled connections
+ * resume earlier TLS sessions with an abbreviated handshake instead of a full one.
+ * Key material and session cache settings must be set before the context is built;
+ * protocols and cipher suites apply to each new connection.
+ * <p>
+ * Handshakes made through {@link TlsSocketFactory} are counted, with the resumed ones,
+ * to watch the resumption rate.
+ * <pre>
+ * TlsConfig tls = new TlsConfig().setProtocols("TLSv1.2").setSessionCacheSize(1000);
+ * EasyHttpClient client = new EasyHttpClient(new ApacheHttpTransport(30, 30, tls));
+ * </pre>
+ *
+ * @since 1.3.0
+ */
+public class TlsConfig {
+
+    public final static String DEFAULT_PROTOCOL = "TLS";
+
+    private KeyStore trustStore;
+    private KeyStore keyStore;
+    private char[] keyPassword;
+    private int sessionCacheSize;
+    private int sessionTimeout;
+    private volatile String[] protocols;
+    private volatile String[] cipherSuites;
+    private volatile String[] applicationProtocols;
+    private volatile X509HostnameVerifier hostnameVerifier;
+    private SSLContext sslContext;
+
+    private final AtomicLong handshakes;
+    private final AtomicLong resumedHandshakes;
+
+    public TlsConfig() {
+        this.sessionCacheSize = -1;
+        this.sessionTimeout = -1;
+        this.hostnameVerifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+        this.handshakes = new AtomicLong();
+        this.resumedHandshakes = new AtomicLong();
+    }
+
+    /**
+     * Sets the certificates trusted to authenticate servers, instead of the JVM's default trust store
+     *
+     * @param trustStore trusted certificates
+     * @return own instance for chaining
+     */
+    public synchronized TlsConfig setTrustStore(KeyStore trustStore) {
+        checkNotBuilt();
+        this.trustStore = trustStore;
+        return this;
+    }
+
+    /**
+     * Sets the client certificate and key presented to servers asking for one
+     *
+     * @param keyStore client keys
+     * @param keyPassword password of the keys
+     * @return own instance for chaining
+     */
+    public synchronized TlsConfig setKeyStore(KeyStore keyStore, char[] keyPassword) {
+        checkNotBuilt();
+        this.keyStore = keyStore;
+        this.keyPassword = keyPassword == null ? null : keyPassword.clone();
+        return this;
+    }
+
+    /**
+     * Sets how many TLS sessions are cached for resumption. 0 means unlimited.
+     *
+     * @param sessionCacheSize cached sessions
+     * @return own instance for chaining
+     */
+    public synchronized TlsConfig setSessionCacheSize(int sessionCacheSize) {
+        checkNotBuilt();
+        this.sessionCacheSize = sessionCacheSize;
+        return this;
+    }
+
+    /**
+     * Sets for how long cached TLS sessions can be resumed. 0 means no limit.
+     *
+     * @param sessionTimeout session lifetime in seconds
+     * @return own instance for chaining
+     */
+    public synchronized TlsConfig setSessionTimeout(int sessionTimeout) {
+        checkNotBuilt();
+        this.sessionTimeout = sessionTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the protocols enabled on new connections, such as {@code TLSv1.2}. Null keeps the JVM defaults.
+     *
+     * @param protocols enabled protocols
+     * @return own instance for chaining
+     */
+    public TlsConfig setProtocols(String... protocols) {
+        this.protocols = protocols == null ? null : protocols.clone();
+        return this;
+    }
+
+    /**
+     * Sets the cipher suites enabled on new connections. Null keeps the JVM defaults.
+     *
+     * @param cipherSuites enabled cipher suites
+     * @return own instance for chaining
+     */
+    public TlsConfig setCipherSuites(String... cipherSuites) {
+        this.cipherSuites = cipherSuites == null ? null : cipherSuites.clone();
+        return this;
+    }
+
+    /**
+     * Sets the protocols offered with ALPN. The transports only speak HTTP/1.1, so the only
+     * useful value is {@code http/1.1}, for servers that refuse connections without ALPN.
+     * Ignored on JVMs without ALPN support (before Java 9 and 8u252).
+     *
+     * @param applicationProtocols ALPN protocol ids
+     * @return own instance for chaining
+     */
+    public TlsConfig setApplicationProtocols(String... applicationProtocols) {
+        this.applicationProtocols = applicationProtocols == null ? null : applicationProtocols.clone();
+        return this;
+    }
+
+    /**
+     * Sets how server host names are checked against their certificates
+     *
+     * @param hostnameVerifier hostname verifier
+     * @return own instance for chaining
+     */
+    public TlsConfig setHostnameVerifier(X509HostnameVerifier hostnameVerifier) {
+        this.hostnameVerifier = hostnameVerifier;
+        return this;
+    }
+
+    public String[] getProtocols() {
+        return protocols == null ? null : protocols.clone();
+    }
+
+    public String[] getCipherSuites() {
+        return cipherSuites == null ? null : cipherSuites.clone();
+    }
+
+    public String[] getApplicationProtocols() {
+        return applicationProtocols == null ? null : applicationProtocols.clone();
+    }
+
+    public X509HostnameVerifier getHostnameVerifier() {
+        return hostnameVerifier;
+    }
+
+    /**
+     * Returns the shared {@code SSLContext}, building it on first use
+     *
+     * @return SSL context of this configuration
+     * @throws SSLInitializationException if the context could not be built
+     */
+    public synchronized SSLContext getSSLContext() {
+        if(sslContext == null) {
+            try {
+                KeyManagerFactory keyManagers = null;
+                if(keyStore != null) {
+                    keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                    keyManagers.init(keyStore, keyPassword);
+                }
+                TrustManagerFactory trustManagers = null;
+                if(trustStore != null) {
+                    trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                    trustManagers.init(trustStore);
+                }
+
+                SSLContext context = SSLContext.getInstance(DEFAULT_PROTOCOL);
+                context.init(keyManagers == null ? null : keyManagers.getKeyManagers(),
+                        trustManagers == null ? null : trustManagers.getTrustManagers(), null);
+                SSLSessionContext sessions = context.getClientSessionContext();
+                if(sessionCacheSize >= 0) {
+                    sessions.setSessionCacheSize(sessionCacheSize);
+                }
+                if(sessionTimeout >= 0) {
+                    sessions.setSessionTimeout(sessionTimeout);
+                }
+                sslContext = context;
+            } catch(GeneralSecurityException ex) {
+                throw new SSLInitializationException("Could not initialize the SSL context", ex);
+            }
+        }
+        return sslContext;
+    }
+
+    /**
+     * Creates a socket factory for the Apache transport, sharing this configuration's context and statistics
+     *
+     * @return new socket factory
+     */
+    public TlsSocketFactory createSocketFactory() {
+        return new TlsSocketFactory(this);
+    }
+
+    /**
+     * Returns the handshakes completed, full and resumed
+     *
+     * @return handshakes completed
+     */
+    public long getHandshakes() {
+        return handshakes.get();
+    }
+
+    /**
+     * Returns the handshakes that resumed a cached session
+     *
+     * @return resumed handshakes
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the ratio of handshakes that resumed a cached session
+     *
+     * @return resumption rate between 0 and 1
+     */
+    public double getResumptionRate() {
+        long total = handshakes.get();
+        return total == 0 ? 0 : (double) resumedHandshakes.get() / total;
+    }
+
+    void onHandshake(boolean resumed) {
+        handshakes.incrementAndGet();
+        if(resumed) {
+            resumedHandshakes.incrementAndGet();
+        }
+    }
+
+    private void checkNotBuilt() {
+        if(sslContext != null) {
+            throw new IllegalStateException("SSL context already in use, configure a new TlsConfig instead");
+        }
+    }
+
+}
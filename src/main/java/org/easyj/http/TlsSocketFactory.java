@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+
+/**
+ * Socket factory of the Apache transport applying a {@link TlsConfig}: its shared
+ * {@code SSLContext}, protocols, cipher suites and ALPN ids, and counting its handshakes.
+ * <p>
+ * A handshake is taken as resumed when its session was created before the connection started.
+ *
+ * @since 1.3.0
+ */
+public class TlsSocketFactory extends SSLSocketFactory {
+
+    private final static Method SET_APPLICATION_PROTOCOLS = applicationProtocolsMethod();
+
+    private final TlsConfig config;
+
+    /**
+     * Creates a socket factory
+     *
+     * @param config TLS configuration
+     */
+    public TlsSocketFactory(TlsConfig config) {
+        super(config.getSSLContext(), config.getHostnameVerifier());
+        this.config = config;
+    }
+
+    public TlsConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    protected void prepareSocket(SSLSocket socket) throws IOException {
+        String[] protocols = config.getProtocols();
+        if(protocols != null) {
+            socket.setEnabledProtocols(protocols);
+        }
+        String[] cipherSuites = config.getCipherSuites();
+        if(cipherSuites != null) {
+            socket.setEnabledCipherSuites(cipherSuites);
+        }
+        String[] applicationProtocols = config.getApplicationProtocols();
+        if(applicationProtocols != null && SET_APPLICATION_PROTOCOLS != null) {
+            SSLParameters parameters = socket.getSSLParameters();
+            try {
+                SET_APPLICATION_PROTOCOLS.invoke(parameters, (Object) applicationProtocols);
+            } catch(Exception ex) {
+                throw new IOException("Could not set ALPN protocols: " + ex.getMessage());
+            }
+            socket.setSSLParameters(parameters);
+        }
+
+        final long start = System.currentTimeMillis();
+        socket.addHandshakeCompletedListener(new HandshakeCompletedListener() {
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                config.onHandshake(event.getSession().getCreationTime() < start);
+            }
+        });
+    }
+
+    /**
+     * Looks up {@code SSLParameters.setApplicationProtocols}, only available on JVMs with ALPN support
+     */
+    private static Method applicationProtocolsMethod() {
+        try {
+            return SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+        } catch(NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+}
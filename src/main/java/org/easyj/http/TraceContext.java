@@ -0,0 +1,210 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+/**
+ * W3C Trace Context of a request: trace id, parent span id and sampled flag, carried in the
+ * {@code traceparent} header as {@code 00-<trace id>-<span id>-<flags>}.
+ * <p>
+ * The context of the work a thread is doing, typically parsed from the incoming request,
+ * can be set with {@link #setCurrent(TraceContext)}; requests made by the thread then
+ * join that trace and follow its sampling decision.
+ *
+ * @see Tracer
+ * @since 1.3.0
+ */
+public final class TraceContext {
+
+    private final static ThreadLocal<TraceContext> CURRENT = new ThreadLocal<TraceContext>();
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final long spanId;
+    private final boolean sampled;
+    private String traceparent;
+
+    /**
+     * Creates a context
+     *
+     * @param traceIdHigh high 64 bits of the trace id
+     * @param traceIdLow low 64 bits of the trace id
+     * @param spanId span id
+     * @param sampled whether the trace is recorded
+     */
+    public TraceContext(long traceIdHigh, long traceIdLow, long spanId, boolean sampled) {
+        if((traceIdHigh == 0 && traceIdLow == 0) || spanId == 0) {
+            throw new IllegalArgumentException("Trace and span ids may not be zero");
+        }
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    /**
+     * Parses a {@code traceparent} header value
+     *
+     * @param traceparent header value
+     * @return the context or null if the value is not valid
+     */
+    public static TraceContext parse(String traceparent) {
+        if(traceparent == null) {
+            return null;
+        }
+        String value = traceparent.trim();
+        if(value.length() < 55 || value.charAt(2) != '-' || value.charAt(35) != '-' || value.charAt(52) != '-'
+                || (value.length() > 55 && (value.startsWith("00") || value.charAt(55) != '-'))
+                || value.startsWith("ff")) {
+            return null;
+        }
+        try {
+            parseHex(value, 0, 2);
+            long high = parseHex(value, 3, 19);
+            long low = parseHex(value, 19, 35);
+            long span = parseHex(value, 36, 52);
+            long flags = parseHex(value, 53, 55);
+            if((high == 0 && low == 0) || span == 0) {
+                return null;
+            }
+            return new TraceContext(high, low, span, (flags & 1) == 1);
+        } catch(NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the context of the current thread
+     *
+     * @return current context or null
+     */
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the context of the current thread
+     *
+     * @param context current context, null to clear it
+     */
+    public static void setCurrent(TraceContext context) {
+        if(context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    /**
+     * Creates the context of a child span in the same trace
+     *
+     * @param childSpanId span id of the child
+     * @return child context
+     */
+    public TraceContext child(long childSpanId) {
+        return new TraceContext(traceIdHigh, traceIdLow, childSpanId, sampled);
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    long spanIdValue() {
+        return spanId;
+    }
+
+    /**
+     * Returns the trace id as 32 lowercase hex digits
+     *
+     * @return trace id
+     */
+    public String getTraceId() {
+        char[] chars = new char[32];
+        hex(traceIdHigh, chars, 0);
+        hex(traceIdLow, chars, 16);
+        return new String(chars);
+    }
+
+    /**
+     * Returns the span id as 16 lowercase hex digits
+     *
+     * @return span id
+     */
+    public String getSpanId() {
+        return toHex(spanId);
+    }
+
+    /**
+     * Formats the {@code traceparent} header value, once
+     *
+     * @return header value
+     */
+    public String toTraceparent() {
+        String value = traceparent;
+        if(value == null) {
+            char[] chars = new char[55];
+            chars[0] = '0';
+            chars[1] = '0';
+            chars[2] = '-';
+            hex(traceIdHigh, chars, 3);
+            hex(traceIdLow, chars, 19);
+            chars[35] = '-';
+            hex(spanId, chars, 36);
+            chars[52] = '-';
+            chars[53] = '0';
+            chars[54] = sampled ? '1' : '0';
+            value = new String(chars);
+            traceparent = value;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return toTraceparent();
+    }
+
+    static String toHex(long value) {
+        char[] chars = new char[16];
+        hex(value, chars, 0);
+        return new String(chars);
+    }
+
+    private static void hex(long value, char[] chars, int offset) {
+        for(int i = 15; i >= 0; i--) {
+            chars[offset + i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    private static long parseHex(String value, int start, int end) {
+        long result = 0;
+        for(int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            int digit;
+            if(c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if(c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                throw new NumberFormatException("Not a lowercase hex digit: " + c);
+            }
+            result = result << 4 | digit;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Propagates W3C Trace Context headers and records a {@link Span} for each sampled request.
+ * <p>
+ * Requests join the trace of the thread's {@link TraceContext#current() current context}, or of a
+ * {@code traceparent} header already set on the request, and follow its sampling decision.
+ * Otherwise a new trace is started for a {@code sampleRate} share of the requests.
+ * The sampling decision comes first and takes no allocation: a request that is neither sampled
+ * nor part of a trace is left untouched.
+ * <pre>
+ * client.setTracer(new Tracer(reporter, 0.01));
+ * </pre>
+ * The same instance can be shared by any number of {@code EasyHttpClient}s.
+ *
+ * @since 1.3.0
+ */
+public class Tracer {
+
+    public final static String TRACEPARENT = "traceparent";
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final SpanReporter reporter;
+    private final long threshold;
+    private final AtomicLong counter;
+    private final Random random;
+
+    /**
+     * Creates a tracer
+     *
+     * @param reporter receives the finished spans
+     * @param sampleRate share of new traces recorded, between 0 and 1
+     */
+    public Tracer(SpanReporter reporter, double sampleRate) {
+        if(reporter == null) {
+            throw new IllegalArgumentException("Reporter may not be null");
+        }
+        if(sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1: " + sampleRate);
+        }
+        this.reporter = reporter;
+        this.threshold = sampleRate >= 1 ? Long.MAX_VALUE : (long) (sampleRate * Long.MAX_VALUE);
+        this.counter = new AtomicLong();
+        this.random = new Random();
+    }
+
+    /**
+     * Makes the sampling decision for a request about to be executed and sets its {@code traceparent}
+     *
+     * @param request request about to be executed
+     * @return the span recording the request or null if it is not sampled
+     */
+    Span start(HttpRequestBase request) {
+        TraceContext parent = TraceContext.current();
+        if(parent == null) {
+            Header header = request.getFirstHeader(TRACEPARENT);
+            if(header != null) {
+                parent = TraceContext.parse(header.getValue());
+            }
+        }
+
+        if(parent == null ? !sample() : !parent.isSampled()) {
+            if(parent != null) {
+                request.setHeader(TRACEPARENT, parent.toTraceparent());
+            }
+            return null;
+        }
+
+        TraceContext context = parent == null ? new TraceContext(nextId(), nextId(), nextId(), true) : parent.child(nextId());
+        request.setHeader(TRACEPARENT, context.toTraceparent());
+        return new Span(this, context, parent == null ? 0 : parent.spanIdValue(), request.getMethod(), request.getURI());
+    }
+
+    void report(Span span) {
+        try {
+            reporter.report(span);
+        } catch(RuntimeException ex) {
+            logger.warn("Span reporter failed", ex);
+        }
+    }
+
+    /**
+     * Samples a share of the requests, spreading the decisions with Fibonacci hashing of a counter
+     */
+    private boolean sample() {
+        if(threshold == Long.MAX_VALUE) {
+            return true;
+        }
+        if(threshold == 0) {
+            return false;
+        }
+        return (counter.incrementAndGet() * 0x9E3779B97F4A7C15L) >>> 1 < threshold;
+    }
+
+    private long nextId() {
+        long id;
+        do {
+            id = random.nextLong();
+        } while(id == 0);
+        return id;
+    }
+
+}
@@ -0,0 +1,334 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * URI template as defined by RFC 6570, up to level 3: simple {@code {var}}, reserved {@code {+var}},
+ * fragment {@code {#var}}, label {@code {.var}}, path {@code {/var}}, path parameter {@code {;var}},
+ * query {@code {?var}} and query continuation {@code {&var}} expressions, each with one or more variables.
+ * <p>
+ * The template is parsed and validated once, expanding it only walks the parsed parts and percent-encodes
+ * the values, so the result is always a valid URI. Undefined (null) variables are left out.
+ * Instances are immutable and thread safe.
+ *
+ * @since 1.3.0
+ */
+public class UriTemplate {
+
+    private final static char[] HEX = "0123456789ABCDEF".toCharArray();
+    private final static boolean[] UNRESERVED = new boolean[128];
+    private final static boolean[] RESERVED = new boolean[128];
+
+    static {
+        for(char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for(char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for(char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for(char c : "-._~".toCharArray()) {
+            UNRESERVED[c] = true;
+        }
+        for(char c : ":/?#[]@!$&'()*+,;=".toCharArray()) {
+            RESERVED[c] = true;
+        }
+    }
+
+    private final String template;
+    private final List<Object> parts;
+    private final List<String> variables;
+    private final int estimatedLength;
+
+    /**
+     * Parses and validates a template
+     *
+     * @param template URI template
+     * @throws IllegalArgumentException if the template is malformed or does not produce a valid URI
+     */
+    public UriTemplate(String template) {
+        if(template == null) {
+            throw new IllegalArgumentException("Template may not be null");
+        }
+        this.template = template;
+        this.parts = new ArrayList<Object>();
+        this.variables = new ArrayList<String>();
+
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while(i < template.length()) {
+            char c = template.charAt(i);
+            if(c == '{') {
+                int end = template.indexOf('}', i);
+                if(end == -1) {
+                    throw new IllegalArgumentException("Unclosed expression at " + i + " in template: " + template);
+                }
+                if(literal.length() > 0) {
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                Expression expression = new Expression(template.substring(i + 1, end), template);
+                for(String name : expression.names) {
+                    if(!variables.contains(name)) {
+                        variables.add(name);
+                    }
+                }
+                parts.add(expression);
+                i = end + 1;
+            } else if(c == '}') {
+                throw new IllegalArgumentException("Unopened expression at " + i + " in template: " + template);
+            } else {
+                appendLiteral(literal, c);
+                i++;
+            }
+        }
+        if(literal.length() > 0) {
+            parts.add(literal.toString());
+        }
+        this.estimatedLength = template.length() + 16 * variables.size();
+
+        try {
+            new URI(expand(Collections.<String, Object>emptyMap()));
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Template does not produce a valid URI: " + template, ex);
+        }
+    }
+
+    /**
+     * Expands the template with the given variables
+     *
+     * @param values variable values, formatted as value.toString()
+     * @return expanded URI
+     */
+    public String expand(Map<String, ?> values) {
+        StringBuilder sb = new StringBuilder(estimatedLength);
+        for(Object part : parts) {
+            if(part instanceof String) {
+                sb.append((String) part);
+            } else {
+                ((Expression) part).expand(values, sb);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Expands the template into an {@code URI}
+     *
+     * @param values variable values, formatted as value.toString()
+     * @return expanded URI
+     */
+    public URI expandURI(Map<String, ?> values) {
+        return URI.create(expand(values));
+    }
+
+    /**
+     * Returns the names of the variables in the template, in order of appearance
+     *
+     * @return variable names
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(variables);
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    /**
+     * Literals keep reserved characters and percent-encode anything else not allowed in a URI
+     */
+    private static void appendLiteral(StringBuilder sb, char c) {
+        if(c < 128 && (UNRESERVED[c] || RESERVED[c] || c == '%')) {
+            sb.append(c);
+        } else {
+            encode(sb, String.valueOf(c), false);
+        }
+    }
+
+    private static void encode(StringBuilder sb, String value, boolean allowReserved) {
+        int len = value.length();
+        for(int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if(c < 128 && UNRESERVED[c]) {
+                sb.append(c);
+            } else if(allowReserved && c < 128 && RESERVED[c] && allowedAt(sb, c)) {
+                sb.append(c);
+            } else if(allowReserved && c == '%' && i + 2 < len && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2))) {
+                sb.append(c);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < len ? i + 2 : i + 1;
+                byte[] bytes;
+                try {
+                    bytes = value.substring(i, end).getBytes(HTTP.UTF_8);
+                } catch (UnsupportedEncodingException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                for(byte b : bytes) {
+                    sb.append('%').append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+                }
+                i = end - 1;
+            }
+        }
+    }
+
+    /**
+     * Whether a reserved character passed through by a reserved expansion is valid where it lands:
+     * {@code [} and {@code ]} only in the authority, for IPv6 literals, and {@code #} only once
+     */
+    private static boolean allowedAt(CharSequence sb, char c) {
+        if(c == '#') {
+            return indexOf(sb, '#', 0) == -1;
+        }
+        if(c != '[' && c != ']') {
+            return true;
+        }
+        int authority = authorityStart(sb);
+        if(authority == -1) {
+            return false;
+        }
+        for(int i = authority; i < sb.length(); i++) {
+            char at = sb.charAt(i);
+            if(at == '/' || at == '?' || at == '#') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start of the authority of a partially expanded URI, after its {@code //}, or -1 if it has none
+     */
+    private static int authorityStart(CharSequence sb) {
+        int start = 0;
+        int colon = indexOf(sb, ':', 0);
+        if(colon > 0) {
+            boolean scheme = Character.isLetter(sb.charAt(0));
+            for(int i = 1; i < colon && scheme; i++) {
+                char at = sb.charAt(i);
+                scheme = Character.isLetterOrDigit(at) || at == '+' || at == '-' || at == '.';
+            }
+            if(scheme) {
+                start = colon + 1;
+            }
+        }
+        return sb.length() >= start + 2 && sb.charAt(start) == '/' && sb.charAt(start + 1) == '/' ? start + 2 : -1;
+    }
+
+    private static int indexOf(CharSequence sb, char c, int from) {
+        for(int i = from; i < sb.length(); i++) {
+            if(sb.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * Single {@code {...}} expression of the template
+     */
+    private static class Expression {
+
+        private final String[] names;
+        private final String first;
+        private final char separator;
+        private final boolean named;
+        private final String ifEmpty;
+        private final boolean allowReserved;
+
+        Expression(String expression, String template) {
+            if(expression.isEmpty()) {
+                throw new IllegalArgumentException("Empty expression in template: " + template);
+            }
+            char op = expression.charAt(0);
+            String variableList = expression;
+            switch(op) {
+                case '+': first = "";  separator = ','; named = false; ifEmpty = "";  allowReserved = true;  break;
+                case '#': first = "#"; separator = ','; named = false; ifEmpty = "";  allowReserved = true;  break;
+                case '.': first = "."; separator = '.'; named = false; ifEmpty = "";  allowReserved = false; break;
+                case '/': first = "/"; separator = '/'; named = false; ifEmpty = "";  allowReserved = false; break;
+                case ';': first = ";"; separator = ';'; named = true;  ifEmpty = "";  allowReserved = false; break;
+                case '?': first = "?"; separator = '&'; named = true;  ifEmpty = "="; allowReserved = false; break;
+                case '&': first = "&"; separator = '&'; named = true;  ifEmpty = "="; allowReserved = false; break;
+                default:  first = "";  separator = ','; named = false; ifEmpty = "";  allowReserved = false; op = 0;
+            }
+            if(op != 0) {
+                variableList = expression.substring(1);
+            }
+
+            names = variableList.split(",", -1);
+            for(String name : names) {
+                if(name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty variable name in expression {" + expression + "} of template: " + template);
+                }
+                for(int i = 0; i < name.length(); i++) {
+                    char c = name.charAt(i);
+                    if(!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c == '%')) {
+                        throw new IllegalArgumentException("Unsupported variable name '" + name + "' in expression {" + expression
+                                + "} of template: " + template + ". Modifiers and level 4 operators are not supported");
+                    }
+                }
+            }
+        }
+
+        void expand(Map<String, ?> values, StringBuilder sb) {
+            boolean firstDefined = true;
+            for(String name : names) {
+                Object value = values.get(name);
+                if(value == null) {
+                    continue;
+                }
+                if(firstDefined) {
+                    sb.append(first);
+                    firstDefined = false;
+                } else {
+                    sb.append(separator);
+                }
+
+                String string = value.toString();
+                if(named) {
+                    sb.append(name);
+                    if(string.isEmpty()) {
+                        sb.append(ifEmpty);
+                        continue;
+                    }
+                    sb.append('=');
+                }
+                encode(sb, string, allowReserved);
+            }
+        }
+    }
+
+}
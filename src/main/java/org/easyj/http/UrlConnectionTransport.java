@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Transport backed by the JDK's own {@code HttpURLConnection}, with no extra dependencies.
+ * Connections are kept alive and pooled by the JDK, see the {@code http.keepAlive} and
+ * {@code http.maxConnections} system properties.
+ * <p>
+ * Connect and read timeouts are taken from the request parameters, see {@link Timeouts},
+ * and aborting the request disconnects it.
+ *
+ * @since 1.3.0
+ */
+public class UrlConnectionTransport extends AbstractHttpTransport {
+
+    @Override
+    protected HttpResponse send(HttpUriRequest request, HttpContext context) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) request.getURI().toURL().openConnection();
+        conn.setInstanceFollowRedirects(false);
+        conn.setUseCaches(false);
+        conn.setConnectTimeout(HttpConnectionParams.getConnectionTimeout(request.getParams()));
+        conn.setReadTimeout(HttpConnectionParams.getSoTimeout(request.getParams()));
+        conn.setRequestMethod(request.getMethod());
+        abortWith(conn, context.getAttribute(ORIGINAL_REQUEST));
+        for(Header header : request.getAllHeaders()) {
+            conn.addRequestProperty(header.getName(), header.getValue());
+        }
+
+        if(request instanceof HttpEntityEnclosingRequest) {
+            writeEntity(conn, ((HttpEntityEnclosingRequest) request).getEntity());
+        }
+
+        int status = conn.getResponseCode();
+        if(status == -1) {
+            conn.disconnect();
+            throw new ClientProtocolException("Invalid http response from [" + request.getURI() + "]");
+        }
+
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, conn.getResponseMessage());
+        String name, value;
+        for(int i = 0; (value = conn.getHeaderField(i)) != null; i++) {
+            name = conn.getHeaderFieldKey(i);
+            if(name != null) {
+                response.addHeader(name, value);
+            }
+        }
+
+        InputStream content = status >= HttpStatus.SC_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream();
+        if(content != null && !"HEAD".equals(request.getMethod())) {
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(content);
+            entity.setContentLength(contentLength(response));
+            entity.setContentType(response.getFirstHeader(HTTP.CONTENT_TYPE));
+            entity.setContentEncoding(response.getFirstHeader(HTTP.CONTENT_ENCODING));
+            response.setEntity(entity);
+        } else if(content != null) {
+            content.close();
+        }
+        return response;
+    }
+
+    /**
+     * Makes aborting the request disconnect the connection, interrupting any blocked read or write
+     */
+    private void abortWith(final HttpURLConnection conn, Object request) throws IOException {
+        if(!(request instanceof AbortableHttpRequest)) {
+            return;
+        }
+        AbortableHttpRequest abortable = (AbortableHttpRequest) request;
+        abortable.setReleaseTrigger(new ConnectionReleaseTrigger() {
+            public void releaseConnection() {
+            }
+
+            public void abortConnection() {
+                conn.disconnect();
+            }
+        });
+        if(request instanceof HttpUriRequest && ((HttpUriRequest) request).isAborted()) {
+            throw new SocketException("Request aborted");
+        }
+    }
+
+    /**
+     * Streams the request entity, never buffering it in memory
+     */
+    private void writeEntity(HttpURLConnection conn, HttpEntity entity) throws IOException {
+        if(entity == null) {
+            return;
+        }
+
+        conn.setDoOutput(true);
+        if(entity.getContentType() != null && conn.getRequestProperty(HTTP.CONTENT_TYPE) == null) {
+            conn.setRequestProperty(HTTP.CONTENT_TYPE, entity.getContentType().getValue());
+        }
+        if(entity.getContentEncoding() != null && conn.getRequestProperty(HTTP.CONTENT_ENCODING) == null) {
+            conn.setRequestProperty(HTTP.CONTENT_ENCODING, entity.getContentEncoding().getValue());
+        }
+
+        long length = entity.getContentLength();
+        if(length >= 0 && length <= Integer.MAX_VALUE && !entity.isChunked()) {
+            conn.setFixedLengthStreamingMode((int) length);
+        } else {
+            conn.setChunkedStreamingMode(0);
+        }
+
+        OutputStream out = conn.getOutputStream();
+        try {
+            entity.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private long contentLength(HttpResponse response) {
+        Header header = response.getFirstHeader(HTTP.CONTENT_LEN);
+        if(header != null) {
+            try {
+                return Long.parseLong(header.getValue().trim());
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    public void shutdown() {
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+/**
+ * HTTP/2 flow control and HPACK settings of {@link Http2Transport}.
+ * <p>
+ * The JDK engine reads these settings from the {@code jdk.httpclient.*} system properties whenever it
+ * opens an HTTP/2 connection, so they apply to every {@code java.net.http} client of the JVM, and only
+ * to connections opened after {@link #apply()}. Settings left unset keep the JDK defaults.
+ * <pre>
+ * Http2Settings settings = new Http2Settings().setInitialWindowSize(1024 * 1024).setHeaderTableSize(64 * 1024);
+ * EasyHttpClient client = new EasyHttpClient(new Http2Transport(settings, null));
+ * </pre>
+ *
+ * @since 1.3.0
+ */
+public class Http2Settings {
+
+    public final static String HEADER_TABLE_SIZE = "jdk.httpclient.hpack.maxheadertablesize";
+    public final static String INITIAL_WINDOW_SIZE = "jdk.httpclient.windowsize";
+    public final static String CONNECTION_WINDOW_SIZE = "jdk.httpclient.connectionWindowSize";
+    public final static String MAX_FRAME_SIZE = "jdk.httpclient.maxframesize";
+
+    private int headerTableSize = -1;
+    private int initialWindowSize = -1;
+    private int connectionWindowSize = -1;
+    private int maxFrameSize = -1;
+
+    /**
+     * Sets the size of the HPACK dynamic table the server may use to compress the response headers
+     *
+     * @param headerTableSize table size in bytes, 0 to disable the dynamic table
+     * @return own instance for chaining
+     */
+    public Http2Settings setHeaderTableSize(int headerTableSize) {
+        this.headerTableSize = check(headerTableSize, 0, Integer.MAX_VALUE, "headerTableSize");
+        return this;
+    }
+
+    /**
+     * Sets the flow control window of each stream, how much of a response the server may send before
+     * the client acknowledges it
+     *
+     * @param initialWindowSize window size in bytes
+     * @return own instance for chaining
+     */
+    public Http2Settings setInitialWindowSize(int initialWindowSize) {
+        this.initialWindowSize = check(initialWindowSize, 16 * 1024, Integer.MAX_VALUE, "initialWindowSize");
+        return this;
+    }
+
+    /**
+     * Sets the flow control window of the whole connection, shared by all its streams
+     *
+     * @param connectionWindowSize window size in bytes, not less than the window of each stream
+     * @return own instance for chaining
+     */
+    public Http2Settings setConnectionWindowSize(int connectionWindowSize) {
+        this.connectionWindowSize = check(connectionWindowSize, 64 * 1024 - 1, Integer.MAX_VALUE, "connectionWindowSize");
+        return this;
+    }
+
+    /**
+     * Sets the largest frame the server may send
+     *
+     * @param maxFrameSize frame size in bytes, from 16384 to 16777215
+     * @return own instance for chaining
+     */
+    public Http2Settings setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = check(maxFrameSize, 16 * 1024, 16 * 1024 * 1024 - 1, "maxFrameSize");
+        return this;
+    }
+
+    public int getHeaderTableSize() {
+        return headerTableSize;
+    }
+
+    public int getInitialWindowSize() {
+        return initialWindowSize;
+    }
+
+    public int getConnectionWindowSize() {
+        return connectionWindowSize;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Sets the settings as the JDK system properties, for the HTTP/2 connections opened from now on
+     */
+    public void apply() {
+        set(HEADER_TABLE_SIZE, headerTableSize);
+        set(INITIAL_WINDOW_SIZE, initialWindowSize);
+        set(CONNECTION_WINDOW_SIZE, connectionWindowSize);
+        set(MAX_FRAME_SIZE, maxFrameSize);
+    }
+
+    private void set(String property, int value) {
+        if(value >= 0) {
+            System.setProperty(property, String.valueOf(value));
+        }
+    }
+
+    private static int check(int value, int min, int max, String name) {
+        if(value < min || value > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max + ": " + value);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.net.ssl.SSLParameters;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * HTTP/2 transport backed by the JDK's {@code java.net.http.HttpClient}, available on Java 11 and later.
+ * <p>
+ * Concurrent requests to the same origin are multiplexed as streams over a single connection, instead of
+ * queueing for pooled HTTP/1.1 connections, and headers are compressed with HPACK. HTTPS servers are offered
+ * {@code h2} through ALPN; plaintext servers are asked to switch to {@code h2c} by an {@code Upgrade} on the
+ * first request without a body. The JDK engine has no h2c prior knowledge mode, so plaintext servers that
+ * only accept prior knowledge are talked to over HTTP/1.1. Servers without HTTP/2 are talked to over HTTP/1.1
+ * as well, and each response tells the version it was received with. Flow control windows, frame size and
+ * the HPACK table are tuned with {@link Http2Settings}.
+ * <p>
+ * The read timeout of the request parameters, see {@link Timeouts}, bounds the wait for the response
+ * headers, together with the connect timeout, and aborting the request cancels its stream.
+ * <pre>
+ * EasyHttpClient client = new EasyHttpClient(new Http2Transport());
+ * </pre>
+ *
+ * @since 1.3.0
+ */
+public class Http2Transport extends AbstractHttpTransport {
+
+    public final static ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    /**
+     * Headers the JDK engine sets itself, or which HTTP/2 does not allow
+     */
+    private final static Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "keep-alive", "proxy-connection", "te", "transfer-encoding", "upgrade"));
+
+    private final ExecutorService executor;
+    private final HttpClient client;
+
+    /**
+     * Creates a new transport with the JDK defaults
+     */
+    public Http2Transport() {
+        this(null, null);
+    }
+
+    /**
+     * Creates a new transport
+     *
+     * @param settings HTTP/2 settings, applied to the whole JVM, or null for the JDK defaults
+     * @param tlsConfig HTTPS configuration, null for the JVM defaults; its hostname verifier does not apply,
+     *        the JDK engine always checks the host name
+     */
+    public Http2Transport(Http2Settings settings, TlsConfig tlsConfig) {
+        if(settings != null) {
+            settings.apply();
+        }
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "easyj-http2-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor);
+        if(tlsConfig != null) {
+            builder.sslContext(tlsConfig.getSSLContext());
+            SSLParameters parameters = tlsConfig.getSSLContext().getDefaultSSLParameters();
+            if(tlsConfig.getProtocols() != null) {
+                parameters.setProtocols(tlsConfig.getProtocols());
+            }
+            if(tlsConfig.getCipherSuites() != null) {
+                parameters.setCipherSuites(tlsConfig.getCipherSuites());
+            }
+            builder.sslParameters(parameters);
+        }
+        client = builder.build();
+    }
+
+    @Override
+    protected HttpResponse send(HttpUriRequest request, HttpContext context) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getURI());
+        int connectTimeout = HttpConnectionParams.getConnectionTimeout(request.getParams());
+        int readTimeout = HttpConnectionParams.getSoTimeout(request.getParams());
+        if(readTimeout > 0) {
+            builder.timeout(Duration.ofMillis((long) readTimeout + Math.max(0, connectTimeout)));
+        }
+        HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        try {
+            for(Header header : request.getAllHeaders()) {
+                if(!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ENGLISH))) {
+                    builder.header(header.getName(), header.getValue());
+                }
+            }
+            if(entity != null && entity.getContentType() != null && !request.containsHeader(HTTP.CONTENT_TYPE)) {
+                builder.header(HTTP.CONTENT_TYPE, entity.getContentType().getValue());
+            }
+            if(entity != null && entity.getContentEncoding() != null && !request.containsHeader(HTTP.CONTENT_ENCODING)) {
+                builder.header(HTTP.CONTENT_ENCODING, entity.getContentEncoding().getValue());
+            }
+            builder.method(request.getMethod(), publisher(entity));
+        } catch (IllegalArgumentException ex) {
+            throw new ClientProtocolException("Invalid request to [" + request.getURI() + "]: " + ex.getMessage(), ex);
+        }
+
+        Exchange exchange = new Exchange();
+        abortWith(exchange, context.getAttribute(ORIGINAL_REQUEST));
+        java.net.http.HttpResponse<InputStream> received = exchange.send(client, builder.build());
+
+        int status = received.statusCode();
+        ProtocolVersion version = received.version() == HttpClient.Version.HTTP_2 ? HTTP_2 : HttpVersion.HTTP_1_1;
+        BasicHttpResponse response = new BasicHttpResponse(version, status, EnglishReasonPhraseCatalog.INSTANCE.getReason(status, Locale.ENGLISH));
+        for(Map.Entry<String, List<String>> header : received.headers().map().entrySet()) {
+            if(!header.getKey().startsWith(":")) {
+                for(String value : header.getValue()) {
+                    response.addHeader(header.getKey(), value);
+                }
+            }
+        }
+
+        InputStream content = received.body();
+        if("HEAD".equals(request.getMethod())) {
+            content.close();
+        } else {
+            BasicHttpEntity responseEntity = new BasicHttpEntity();
+            responseEntity.setContent(content);
+            responseEntity.setContentLength(received.headers().firstValueAsLong(HTTP.CONTENT_LEN).orElse(-1));
+            responseEntity.setContentType(response.getFirstHeader(HTTP.CONTENT_TYPE));
+            responseEntity.setContentEncoding(response.getFirstHeader(HTTP.CONTENT_ENCODING));
+            response.setEntity(responseEntity);
+        }
+        return response;
+    }
+
+    /**
+     * Streams the request entity from its content, never buffering it in memory
+     */
+    private HttpRequest.BodyPublisher publisher(final HttpEntity entity) {
+        if(entity == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        HttpRequest.BodyPublisher content = HttpRequest.BodyPublishers.ofInputStream(new Supplier<InputStream>() {
+            public InputStream get() {
+                try {
+                    return entity.getContent();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        });
+        long length = entity.getContentLength();
+        return length >= 0 && !entity.isChunked() ? HttpRequest.BodyPublishers.fromPublisher(content, length) : content;
+    }
+
+    /**
+     * Makes aborting the request cancel its exchange, before or after the response arrived
+     */
+    private void abortWith(Exchange exchange, Object request) throws IOException {
+        if(!(request instanceof AbortableHttpRequest)) {
+            return;
+        }
+        ((AbortableHttpRequest) request).setReleaseTrigger(exchange);
+        if(request instanceof HttpUriRequest && ((HttpUriRequest) request).isAborted()) {
+            throw new SocketException("Request aborted");
+        }
+    }
+
+    /**
+     * Releases the threads of the transport. The JDK engine closes its connections once it is no longer used.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A single request and response, which can be aborted at any time
+     */
+    private static class Exchange implements ConnectionReleaseTrigger {
+
+        private volatile CompletableFuture<java.net.http.HttpResponse<InputStream>> future;
+        private volatile InputStream body;
+        private volatile boolean aborted;
+
+        java.net.http.HttpResponse<InputStream> send(HttpClient client, HttpRequest request) throws IOException {
+            future = client.sendAsync(request, java.net.http.HttpResponse.BodyHandlers.ofInputStream());
+            if(aborted) {
+                future.cancel(true);
+            }
+            try {
+                java.net.http.HttpResponse<InputStream> response = future.get();
+                body = response.body();
+                if(aborted) {
+                    body.close();
+                    throw new SocketException("Request aborted");
+                }
+                return response;
+            } catch (CancellationException ex) {
+                throw new SocketException("Request aborted");
+            } catch (InterruptedException ex) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Request interrupted");
+            } catch (ExecutionException ex) {
+                throw toIOException(ex.getCause());
+            }
+        }
+
+        /**
+         * Translates the failures of the JDK engine into the exceptions of the other transports,
+         * so timeouts are told apart the same way
+         */
+        private IOException toIOException(Throwable cause) {
+            if(aborted) {
+                return new SocketException("Request aborted");
+            }
+            if(cause instanceof HttpConnectTimeoutException) {
+                ConnectTimeoutException timeout = new ConnectTimeoutException(cause.getMessage());
+                timeout.initCause(cause);
+                return timeout;
+            }
+            if(cause instanceof HttpTimeoutException) {
+                SocketTimeoutException timeout = new SocketTimeoutException("Read timed out");
+                timeout.initCause(cause);
+                return timeout;
+            }
+            if(cause instanceof UncheckedIOException) {
+                return ((UncheckedIOException) cause).getCause();
+            }
+            if(cause instanceof IOException) {
+                return (IOException) cause;
+            }
+            return new IOException(cause);
+        }
+
+        public void releaseConnection() throws IOException {
+            InputStream content = body;
+            if(content != null) {
+                content.close();
+            }
+        }
+
+        public void abortConnection() throws IOException {
+            aborted = true;
+            CompletableFuture<?> pending = future;
+            if(pending != null) {
+                pending.cancel(true);
+            }
+            releaseConnection();
+        }
+    }
+
+}
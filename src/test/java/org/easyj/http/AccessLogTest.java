@@ -0,0 +1,197 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests AccessLog
+ *
+ * @since 1.3.0
+ */
+public class AccessLogTest {
+
+    /**
+     * Test of requests logged by the client
+     */
+    @Test
+    public void testClient() {
+        System.out.println("client access log");
+        ListSink sink = new ListSink();
+        AccessLog accessLog = new AccessLog(sink, 16);
+        EasyHttpClient client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                response.setEntity(new StringEntity(LocalServer.HELLO));
+            }
+        })).setAccessLog(accessLog);
+
+        client.get("http://memory/hello").consumeAsString();
+        client.clear();
+        client.post("http://memory/hello");
+        client.clear();
+        accessLog.close();
+
+        assertEquals(2, sink.lines.size());
+        assertTrue(sink.lines.get(0), sink.lines.get(0).contains("\"method\":\"GET\",\"uri\":\"http://memory/hello\",\"status\":200,\"bytes\":" + LocalServer.HELLO.length()));
+        assertTrue(sink.lines.get(1), sink.lines.get(1).contains("\"method\":\"POST\""));
+        assertEquals(2, accessLog.getWritten());
+        assertEquals(0, accessLog.getDropped());
+    }
+
+    /**
+     * Test of consecutive requests on the same client: each entry carries its own outcome
+     */
+    @Test
+    public void testOutcomePerRequest() {
+        System.out.println("outcome per request");
+        ListSink sink = new ListSink();
+        AccessLog accessLog = new AccessLog(sink, 16);
+        OutcomeSequence.run(new EasyHttpClient(OutcomeSequence.transport()).setAccessLog(accessLog));
+        accessLog.close();
+
+        assertEquals(4, sink.lines.size());
+        assertTrue(sink.lines.get(0), sink.lines.get(0).contains("\"status\":200,"));
+        assertFalse(sink.lines.get(0), sink.lines.get(0).contains("IOException"));
+        assertTrue(sink.lines.get(1), sink.lines.get(1).contains("\"status\":0,"));
+        assertTrue(sink.lines.get(1), sink.lines.get(1).contains("java.io.IOException"));
+        assertTrue(sink.lines.get(2), sink.lines.get(2).contains("\"status\":503,"));
+        assertFalse(sink.lines.get(2), sink.lines.get(2).contains("IOException"));
+        assertTrue(sink.lines.get(3), sink.lines.get(3).contains("\"status\":200,"));
+        assertFalse(sink.lines.get(3), sink.lines.get(3).contains("IOException"));
+
+        System.out.println("after close");
+        assertFalse(accessLog.log("GET", "/late", 200, 10, 1000, 2000, null));
+        assertEquals(1, accessLog.getDropped());
+        assertEquals(4, accessLog.getWritten());
+    }
+
+    /**
+     * Test of entries dropped while the sink can not keep up
+     */
+    @Test
+    public void testDropped() throws InterruptedException {
+        System.out.println("dropped");
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ListSink sink = new ListSink() {
+            @Override
+            public void write(CharSequence line) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(line);
+            }
+        };
+        AccessLog accessLog = new AccessLog(sink, 4);
+        assertTrue(accessLog.log("GET", "/first", 200, 10, 1000, 2000, null));
+        blocked.await();
+        for(int i = 0; i < 10; i++) {
+            accessLog.log("GET", "/" + i, 200, 10, 1000, 2000, null);
+        }
+        assertEquals(6, accessLog.getDropped());
+
+        release.countDown();
+        accessLog.close();
+        assertEquals(5, accessLog.getWritten());
+        assertEquals(5, sink.lines.size());
+    }
+
+    /**
+     * Test of close while producers are logging: every entry is either written or counted as dropped
+     */
+    @Test
+    public void testClose_Concurrent() throws InterruptedException {
+        System.out.println("close while logging");
+        ListSink sink = new ListSink();
+        final AccessLog accessLog = new AccessLog(sink, 1024);
+        final AtomicLong recorded = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(4);
+        Thread[] producers = new Thread[4];
+        for(int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(new Runnable() {
+                public void run() {
+                    started.countDown();
+                    for(int j = 0; j < 20000; j++) {
+                        if(accessLog.log("GET", "/" + j, 200, 10, 1000, 2000, null)) {
+                            recorded.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            producers[i].start();
+        }
+        started.await();
+        accessLog.close();
+        for(Thread producer : producers) {
+            producer.join();
+        }
+
+        assertEquals(recorded.get(), accessLog.getWritten());
+        assertEquals(recorded.get(), sink.lines.size());
+        assertEquals(4 * 20000, accessLog.getWritten() + accessLog.getDropped());
+    }
+
+    /**
+     * Test of a file access log, with escaped values
+     */
+    @Test
+    public void testFile() throws IOException {
+        System.out.println("file");
+        File file = File.createTempFile("easyj-http", ".log");
+        file.deleteOnExit();
+        AccessLog accessLog = new AccessLog(file, 16);
+        accessLog.log("GET", "/a\"b", 0, -1, 0, 1500, "java.net.ConnectException");
+        accessLog.close();
+
+        String content = new String(LocalServer.read(new FileInputStream(file)), "UTF-8");
+        assertTrue(content, content.contains("\"uri\":\"/a\\\"b\""));
+        assertTrue(content, content.contains("\"totalMicros\":1,\"error\":\"java.net.ConnectException\"}\n"));
+        file.delete();
+    }
+
+    private static class ListSink implements AccessLog.Sink {
+
+        List<String> lines = new CopyOnWriteArrayList<String>();
+
+        public void write(CharSequence line) {
+            lines.add(line.toString());
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Authenticator implementations
+ *
+ * @since 1.3.0
+ */
+public class AuthenticatorTest {
+
+    /**
+     * Test of preemptive Basic credentials: no challenge round trip
+     */
+    @Test
+    public void testBasic() {
+        System.out.println("basic");
+        AuthHandler handler = new AuthHandler("Basic dXNlcjpwYXNz");
+        EasyHttpClient client = new EasyHttpClient(new InMemoryTransport(handler))
+                .setAuthenticator(new BasicAuthenticator("user", "pass"));
+        client.get("http://memory/hello");
+        assertEquals(200, client.getStatus());
+        assertEquals(1, handler.requests.get());
+    }
+
+    /**
+     * Test of bearer tokens, cached and dropped when refused
+     */
+    @Test
+    public void testBearer() {
+        System.out.println("bearer");
+        CountingSource source = new CountingSource(-1, 0);
+        BearerTokenAuthenticator authenticator = new BearerTokenAuthenticator(source);
+        AuthHandler handler = new AuthHandler("Bearer t2");
+        EasyHttpClient client = new EasyHttpClient(new InMemoryTransport(handler)).setAuthenticator(authenticator);
+
+        client.get("http://memory/hello");
+        assertEquals(401, client.getStatus());
+        client.clear();
+        client.get("http://memory/hello");
+        assertEquals(200, client.getStatus());
+        client.clear();
+        client.get("http://memory/hello");
+        assertEquals(200, client.getStatus());
+        assertEquals(2, source.fetches.get());
+
+        System.out.println("token source failure");
+        BearerTokenAuthenticator failing = new BearerTokenAuthenticator(new BearerTokenAuthenticator.TokenSource() {
+            public BearerTokenAuthenticator.Token fetch() throws IOException {
+                throw new IOException("token endpoint down");
+            }
+        });
+        client.clear();
+        client.setAuthenticator(failing).get("http://memory/hello");
+        assertTrue(client.getException() instanceof IOException);
+        assertEquals(3, handler.requests.get());
+    }
+
+    /**
+     * Test of single-flight refreshes: concurrent requests fetch the token once
+     */
+    @Test
+    public void testSingleFlight() throws InterruptedException {
+        System.out.println("single flight");
+        CountingSource source = new CountingSource(-1, 100);
+        final BearerTokenAuthenticator authenticator = new BearerTokenAuthenticator(source);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger authenticated = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        HttpGet request = new HttpGet("http://memory/hello");
+                        authenticator.authenticate(request);
+                        if("Bearer t1".equals(request.getFirstHeader("Authorization").getValue())) {
+                            authenticated.incrementAndGet();
+                        }
+                    } catch(Exception ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(threads.length, authenticated.get());
+        assertEquals(1, source.fetches.get());
+    }
+
+    /**
+     * Test of refreshes ahead of expiry: requests keep the current token while a new one is fetched
+     */
+    @Test
+    public void testRefreshAhead() throws Exception {
+        System.out.println("refresh ahead");
+        CountingSource source = new CountingSource(400, 0);
+        BearerTokenAuthenticator authenticator = new BearerTokenAuthenticator(source).setRefreshAhead(300);
+        assertEquals("t1", authenticator.getToken().getValue());
+
+        Thread.sleep(250);
+        HttpGet request = new HttpGet("http://memory/hello");
+        authenticator.authenticate(request);
+        assertEquals("Bearer t1", request.getFirstHeader("Authorization").getValue());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(source.fetches.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+        assertEquals("t2", authenticator.getToken().getValue());
+    }
+
+    /**
+     * Test that credentials follow redirects and cached redirects only to the origin they were set for
+     */
+    @Test
+    public void testRedirect_OtherOrigin() throws IOException {
+        LocalServer server = new LocalServer();
+        try {
+            final String steal = server.otherOriginUri("/steal");
+            final String near = server.uri("/steal");
+            server.addHandler("/steal", new HttpHandler() {
+                public void handle(HttpExchange exchange) throws IOException {
+                    String credentials = exchange.getRequestHeaders().getFirst("Authorization") + "|"
+                            + exchange.getRequestHeaders().getFirst("Cookie");
+                    LocalServer.respond(exchange, 200, credentials.getBytes("UTF-8"));
+                }
+            }).addHandler("/near", new RedirectHandler(302, near))
+              .addHandler("/away", new RedirectHandler(302, steal))
+              .addHandler("/moved-away", new RedirectHandler(301, steal));
+
+            System.out.println("ApacheHttpTransport");
+            assertRedirect_OtherOrigin(server, new ApacheHttpTransport(2, 2));
+            System.out.println("UrlConnectionTransport");
+            assertRedirect_OtherOrigin(server, new UrlConnectionTransport());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void assertRedirect_OtherOrigin(LocalServer server, HttpTransport transport) {
+        String credentials = "Basic dXNlcjpzZWNyZXQ=|session=1";
+        EasyHttpClient client = new EasyHttpClient(transport).setAuthenticator(new BasicAuthenticator("user", "secret"));
+        try {
+            System.out.println("redirect to the same origin");
+            client.addRequestHeader("Cookie", "session=1").get(server.uri("/near"));
+            assertEquals(credentials, client.consumeAsString());
+
+            System.out.println("redirect to another origin");
+            client.get(server.uri("/away"));
+            assertEquals("null|null", client.consumeAsString());
+
+            System.out.println("permanent redirect to another origin");
+            client.get(server.uri("/moved-away"));
+            assertEquals("null|null", client.consumeAsString());
+
+            System.out.println("cached redirect to another origin");
+            client.get(server.uri("/moved-away"));
+            assertEquals(URI.create(server.otherOriginUri("/steal")), client.getMethod().getURI());
+            assertEquals("null|null", client.consumeAsString());
+
+            System.out.println("authenticator scoped to an origin");
+            client.setAuthenticator(new BasicAuthenticator("user", "secret"), server.uri("/"));
+            client.get(server.otherOriginUri("/steal"));
+            assertEquals("null|session=1", client.consumeAsString());
+            client.get(server.uri("/steal"));
+            assertEquals(credentials, client.consumeAsString());
+        } finally {
+            client.clear();
+            client.shutdown();
+        }
+    }
+
+    private static class RedirectHandler implements HttpHandler {
+
+        final int status;
+        final String location;
+
+        RedirectHandler(int status, String location) {
+            this.status = status;
+            this.location = location;
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().add("Location", location);
+            LocalServer.respond(exchange, status, new byte[0]);
+        }
+    }
+
+    private static class CountingSource implements BearerTokenAuthenticator.TokenSource {
+
+        final AtomicInteger fetches = new AtomicInteger();
+        final long expiresIn;
+        final long latency;
+
+        CountingSource(long expiresIn, long latency) {
+            this.expiresIn = expiresIn;
+            this.latency = latency;
+        }
+
+        public BearerTokenAuthenticator.Token fetch() throws IOException {
+            try {
+                Thread.sleep(latency);
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new BearerTokenAuthenticator.Token("t" + fetches.incrementAndGet(), expiresIn);
+        }
+    }
+
+    private static class AuthHandler implements HttpRequestHandler {
+
+        final AtomicInteger requests = new AtomicInteger();
+        final String expected;
+
+        AuthHandler(String expected) {
+            this.expected = expected;
+        }
+
+        public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+            requests.incrementAndGet();
+            if(request.getFirstHeader("Authorization") == null || !expected.equals(request.getFirstHeader("Authorization").getValue())) {
+                response.setStatusCode(401);
+                return;
+            }
+            response.setEntity(new StringEntity(LocalServer.HELLO));
+        }
+    }
+
+}
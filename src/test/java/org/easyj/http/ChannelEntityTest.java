@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ChannelEntity
+ *
+ * @since 1.3.0
+ */
+public class ChannelEntityTest {
+
+    /**
+     * Test of writeTo method: only the declared length is sent
+     */
+    @Test
+    public void testWriteTo() throws IOException {
+        System.out.println("writeTo");
+        ChannelEntity entity = new ChannelEntity(Channels.newChannel(new ByteArrayInputStream(new byte[]{1, 2, 3, 4})), 3);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        entity.writeTo(body);
+
+        assertArrayEquals(new byte[]{1, 2, 3}, body.toByteArray());
+        assertFalse(entity.isStreaming());
+    }
+
+    /**
+     * Test of writeTo method with a source shorter than its declared length: the body fails instead of falling short
+     */
+    @Test
+    public void testWriteTo_Premature() throws IOException {
+        System.out.println("writeTo premature end");
+        ChannelEntity entity = new ChannelEntity(Channels.newChannel(new ByteArrayInputStream(new byte[]{1, 2, 3})), 5);
+        try {
+            entity.writeTo(new ByteArrayOutputStream());
+            fail("a short body must not be sent");
+        } catch (IOException ex) {
+            assertEquals("Premature end of body: expected 5, sent 3", ex.getMessage());
+        }
+        assertFalse(entity.isStreaming());
+    }
+
+}
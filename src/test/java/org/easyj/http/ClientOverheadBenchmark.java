@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Measures the overhead of {@code EasyHttpClient} itself on an {@link InMemoryTransport}, with no sockets involved:
+ * header and parameter assembly, URI building, redirect handling and entity consumption.
+ * The baseline sends the same GET straight through the transport, so the difference is the client's own cost.
+ * <p>
+ * Usage: {@code ClientOverheadBenchmark [iterations]}
+ *
+ * @since 1.3.0
+ */
+public class ClientOverheadBenchmark {
+
+    private final static byte[] LARGE = new byte[16384];
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        final InMemoryTransport transport = transport();
+
+        Scenario[] scenarios = {
+            new Scenario("baseline") {
+                void run(EasyHttpClient client) throws IOException {
+                    HttpResponse response = transport.execute(new HttpGet("http://memory/hello"), null);
+                    EntityUtils.consume(response.getEntity());
+                }
+            },
+            new Scenario("get") {
+                void run(EasyHttpClient client) {
+                    client.get("http://memory/hello").consumeAsString();
+                }
+            },
+            new Scenario("get headers+params") {
+                void run(EasyHttpClient client) {
+                    client.addRequestHeaders("X-Request-Id=1", "X-Client=benchmark", "Accept-Language=en")
+                            .addParameters("page=1", "size=20", "sort=name", "q=some text")
+                            .get("http://memory/hello").consumeAsString();
+                }
+            },
+            new Scenario("post form") {
+                void run(EasyHttpClient client) {
+                    client.addParameters("name=value", "other=more value").post("http://memory/echo").consumeAsString();
+                }
+            },
+            new Scenario("prepared") {
+                private EasyHttpClient preparedClient;
+                private PreparedRequest prepared;
+
+                void run(EasyHttpClient client) {
+                    if(preparedClient != client) {
+                        preparedClient = client;
+                        prepared = client.prepare("GET", "http://memory/items/{id}");
+                    }
+                    prepared.execute("id=42").consumeAsString();
+                }
+            },
+            new Scenario("redirect") {
+                void run(EasyHttpClient client) {
+                    client.setRedirectCache(null).get("http://memory/redirect").consumeAsString();
+                }
+            },
+            new Scenario("consume 16KB") {
+                void run(EasyHttpClient client) {
+                    client.get("http://memory/large").consumeAsString();
+                }
+            }
+        };
+
+        for(int round = 0; round < 3; round++) {
+            System.out.println(round < 2 ? "warm up" : "measure");
+            long baseline = 0;
+            for(Scenario scenario : scenarios) {
+                long nanos = scenario.measure(new EasyHttpClient(transport), iterations);
+                if(baseline == 0) {
+                    baseline = nanos;
+                }
+                if(round == 2) {
+                    System.out.printf("%-20s %8.0f ns/op %+8.0f ns/op over baseline %6d errors%n",
+                            scenario.name, (double) nanos / iterations, (double) (nanos - baseline) / iterations, scenario.errors);
+                }
+            }
+        }
+    }
+
+    /**
+     * Transport answering the benchmark paths
+     */
+    static InMemoryTransport transport() {
+        return new InMemoryTransport()
+                .register("/hello", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        response.setEntity(new StringEntity(LocalServer.HELLO));
+                    }
+                })
+                .register("/items/*", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        response.setEntity(new StringEntity(LocalServer.HELLO));
+                    }
+                })
+                .register("/echo", new LoadGenerator.EchoHandler())
+                .register("/redirect", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        response.setStatusCode(HttpStatus.SC_MOVED_PERMANENTLY);
+                        response.addHeader("Location", "/hello");
+                    }
+                })
+                .register("/large", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        response.setEntity(new ByteArrayEntity(LARGE));
+                    }
+                });
+    }
+
+    private static abstract class Scenario {
+
+        final String name;
+        int errors;
+
+        Scenario(String name) {
+            this.name = name;
+        }
+
+        abstract void run(EasyHttpClient client) throws IOException;
+
+        long measure(EasyHttpClient client, int iterations) throws IOException {
+            errors = 0;
+            long start = System.nanoTime();
+            for(int i = 0; i < iterations; i++) {
+                client.clear();
+                run(client);
+                if(client.getException() != null) {
+                    errors++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            client.clear();
+            return elapsed;
+        }
+    }
+
+}
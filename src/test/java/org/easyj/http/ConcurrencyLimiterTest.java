@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+import java.net.URI;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ConcurrencyLimiter
+ *
+ * @since 1.3.0
+ */
+public class ConcurrencyLimiterTest {
+
+    private final String ROUTE = "http://localhost:80";
+
+    ConcurrencyLimiter limiter;
+
+    @Before
+    public void setUp() {
+        limiter = new ConcurrencyLimiter(2, 1, 10).setLatencyTolerance(0);
+    }
+
+    /**
+     * Test of tryAcquire method: requests over the limit are refused
+     */
+    @Test
+    public void testTryAcquire() {
+        System.out.println("tryAcquire");
+        ConcurrencyLimiter.Permit permit1 = limiter.tryAcquire(ROUTE);
+        ConcurrencyLimiter.Permit permit2 = limiter.tryAcquire(ROUTE);
+        assertNotNull(permit1);
+        assertNotNull(permit2);
+        assertEquals(2, limiter.getInFlight(ROUTE));
+
+        System.out.println("over the limit");
+        assertNull(limiter.tryAcquire(ROUTE));
+
+        System.out.println("another route");
+        assertNotNull(limiter.tryAcquire("http://other:80"));
+
+        System.out.println("released");
+        permit1.onIgnore();
+        permit1.onIgnore();
+        assertEquals(1, limiter.getInFlight(ROUTE));
+        assertNotNull(limiter.tryAcquire(ROUTE));
+    }
+
+    /**
+     * Test of limit adaptation: successes increase the limit additively, drops decrease it multiplicatively
+     */
+    @Test
+    public void testAdaptLimit() {
+        System.out.println("adapt limit");
+
+        System.out.println("additive increase");
+        for(int i = 0; i < 20; i++) {
+            limiter.tryAcquire(ROUTE).onSuccess();
+        }
+        int increased = limiter.getLimit(ROUTE);
+        assertTrue(increased > 2);
+
+        System.out.println("multiplicative decrease");
+        limiter.setBackoffRatio(0.5);
+        limiter.tryAcquire(ROUTE).onDropped();
+        assertTrue(limiter.getLimit(ROUTE) < increased);
+
+        System.out.println("bounded by min");
+        for(int i = 0; i < 20; i++) {
+            limiter.tryAcquire(ROUTE).onDropped();
+        }
+        assertEquals(1, limiter.getLimit(ROUTE));
+
+        System.out.println("bounded by max");
+        for(int i = 0; i < 1000; i++) {
+            limiter.tryAcquire(ROUTE).onSuccess();
+        }
+        assertEquals(10, limiter.getLimit(ROUTE));
+    }
+
+    /**
+     * Test of the slot held by a client request: released once the response is consumed
+     */
+    @Test
+    public void testClient() {
+        System.out.println("client");
+        EasyHttpClient client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                response.setEntity(new StringEntity(LocalServer.HELLO));
+            }
+        })).setConcurrencyLimiter(limiter);
+        String route = "http://memory:80";
+
+        client.get("http://memory/hello");
+        assertEquals(1, limiter.getInFlight(route));
+        client.consumeAsString();
+        assertEquals(0, limiter.getInFlight(route));
+
+        System.out.println("next request");
+        client.get("http://memory/hello");
+        client.get("http://memory/hello");
+        assertEquals(1, limiter.getInFlight(route));
+
+        System.out.println("cleared");
+        client.clear();
+        assertEquals(0, limiter.getInFlight(route));
+    }
+
+    /**
+     * Test of keyFor method
+     */
+    @Test
+    public void testKeyFor() {
+        System.out.println("keyFor");
+        assertEquals("http://localhost:80", ConcurrencyLimiter.keyFor(URI.create("http://localhost/path")));
+        assertEquals("https://localhost:8443", ConcurrencyLimiter.keyFor(URI.create("HTTPS://localhost:8443/path")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimits() {
+        new ConcurrencyLimiter(20, 1, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMinLatencyWindow() {
+        limiter.setMinLatencyWindow(0);
+    }
+
+}
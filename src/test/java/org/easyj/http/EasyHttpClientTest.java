@@ -16,14 +16,25 @@
 
 package org.easyj.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -809,4 +820,117 @@ public class EasyHttpClientTest {
         assertEquals(VALID_VALUE, result.get(VALID_NAME));
     }
 
-}
\ No newline at end of file
+    /**
+     * Test of setRateLimiter method. Requests over the limit are rejected before being sent.
+     */
+    @Test
+    public void testSetRateLimiter() {
+        System.out.println("setRateLimiter");
+        client.setRateLimiter(new RateLimiter(0.001, 1)).setRateLimitWait(0);
+
+        System.out.println("first request");
+        client.get("http://localhost:1/limited");
+        assertFalse(client.getException() instanceof RequestRejectedException);
+
+        System.out.println("over the limit");
+        client.clear();
+        client.get("http://localhost:1/limited");
+        assertTrue(client.getException() instanceof RequestRejectedException);
+
+        System.out.println("custom key");
+        client.clear();
+        client.setRateLimitKey("another").get("http://localhost:1/limited");
+        assertFalse(client.getException() instanceof RequestRejectedException);
+    }
+
+    /**
+     * Test of connections per route configuration
+     */
+    @Test
+    public void testMaxConnectionsPerRoute() {
+        System.out.println("maxConnectionsPerRoute");
+        ThreadSafeClientConnManager connManager = (ThreadSafeClientConnManager) client.getHttpClient().getConnectionManager();
+        HttpRoute route = new HttpRoute(new HttpHost("localhost", 8080));
+
+        System.out.println("default");
+        assertEquals(EasyHttpClient.DEFAULT_MAX_CONNECTIONS, connManager.getDefaultMaxPerRoute());
+
+        System.out.println("per route");
+        client.setMaxConnections("http://localhost:8080/any", 5);
+        assertEquals(5, connManager.getMaxForRoute(route));
+
+        System.out.println("default per route");
+        client.setMaxConnectionsPerRoute(10);
+        assertEquals(10, connManager.getDefaultMaxPerRoute());
+        assertEquals(5, connManager.getMaxForRoute(route));
+    }
+
+    /**
+     * Test of default headers: sent with every request unless overridden by a request header
+     */
+    @Test
+    public void testSetDefaultHeader() {
+        System.out.println("setDefaultHeader");
+        client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+            }
+        }));
+
+        System.out.println("default accept");
+        client.get("http://memory/resource");
+        assertEquals("application/json", client.getMethod().getFirstHeader("Accept").getValue());
+
+        System.out.println("default header");
+        client.clear();
+        client.setDefaultHeader("X-Client", 1).setDefaultHeader("accept", "text/plain");
+        client.get("http://memory/resource");
+        assertEquals("1", client.getMethod().getFirstHeader("X-Client").getValue());
+        assertEquals(1, client.getMethod().getHeaders("Accept").length);
+        assertEquals("text/plain", client.getMethod().getFirstHeader("Accept").getValue());
+
+        System.out.println("overridden");
+        client.clear();
+        client.addRequestHeader("Accept", "text/html").get("http://memory/resource");
+        assertEquals(1, client.getMethod().getHeaders("Accept").length);
+        assertEquals("text/html", client.getMethod().getFirstHeader("Accept").getValue());
+        assertEquals("1", client.getMethod().getFirstHeader("X-Client").getValue());
+
+        System.out.println("removed");
+        client.clear();
+        client.removeDefaultHeaders("X-CLIENT", "Accept").get("http://memory/resource");
+        assertNull(client.getMethod().getFirstHeader("X-Client"));
+        assertNull(client.getMethod().getFirstHeader("Accept"));
+        assertEquals(0, client.getDefaultHeaders().length);
+    }
+
+    /**
+     * Test of prepareParameters method: builds the form and multipart bodies of entity enclosing requests
+     */
+    @Test
+    public void testPrepareParameters() {
+        System.out.println("prepareParameters");
+        final List<String> bodies = new ArrayList<String>();
+        client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws IOException {
+                bodies.add(EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity()));
+            }
+        })) {
+            @Override
+            protected List<NameValuePair> prepareParameters() {
+                List<NameValuePair> params = super.prepareParameters();
+                params.add(new BasicNameValuePair("signature", "abc"));
+                return params;
+            }
+        };
+        client.addParameter(VALID_NAME, VALID_VALUE).post("http://memory/resource");
+        assertEquals(VALID_NAME + "=" + VALID_VALUE + "&signature=abc", bodies.get(0));
+
+        client.clear();
+        client.addParameter(VALID_NAME, VALID_VALUE)
+              .addPart("data", new ByteArrayInputStream(new byte[]{'x'}), 1, "data.bin", null)
+              .post("http://memory/resource");
+        assertTrue(bodies.get(1).contains("name=\"" + VALID_NAME + "\"\r\n\r\n" + VALID_VALUE + "\r\n"));
+        assertTrue(bodies.get(1).contains("name=\"signature\"\r\n\r\nabc\r\n"));
+    }
+
+}
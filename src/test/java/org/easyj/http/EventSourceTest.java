@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests EventSource, EventStreamParser and DelimitedStreamReader
+ *
+ * @since 1.3.0
+ */
+public class EventSourceTest {
+
+    LocalServer server;
+    EasyHttpClient client;
+    List<String> lastEventIds;
+    AtomicInteger connections;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        client = new EasyHttpClient(4);
+        lastEventIds = new CopyOnWriteArrayList<String>();
+        connections = new AtomicInteger();
+
+        // two connections dropped after a few events, then 204 to stop the client
+        server.addHandler("/events", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                lastEventIds.add(String.valueOf(exchange.getRequestHeaders().getFirst("Last-Event-ID")));
+                int connection = connections.incrementAndGet();
+                if(connection == 1) {
+                    stream(exchange, "retry: 10\nid: 1\ndata: a\n\n: comment\nid: 2\nevent: update\ndata: b\ndata: c\n\n");
+                } else if(connection == 2) {
+                    stream(exchange, "id: 3\ndata: d\n\n");
+                } else {
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                }
+            }
+        });
+        // slow to answer, once the request is received
+        server.addHandler("/slow", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                connections.incrementAndGet();
+                try {
+                    Thread.sleep(10000);
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        // never ending stream
+        server.addHandler("/endless", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                out.write("data: first\n\n".getBytes("UTF-8"));
+                out.flush();
+                try {
+                    Thread.sleep(10000);
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop();
+    }
+
+    /**
+     * Test of run method: events are dispatched and the stream resumes with Last-Event-ID
+     */
+    @Test
+    public void testRun_Reconnect() {
+        System.out.println("run reconnect");
+        RecordingListener listener = new RecordingListener();
+        new EventSource(client, server.uri("/events"), listener).run();
+
+        assertEquals(3, listener.events.size());
+        assertEquals("a", listener.events.get(0).getData());
+        assertEquals("1", listener.events.get(0).getId());
+        assertEquals("update", listener.events.get(1).getEvent());
+        assertEquals("b\nc", listener.events.get(1).getData());
+        assertEquals(ServerSentEvent.DEFAULT_EVENT, listener.events.get(2).getEvent());
+        assertEquals("d", listener.events.get(2).getData());
+
+        System.out.println("Last-Event-ID");
+        assertEquals(3, lastEventIds.size());
+        assertEquals("null", lastEventIds.get(0));
+        assertEquals("2", lastEventIds.get(1));
+        assertEquals("3", lastEventIds.get(2));
+        assertEquals(0, listener.closed.getCount());
+    }
+
+    /**
+     * Test of start and close methods on a stream that never ends
+     */
+    @Test
+    public void testStart_Close() throws InterruptedException {
+        System.out.println("start close");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        RecordingListener listener = new RecordingListener();
+        EventSource source = new EventSource(client, server.uri("/endless"), listener).start(executor);
+
+        assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+        source.close();
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals("first", listener.events.get(0).getData());
+        assertTrue(source.isClosed());
+        executor.shutdown();
+    }
+
+    /**
+     * Test of close method while the connection waits for the response head
+     */
+    @Test
+    public void testClose_Connecting() throws InterruptedException {
+        System.out.println("close connecting");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        RecordingListener listener = new RecordingListener();
+        EventSource source = new EventSource(client, server.uri("/slow"), listener).start(executor);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(connections.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        source.close();
+        assertTrue(listener.closed.await(2, TimeUnit.SECONDS));
+        assertTrue(listener.events.isEmpty());
+        executor.shutdown();
+    }
+
+    /**
+     * Test of EventStreamParser with mixed line endings and a byte order mark
+     */
+    @Test
+    public void testParser() throws IOException {
+        System.out.println("parser");
+        byte[] stream = "\uFEFFdata:x\r\rdata: y\r\n\r\nevent\ndata\n\nid: 9\ndata: z".getBytes("UTF-8");
+        EventStreamParser parser = new EventStreamParser(new ByteArrayInputStream(stream), null);
+
+        assertEquals("x", parser.next().getData());
+        assertEquals("y", parser.next().getData());
+        ServerSentEvent empty = parser.next();
+        assertEquals("", empty.getData());
+        assertEquals(ServerSentEvent.DEFAULT_EVENT, empty.getEvent());
+
+        System.out.println("incomplete event discarded");
+        assertNull(parser.next());
+        assertEquals("9", parser.getLastEventId());
+    }
+
+    /**
+     * Test of DelimitedStreamReader
+     */
+    @Test
+    public void testDelimitedStreamReader() throws IOException {
+        System.out.println("delimited stream reader");
+        StringBuilder stream = new StringBuilder();
+        for(int i = 0; i < 2000; i++) {
+            stream.append("{\"record\":").append(i).append("}\r\n");
+        }
+        stream.append("last");
+        DelimitedStreamReader reader = new DelimitedStreamReader(new ByteArrayInputStream(stream.toString().getBytes("UTF-8")), "\r\n");
+        for(int i = 0; i < 2000; i++) {
+            assertEquals("{\"record\":" + i + "}", reader.readString());
+        }
+        assertEquals("last", reader.readString());
+        assertNull(reader.readString());
+
+        System.out.println("record too large");
+        reader = new DelimitedStreamReader(new ByteArrayInputStream(new byte[10000]), "\n").setMaxRecordSize(1000);
+        try {
+            reader.read();
+            fail("IOException expected");
+        } catch(IOException ex) {
+            assertTrue(ex.getMessage().contains("1000"));
+        }
+    }
+
+    private static void stream(HttpExchange exchange, String events) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write(events.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private static class RecordingListener implements EventSource.Listener {
+
+        List<ServerSentEvent> events = new CopyOnWriteArrayList<ServerSentEvent>();
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+
+        public void onOpen(EventSource source) {
+        }
+
+        public void onEvent(EventSource source, ServerSentEvent event) {
+            events.add(event);
+            received.countDown();
+        }
+
+        public void onError(EventSource source, Throwable error) {
+        }
+
+        public void onClosed(EventSource source) {
+            closed.countDown();
+        }
+    }
+
+}
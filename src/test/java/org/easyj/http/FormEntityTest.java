@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests FormEntity
+ *
+ * @since 1.3.0
+ */
+public class FormEntityTest {
+
+    /**
+     * Test of writeTo method: same output and length as {@code URLEncoder}
+     */
+    @Test
+    public void testWriteTo() throws IOException {
+        System.out.println("writeTo");
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("plain", "value");
+        parameters.put("spaces and symbols", "a b&c=d+e/f?g*h.i-j_k~l");
+        parameters.put("accents", "a\u00e7\u00e3o \u20ac");
+        parameters.put("emoji", "\ud83d\ude00");
+        parameters.put("lone", "x\ud83dy");
+        parameters.put("empty", "");
+
+        FormEntity entity = new FormEntity(parameters, "UTF-8");
+        String expected = urlEncode(parameters, "UTF-8");
+        String result = write(entity);
+
+        assertEquals(expected, result);
+        assertEquals(expected.length(), entity.getContentLength());
+        assertFalse(entity.isChunked());
+        assertEquals("application/x-www-form-urlencoded; charset=UTF-8", entity.getContentType().getValue());
+    }
+
+    /**
+     * Test of writeTo method with the parameters as name value pairs
+     */
+    @Test
+    public void testWriteTo_Pairs() throws IOException {
+        System.out.println("writeTo pairs");
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("plain", "value");
+        parameters.put("accents", "a\u00e7\u00e3o \u20ac");
+        parameters.put("empty", "");
+        List<NameValuePair> pairs = new ArrayList<NameValuePair>();
+        for(Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            pairs.add(new BasicNameValuePair(parameter.getKey(), parameter.getValue().toString()));
+        }
+
+        FormEntity entity = new FormEntity(pairs, "UTF-8");
+        String expected = urlEncode(parameters, "UTF-8");
+        assertEquals(expected, write(entity));
+        assertEquals(expected.length(), entity.getContentLength());
+    }
+
+    /**
+     * Test of writeTo method with another charset
+     */
+    @Test
+    public void testWriteTo_Charset() throws IOException {
+        System.out.println("writeTo charset");
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("accents", "a\u00e7\u00e3o");
+
+        FormEntity entity = new FormEntity(parameters, "ISO-8859-1");
+        assertEquals(urlEncode(parameters, "ISO-8859-1"), write(entity));
+        assertTrue(entity.isChunked());
+    }
+
+    /**
+     * Test of getContentLength method: unknown when values are not {@code CharSequence}
+     */
+    @Test
+    public void testGetContentLength() throws IOException {
+        System.out.println("getContentLength");
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        parameters.put("number", 10);
+
+        FormEntity entity = new FormEntity(parameters, "UTF-8");
+        assertEquals(-1, entity.getContentLength());
+        assertTrue(entity.isChunked());
+        assertEquals("number=10", write(entity));
+
+        System.out.println("large");
+        parameters.clear();
+        StringBuilder value = new StringBuilder();
+        for(int i = 0; i < 20000; i++) {
+            value.append("\u00e9 ");
+        }
+        parameters.put("large", value.toString());
+        entity = new FormEntity(parameters, "UTF-8");
+        String result = write(entity);
+        assertEquals(urlEncode(parameters, "UTF-8"), result);
+        assertEquals(result.length(), entity.getContentLength());
+    }
+
+    @Test(expected = UnsupportedEncodingException.class)
+    public void testUnsupportedCharset() throws UnsupportedEncodingException {
+        new FormEntity(new LinkedHashMap<String, Object>(), "NOT-A-CHARSET");
+    }
+
+    private String write(FormEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toString("US-ASCII");
+    }
+
+    private String urlEncode(Map<String, Object> parameters, String charset) throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder();
+        for(Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            if(sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(URLEncoder.encode(parameter.getKey(), charset)).append('=')
+                    .append(URLEncoder.encode(parameter.getValue().toString(), charset));
+        }
+        return sb.toString();
+    }
+
+}
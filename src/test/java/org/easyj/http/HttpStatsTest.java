@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests HttpStats
+ *
+ * @since 1.3.0
+ */
+public class HttpStatsTest {
+
+    LocalServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        server.addHandler("/fail", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, 503, new byte[0]);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Test of the counters and pool statistics recorded by clients
+     */
+    @Test
+    public void testSnapshot() {
+        System.out.println("snapshot");
+        HttpStats stats = new HttpStats();
+        EasyHttpClient client = new EasyHttpClient(2).setStats(stats);
+        try {
+            client.get(server.uri("/hello"));
+            HttpStats.Snapshot snapshot = stats.snapshot();
+            assertEquals(1, snapshot.getLeasedConnections());
+            assertEquals(0, snapshot.getRequests());
+            assertEquals(1, snapshot.getPoolStats().size());
+            assertEquals(2, snapshot.getPoolStats().get(0).getMax());
+
+            System.out.println("consumed");
+            client.consumeAsString();
+            snapshot = stats.snapshot();
+            assertEquals(0, snapshot.getLeasedConnections());
+            assertEquals(1, snapshot.getAvailableConnections());
+            assertEquals(0, snapshot.getPendingConnections());
+            assertEquals(1, snapshot.getRequests());
+            assertEquals(LocalServer.HELLO.length(), snapshot.getBytesIn());
+
+            System.out.println("bytes out");
+            client.clear();
+            client.addParameter("name", "value").post(server.uri("/echo")).consumeAsString();
+            assertEquals("name=value".length(), stats.getBytesOut());
+
+            System.out.println("errors");
+            client.clear();
+            client.get(server.uri("/fail"));
+            client.clear();
+            client.get("http://localhost:1/hello");
+            client.clear();
+            snapshot = stats.snapshot();
+            assertEquals(4, snapshot.getRequests());
+            assertEquals(2, snapshot.getErrors());
+            assertEquals(Long.valueOf(1), snapshot.getErrorsByType().get(HttpStats.SERVER_ERROR));
+
+            System.out.println("redirect cache");
+            client.get(server.uri("/redirect")).consumeAsString();
+            client.clear();
+            client.get(server.uri("/redirect")).consumeAsString();
+            assertTrue(stats.getRedirectCacheHitRate() > 0);
+
+            System.out.println("reset");
+            stats.reset();
+            assertEquals(0, stats.getRequests());
+            assertTrue(stats.getErrorsByType().isEmpty());
+        } finally {
+            client.clear();
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Test of consecutive requests on the same client: each one is recorded with its own outcome
+     */
+    @Test
+    public void testOutcomePerRequest() {
+        System.out.println("outcome per request");
+        HttpStats stats = new HttpStats();
+        OutcomeSequence.run(new EasyHttpClient(OutcomeSequence.transport()).setStats(stats));
+
+        HttpStats.Snapshot snapshot = stats.snapshot();
+        assertEquals(4, snapshot.getRequests());
+        assertEquals(2, snapshot.getErrors());
+        assertEquals(Long.valueOf(1), snapshot.getErrorsByType().get("IOException"));
+        assertEquals(Long.valueOf(1), snapshot.getErrorsByType().get(HttpStats.SERVER_ERROR));
+        assertEquals(2 * LocalServer.HELLO.length(), snapshot.getBytesIn());
+    }
+
+    /**
+     * Test of the statistics exposed over JMX
+     */
+    @Test
+    public void testRegister() throws Exception {
+        System.out.println("register");
+        HttpStats stats = new HttpStats().register("test");
+        try {
+            stats.record(200, 10, -1, null);
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.easyj.http:type=HttpStats,name=\"test\"");
+            assertEquals(1L, mbeans.getAttribute(name, "Requests"));
+            assertEquals(10L, mbeans.getAttribute(name, "BytesIn"));
+            assertNotNull(mbeans.getAttribute(name, "ErrorsByType"));
+            assertNotNull(mbeans.getAttribute(name, "PoolStats"));
+        } finally {
+            stats.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("org.easyj.http:type=HttpStats,name=\"test\"")));
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the HttpTransport implementations against a local server
+ *
+ * @since 1.3.0
+ */
+public class HttpTransportTest {
+
+    private final static byte[] BODY = new byte[200000];
+
+    static {
+        for(int i = 0; i < BODY.length; i++) {
+            BODY[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    LocalServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testApacheHttpTransport() throws IOException {
+        System.out.println("ApacheHttpTransport");
+        assertTransport(server, new ApacheHttpTransport(2, 2));
+    }
+
+    @Test
+    public void testUrlConnectionTransport() throws IOException {
+        System.out.println("UrlConnectionTransport");
+        assertTransport(server, new UrlConnectionTransport());
+    }
+
+    /**
+     * Test of InMemoryTransport, including redirects
+     */
+    @Test
+    public void testInMemoryTransport() {
+        System.out.println("InMemoryTransport");
+        EasyHttpClient client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                if(request.getRequestLine().getUri().endsWith("/redirect")) {
+                    response.setStatusCode(HttpStatus.SC_MOVED_PERMANENTLY);
+                    response.addHeader("Location", "/hello");
+                } else {
+                    response.setEntity(new StringEntity(LocalServer.HELLO));
+                }
+            }
+        }));
+
+        System.out.println("get");
+        client.get("http://memory/hello");
+        assertEquals(200, client.getStatus());
+        assertEquals(LocalServer.HELLO, client.consumeAsString());
+
+        System.out.println("redirect");
+        client.clear();
+        client.get("http://memory/redirect");
+        assertEquals(200, client.getStatus());
+        assertEquals(LocalServer.HELLO, client.consumeAsString());
+
+        System.out.println("ignore redirect");
+        client.clear();
+        client.ignoreRedirect(HttpStatus.SC_MOVED_PERMANENTLY).get("http://memory/redirect");
+        assertEquals(HttpStatus.SC_MOVED_PERMANENTLY, client.getStatus());
+    }
+
+    /**
+     * Test of InMemoryTransport with a handler per path
+     */
+    @Test
+    public void testInMemoryTransport_Routes() {
+        System.out.println("InMemoryTransport routes");
+        InMemoryTransport transport = new InMemoryTransport()
+                .register("/hello", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        response.setEntity(new StringEntity(LocalServer.HELLO));
+                    }
+                })
+                .register("/api/*", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        response.setEntity(new StringEntity(request.getRequestLine().getUri()));
+                    }
+                });
+        EasyHttpClient client = new EasyHttpClient(transport);
+
+        client.get("http://memory/hello?name=value");
+        assertEquals(LocalServer.HELLO, client.consumeAsString());
+
+        System.out.println("prefix");
+        client.clear();
+        client.get("http://memory/api/items/1");
+        assertEquals("http://memory/api/items/1", client.consumeAsString());
+
+        System.out.println("not found");
+        client.clear();
+        client.get("http://memory/other");
+        assertEquals(HttpStatus.SC_NOT_FOUND, client.getStatus());
+    }
+
+    /**
+     * Test of prewarm method: connections are opened once and reused by later requests
+     */
+    @Test
+    public void testPrewarm() throws IOException {
+        System.out.println("prewarm");
+        EasyHttpClient client = new EasyHttpClient(4, 4);
+        ApacheHttpTransport transport = (ApacheHttpTransport) client.getTransport();
+        HttpRoute route = new HttpRoute(URIUtils.extractHost(URI.create(server.uri("/"))), null, false);
+        try {
+            assertEquals(3, client.prewarm(server.uri("/hello"), 3));
+            assertEquals(3, transport.getConnectionManager().getConnectionsInPool(route));
+
+            System.out.println("already warm");
+            assertEquals(0, client.prewarm(server.uri("/hello"), 3));
+
+            System.out.println("reused");
+            client.get(server.uri("/hello")).consumeAsString();
+            assertEquals(200, client.getStatus());
+            assertEquals(3, transport.getConnectionManager().getConnectionsInPool(route));
+
+            System.out.println("bounded by the route maximum");
+            assertEquals(1, client.prewarm(server.uri("/hello"), 10));
+        } finally {
+            client.shutdown();
+        }
+
+        System.out.println("not pooled");
+        assertEquals(0, new EasyHttpClient(new UrlConnectionTransport()).prewarm(server.uri("/hello"), 3));
+    }
+
+    @Test
+    public void testJitWarmup() throws IOException {
+        System.out.println("JitWarmup");
+        assertTrue(new JitWarmup().setIterations(50).run() >= 0);
+    }
+
+    /**
+     * Runs requests of every kind through a transport against the local server, shared with the transports of other modules
+     */
+    static void assertTransport(LocalServer server, HttpTransport transport) throws IOException {
+        EasyHttpClient client = new EasyHttpClient(transport);
+        try {
+            System.out.println("get");
+            client.get(server.uri("/hello"));
+            assertNull(client.getException());
+            assertEquals(200, client.getStatus());
+            assertEquals(LocalServer.HELLO, client.consumeAsString());
+
+            System.out.println("post");
+            client.clear();
+            client.addParameter("name", "value").post(server.uri("/echo"));
+            assertEquals(200, client.getStatus());
+            assertEquals("name=value", client.consumeAsString());
+
+            System.out.println("post stream chunked");
+            client.clear();
+            client.setEntity(new ByteArrayInputStream(BODY), -1, "text/plain").post(server.uri("/echo"));
+            assertEquals(200, client.getStatus());
+            assertEquals(new String(BODY, "UTF-8"), client.consumeAsString());
+
+            System.out.println("put file");
+            File file = File.createTempFile("easyj-http", ".txt");
+            file.deleteOnExit();
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(BODY);
+            out.close();
+            client.clear();
+            client.setEntity(file, "text/plain").put(server.uri("/echo"));
+            assertEquals(200, client.getStatus());
+            assertEquals(new String(BODY, "UTF-8"), client.consumeAsString());
+
+            System.out.println("redirect");
+            client.clear();
+            client.get(server.uri("/redirect"));
+            assertEquals(200, client.getStatus());
+            assertEquals(LocalServer.HELLO, client.consumeAsString());
+            assertEquals(1, client.getRedirectCache().size());
+
+            System.out.println("cached redirect");
+            client.clear();
+            client.get(server.uri("/redirect"));
+            assertEquals(URI.create(server.uri("/hello")), client.getMethod().getURI());
+            assertEquals(LocalServer.HELLO, client.consumeAsString());
+            assertEquals(1, client.getRedirectCache().getHits());
+
+            System.out.println("permanent redirect 308");
+            client.clear();
+            client.get(server.uri("/moved"));
+            assertEquals(200, client.getStatus());
+            assertEquals(LocalServer.HELLO, client.consumeAsString());
+            assertEquals(2, client.getRedirectCache().size());
+
+            System.out.println("cached redirect skipped for post");
+            client.clear();
+            client.addParameter("name", "value").post(server.uri("/moved"));
+            assertEquals(URI.create(server.uri("/moved")), client.getMethod().getURI());
+            assertEquals(EasyRedirectStrategy.SC_PERMANENT_REDIRECT, client.getStatus());
+            assertEquals(1, client.getRedirectCache().getHits());
+            assertEquals(2, client.getRedirectCache().size());
+
+            System.out.println("ignore redirect");
+            client.clear();
+            client.setIgnoreRedirect(true).get(server.uri("/redirect"));
+            assertEquals(HttpStatus.SC_MOVED_PERMANENTLY, client.getStatus());
+        } finally {
+            client.clear();
+            client.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram, for benchmarks.
+ * <p>
+ * Values up to 128 are counted exactly and larger ones in buckets of under 1% relative
+ * width, over the whole range of {@code long}, in a fixed amount of memory. Recording is
+ * lock-free and can be done by any number of threads.
+ *
+ * @since 1.3.0
+ */
+public class LatencyHistogram {
+
+    private final static int SUB_BITS = 7;
+    private final static int HALF = 1 << (SUB_BITS - 1);
+
+    private final AtomicLongArray counts;
+    private final AtomicLong total;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray((64 - SUB_BITS + 2) * HALF);
+        total = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records a value
+     *
+     * @param value non negative value, usually in microseconds
+     */
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        long current = max.get();
+        while(value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value at a percentile, as the upper bound of its bucket
+     *
+     * @param percentile percentile between 0 and 100
+     * @return value at or above the given percentage of the recorded values
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = total.get();
+        if(count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if(seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Formats the usual percentiles on a line
+     *
+     * @return percentiles summary
+     */
+    public String summary() {
+        return String.format("p50=%d p90=%d p99=%d p99.9=%d p99.99=%d max=%d",
+                getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), getValueAtPercentile(99.99), getMax());
+    }
+
+    static int indexOf(long value) {
+        if(value < 2 * HALF) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    static long upperBound(int index) {
+        if(index < 2 * HALF) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long top = index - shift * HALF;
+        return (top << shift) + (1L << shift) - 1;
+    }
+
+}
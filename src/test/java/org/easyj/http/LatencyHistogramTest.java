@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests LatencyHistogram
+ *
+ * @since 1.3.0
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Test of getValueAtPercentile method, within the bucket precision
+     */
+    @Test
+    public void testPercentiles() {
+        System.out.println("percentiles");
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(5000, histogram.getValueAtPercentile(50), 5000 / 64);
+        assertEquals(9900, histogram.getValueAtPercentile(99), 9900 / 64);
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    /**
+     * Test of the bucket bounds: every value falls at or below the upper bound of its bucket
+     */
+    @Test
+    public void testBuckets() {
+        System.out.println("buckets");
+        long[] values = {0, 1, 127, 128, 129, 255, 256, 1000003, Long.MAX_VALUE};
+        for(long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.upperBound(index));
+            assertTrue(index == 0 || value > LatencyHistogram.upperBound(index - 1));
+        }
+    }
+
+}
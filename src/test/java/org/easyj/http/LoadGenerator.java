@@ -0,0 +1,279 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Open loop load generator driving {@code EasyHttpClient} at a fixed request rate.
+ * <p>
+ * Requests are scheduled at fixed intervals whether or not earlier ones completed, and their latency is
+ * measured from the time they were scheduled to be sent, not from when a worker got to send them. A stalled
+ * backend thus shows up in the percentiles instead of silently lowering the request rate (coordinated omission).
+ * The service time, measured from the actual send, is reported alongside for comparison.
+ * <p>
+ * Usage: {@code LoadGenerator [name=value]...}
+ * <ul>
+ * <li>{@code rate}: requests per second, 1000 by default</li>
+ * <li>{@code duration}: seconds measured, 10 by default, after {@code warmup} seconds, 2 by default</li>
+ * <li>{@code concurrency}: worker threads and pooled connections, 32 by default</li>
+ * <li>{@code transport}: {@code apache} (default), {@code urlconnection} or {@code memory}</li>
+ * <li>{@code url}: base URL of the requests, a {@link LocalServer} is started when missing</li>
+ * <li>{@code mix}: comma separated {@code METHOD path weight} requests, {@code GET /hello 1} by default.
+ * POST and PUT requests send a small form body.</li>
+ * </ul>
+ * Example: {@code LoadGenerator rate=5000 concurrency=64 "mix=GET /hello 9,POST /echo 1"}
+ *
+ * @since 1.3.0
+ */
+public class LoadGenerator {
+
+    private final int rate;
+    private final int concurrency;
+    private final HttpTransport transport;
+    private final String[] methods;
+    private final String[] uris;
+    private final int[] schedule;
+
+    private final ThreadLocal<EasyHttpClient> clients;
+    private final AtomicLong errors;
+    private volatile LatencyHistogram responseTimes;
+    private volatile LatencyHistogram serviceTimes;
+    private volatile long elapsed;
+
+    /**
+     * Creates a generator
+     *
+     * @param rate requests per second
+     * @param concurrency worker threads
+     * @param transport transport shared by the workers' clients
+     * @param baseUrl base URL of the requests
+     * @param mix comma separated {@code METHOD path weight} requests
+     */
+    public LoadGenerator(int rate, int concurrency, HttpTransport transport, String baseUrl, String mix) {
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.transport = transport;
+
+        List<String> methodList = new ArrayList<String>();
+        List<String> uriList = new ArrayList<String>();
+        List<Integer> slots = new ArrayList<Integer>();
+        for(String entry : mix.split(",")) {
+            String[] fields = entry.trim().split("\\s+");
+            int weight = fields.length > 2 ? Integer.parseInt(fields[2]) : 1;
+            for(int i = 0; i < weight; i++) {
+                slots.add(methodList.size());
+            }
+            methodList.add(fields[0].toUpperCase());
+            uriList.add(fields[1].startsWith("/") ? baseUrl + fields[1] : fields[1]);
+        }
+        this.methods = methodList.toArray(new String[methodList.size()]);
+        this.uris = uriList.toArray(new String[uriList.size()]);
+        this.schedule = new int[slots.size()];
+        for(int i = 0; i < schedule.length; i++) {
+            schedule[i] = slots.get(i);
+        }
+
+        this.clients = new ThreadLocal<EasyHttpClient>() {
+            @Override
+            protected EasyHttpClient initialValue() {
+                return new EasyHttpClient(LoadGenerator.this.transport);
+            }
+        };
+        this.errors = new AtomicLong();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<String, String>();
+        for(String arg : args) {
+            int eq = arg.indexOf('=');
+            settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int rate = Integer.parseInt(setting(settings, "rate", "1000"));
+        int duration = Integer.parseInt(setting(settings, "duration", "10"));
+        int warmup = Integer.parseInt(setting(settings, "warmup", "2"));
+        int concurrency = Integer.parseInt(setting(settings, "concurrency", "32"));
+        String transportName = setting(settings, "transport", "apache");
+        String mix = setting(settings, "mix", "GET /hello 1");
+
+        LocalServer server = null;
+        String baseUrl = settings.get("url");
+        HttpTransport transport;
+        if("memory".equals(transportName)) {
+            transport = new InMemoryTransport(new EchoHandler());
+            baseUrl = baseUrl == null ? "http://memory" : baseUrl;
+        } else {
+            if(baseUrl == null) {
+                server = new LocalServer();
+                baseUrl = server.uri("");
+            }
+            transport = "urlconnection".equals(transportName) ? new UrlConnectionTransport() : new ApacheHttpTransport(concurrency, concurrency);
+        }
+
+        System.out.printf("%s at %d req/s, concurrency %d, mix [%s] on %s%n", transportName, rate, concurrency, mix, baseUrl);
+        LoadGenerator generator = new LoadGenerator(rate, concurrency, transport, baseUrl, mix);
+        try {
+            if(warmup > 0) {
+                System.out.println("warm up");
+                generator.run(warmup, TimeUnit.SECONDS);
+            }
+            System.out.println("measure");
+            generator.run(duration, TimeUnit.SECONDS);
+            generator.report(System.out);
+        } finally {
+            transport.shutdown();
+            if(server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private static String setting(Map<String, String> settings, String name, String defaultValue) {
+        String value = settings.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Sends requests at the configured rate for the given time, then waits for the outstanding ones
+     *
+     * @param duration time sending requests
+     * @param unit unit of the duration
+     * @return elapsed nanoseconds, outstanding requests included
+     * @throws InterruptedException if interrupted while running
+     */
+    public long run(long duration, TimeUnit unit) throws InterruptedException {
+        responseTimes = new LatencyHistogram();
+        serviceTimes = new LatencyHistogram();
+        errors.set(0);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = unit.toSeconds(duration) * rate;
+        long start = System.nanoTime();
+        for(long i = 0; i < total; i++) {
+            final long intended = start + i * interval;
+            long wait;
+            while((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final int request = schedule[(int) (i % schedule.length)];
+            executor.execute(new Runnable() {
+                public void run() {
+                    send(request, intended);
+                }
+            });
+        }
+        shutdown(executor);
+        elapsed = System.nanoTime() - start;
+        return elapsed;
+    }
+
+    private void send(int request, long intended) {
+        EasyHttpClient client = clients.get();
+        client.clear();
+        long sent = System.nanoTime();
+        String method = methods[request];
+        if("POST".equals(method) || "PUT".equals(method)) {
+            client.addParameter("name", "value");
+        }
+        if("GET".equals(method)) {
+            client.get(uris[request]);
+        } else if("POST".equals(method)) {
+            client.post(uris[request]);
+        } else if("PUT".equals(method)) {
+            client.put(uris[request]);
+        } else if("DELETE".equals(method)) {
+            client.delete(uris[request]);
+        } else {
+            client.head(uris[request]);
+        }
+        if(client.getResponse() != null) {
+            client.consumeAsString();
+        }
+        long done = System.nanoTime();
+        if(client.getException() != null || client.getStatus() >= 400) {
+            errors.incrementAndGet();
+        }
+        responseTimes.record((done - intended) / 1000);
+        serviceTimes.record((done - sent) / 1000);
+    }
+
+    private void shutdown(ExecutorService executor) throws InterruptedException {
+        executor.shutdown();
+        if(!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Prints throughput and latency percentiles of the last run, in microseconds
+     *
+     * @param out stream to print to
+     */
+    public void report(PrintStream out) {
+        out.printf("requests %d, errors %d, %.0f req/s of %d req/s target%n",
+                responseTimes.getCount(), errors.get(), responseTimes.getCount() * 1e9 / elapsed, rate);
+        out.println("response time (us, from intended send) " + responseTimes.summary());
+        out.println("service time  (us, from actual send)   " + serviceTimes.summary());
+    }
+
+    public LatencyHistogram getResponseTimes() {
+        return responseTimes;
+    }
+
+    public LatencyHistogram getServiceTimes() {
+        return serviceTimes;
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * In memory stand-in for the local server, answering the request body or a small json
+     */
+    static class EchoHandler implements HttpRequestHandler {
+
+        public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws IOException {
+            if(request instanceof HttpEntityEnclosingRequest) {
+                response.setEntity(new ByteArrayEntity(EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity())));
+            } else {
+                response.setEntity(new StringEntity(LocalServer.HELLO));
+            }
+        }
+    }
+
+}
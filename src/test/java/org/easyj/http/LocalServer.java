@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local http server for tests and benchmarks, listening on an ephemeral port.
+ * <ul>
+ * <li>{@code /hello} answers a small json body</li>
+ * <li>{@code /echo} answers the request body</li>
+ * <li>{@code /redirect} answers a 301 to {@code /hello}</li>
+ * <li>{@code /moved} answers a 308 to {@code /hello}</li>
+ * <li>{@code /file} answers {@link #FILE}, with support for HEAD, single byte ranges and If-Range</li>
+ * </ul>
+ *
+ * @since 1.3.0
+ */
+public class LocalServer {
+
+    public final static String HELLO = "{\"hello\":\"world\"}";
+    public final static String FILE_ETAG = "\"v1\"";
+    public final static byte[] FILE = new byte[300000];
+
+    static {
+        for(int i = 0; i < FILE.length; i++) {
+            FILE[i] = (byte) (i * 31 + i / 256);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public LocalServer() throws IOException {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/hello", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, HELLO.getBytes("UTF-8"));
+            }
+        });
+        server.createContext("/echo", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, read(exchange.getRequestBody()));
+            }
+        });
+        server.createContext("/redirect", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Location", uri("/hello"));
+                respond(exchange, 301, new byte[0]);
+            }
+        });
+        server.createContext("/moved", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                read(exchange.getRequestBody());
+                exchange.getResponseHeaders().add("Location", uri("/hello"));
+                respond(exchange, 308, new byte[0]);
+            }
+        });
+        server.createContext("/file", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                exchange.getResponseHeaders().add("ETag", FILE_ETAG);
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                int start = 0, end = FILE.length - 1, status = 200;
+                if(range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(FILE_ETAG))) {
+                    String[] bounds = range.substring(6).split("-", -1);
+                    start = Integer.parseInt(bounds[0]);
+                    end = bounds[1].isEmpty() ? FILE.length - 1 : Math.min(FILE.length - 1, Integer.parseInt(bounds[1]));
+                    status = 206;
+                    exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + FILE.length);
+                }
+                int length = end - start + 1;
+                if("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().add("Content-Length", String.valueOf(length));
+                    exchange.sendResponseHeaders(status, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(status, length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(FILE, start, length);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Registers another handler
+     *
+     * @param path path of the handler
+     * @param handler handler answering the requests under the path
+     * @return own instance for chaining
+     */
+    public LocalServer addHandler(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+        return this;
+    }
+
+    public String uri(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * URI of a path on the server's IP address, another origin than {@link #uri(String)}
+     *
+     * @param path path of the resource
+     * @return URI of the resource on another origin
+     */
+    public String otherOriginUri(String path) {
+        String address = server.getAddress().getAddress().getHostAddress();
+        if(address.indexOf(':') >= 0) {
+            address = "[" + address + "]";
+        }
+        return "http://" + address + ":" + server.getAddress().getPort() + path;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    public static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests MultipartEntity
+ *
+ * @since 1.3.0
+ */
+public class MultipartEntityTest {
+
+    /**
+     * Test of writeTo method: fields and files are encoded with a known content length
+     */
+    @Test
+    public void testWriteTo() throws IOException {
+        System.out.println("writeTo");
+        File file = File.createTempFile("easyj-http", ".txt");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("file content".getBytes("UTF-8"));
+        out.close();
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("title", "My \"file\"");
+        MultipartEntity entity = new MultipartEntity(parameters, null).addPart("upload", file, "text/plain");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        entity.writeTo(body);
+        String content = body.toString("UTF-8");
+        String boundary = entity.getBoundary();
+
+        assertTrue(entity.isRepeatable());
+        assertFalse(entity.isChunked());
+        assertEquals(body.size(), entity.getContentLength());
+        assertEquals("multipart/form-data; boundary=" + boundary, entity.getContentType().getValue());
+        assertTrue(content.startsWith("--" + boundary + "\r\n"));
+        assertTrue(content.endsWith("--" + boundary + "--\r\n"));
+        assertTrue(content.contains("Content-Disposition: form-data; name=\"title\"\r\n\r\nMy \"file\"\r\n"));
+        assertTrue(content.contains("Content-Disposition: form-data; name=\"upload\"; filename=\"" + file.getName() + "\"\r\n"
+                + "Content-Type: text/plain\r\n\r\nfile content\r\n"));
+
+        System.out.println("getContent");
+        assertEquals(content, new String(LocalServer.read(entity.getContent()), "UTF-8"));
+        assertEquals(content, new String(LocalServer.read(entity.getContent()), "UTF-8"));
+        assertTrue(entity.isRepeatable());
+    }
+
+    /**
+     * Test of stream parts: unknown lengths make the entity chunked and streams are not repeatable
+     */
+    @Test
+    public void testStreamPart() throws IOException {
+        System.out.println("stream part");
+        MultipartEntity entity = new MultipartEntity()
+                .addField("name", "value")
+                .addPart("data", new ByteArrayInputStream(new byte[]{1, 2, 3}), -1, "data.bin", null);
+
+        assertFalse(entity.isRepeatable());
+        assertTrue(entity.isChunked());
+        assertEquals(-1, entity.getContentLength());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        entity.writeTo(body);
+        assertTrue(body.toString("UTF-8").contains("filename=\"data.bin\"\r\nContent-Type: application/octet-stream\r\n\r\n\u0001\u0002\u0003\r\n"));
+    }
+
+    /**
+     * Test of stream parts shorter than their declared length: the write fails instead of sending a short body
+     */
+    @Test
+    public void testStreamPart_Premature() throws IOException {
+        System.out.println("stream part premature end");
+        MultipartEntity entity = new MultipartEntity()
+                .addPart("data", new ByteArrayInputStream(new byte[]{1, 2, 3}), 5, "data.bin", null);
+        try {
+            entity.writeTo(new ByteArrayOutputStream());
+            fail("a short part must not be sent");
+        } catch (IOException ex) {
+            assertEquals("Premature end of body: expected 5, sent 3", ex.getMessage());
+        }
+    }
+
+}
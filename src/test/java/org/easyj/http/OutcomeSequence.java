@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+
+/**
+ * Requests with different outcomes run one after the other on the same client, without clearing it,
+ * for tests checking that the outcome of a request does not leak into the next one:
+ * <ol>
+ * <li>{@link #HELLO} answers {@link LocalServer#HELLO}, consumed</li>
+ * <li>{@link #FAIL} fails with an {@code IOException}</li>
+ * <li>{@link #UNAVAILABLE} answers a 503 with no body</li>
+ * <li>{@link #HELLO} again, consumed</li>
+ * </ol>
+ *
+ * @since 1.3.0
+ */
+public class OutcomeSequence {
+
+    public final static String HELLO = "http://memory/hello";
+    public final static String FAIL = "http://memory/fail";
+    public final static String UNAVAILABLE = "http://memory/unavailable";
+
+    /**
+     * Creates the transport answering the requests of the sequence
+     *
+     * @return new in memory transport
+     */
+    public static InMemoryTransport transport() {
+        return new InMemoryTransport()
+                .register("/hello", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        response.setEntity(new StringEntity(LocalServer.HELLO));
+                    }
+                })
+                .register("/fail", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                        throw new IOException("connection reset");
+                    }
+                })
+                .register("/unavailable", new HttpRequestHandler() {
+                    public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+                        response.setStatusCode(503);
+                    }
+                });
+    }
+
+    /**
+     * Runs the sequence
+     *
+     * @param client client on {@link #transport()}
+     * @return the client, with the response of the last request
+     */
+    public static EasyHttpClient run(EasyHttpClient client) {
+        client.get(HELLO).consumeAsString();
+        client.get(FAIL);
+        client.get(UNAVAILABLE);
+        client.get(HELLO).consumeAsString();
+        return client;
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests PriorityBulkhead
+ *
+ * @since 1.3.0
+ */
+public class PriorityBulkheadTest {
+
+    PriorityBulkhead bulkhead;
+
+    @Before
+    public void setUp() {
+        bulkhead = new PriorityBulkhead(4);
+    }
+
+    /**
+     * Test of the per class limits: batch traffic can not take the whole capacity
+     */
+    @Test
+    public void testLimits() {
+        System.out.println("limits");
+        assertEquals(4, bulkhead.getLimit(Priority.INTERACTIVE));
+        assertEquals(3, bulkhead.getLimit(Priority.BATCH));
+        assertEquals(2, bulkhead.getLimit(Priority.BACKGROUND));
+
+        System.out.println("batch limit");
+        assertTrue(bulkhead.tryAcquire(Priority.BATCH));
+        assertTrue(bulkhead.tryAcquire(Priority.BATCH));
+        assertTrue(bulkhead.tryAcquire(Priority.BATCH));
+        assertFalse(bulkhead.tryAcquire(Priority.BATCH));
+        assertEquals(3, bulkhead.getInUse(Priority.BATCH));
+
+        System.out.println("interactive still admitted");
+        assertTrue(bulkhead.tryAcquire(Priority.INTERACTIVE));
+
+        System.out.println("capacity");
+        assertFalse(bulkhead.tryAcquire(Priority.INTERACTIVE));
+
+        System.out.println("release");
+        bulkhead.release(Priority.BATCH);
+        assertTrue(bulkhead.tryAcquire(Priority.INTERACTIVE));
+    }
+
+    /**
+     * Test of acquire method with timeout
+     */
+    @Test
+    public void testAcquire_Timeout() throws InterruptedException {
+        System.out.println("acquire timeout");
+        bulkhead = new PriorityBulkhead(1).setMaxWait(10, TimeUnit.MILLISECONDS);
+        assertTrue(bulkhead.acquire(Priority.BACKGROUND));
+        assertFalse(bulkhead.acquire(Priority.INTERACTIVE));
+        assertEquals(0, bulkhead.getWaiting(Priority.INTERACTIVE));
+    }
+
+    /**
+     * Test of admission order: when saturated, waiting interactive requests go before batch ones
+     */
+    @Test
+    public void testAcquire_PriorityOrder() throws InterruptedException {
+        System.out.println("acquire priority order");
+        bulkhead = new PriorityBulkhead(1);
+        final List<Priority> admitted = new CopyOnWriteArrayList<Priority>();
+        assertTrue(bulkhead.acquire(Priority.INTERACTIVE));
+
+        Thread batch = waiter(Priority.BATCH, admitted);
+        waitUntilWaiting(Priority.BATCH);
+        Thread interactive = waiter(Priority.INTERACTIVE, admitted);
+        waitUntilWaiting(Priority.INTERACTIVE);
+
+        bulkhead.release(Priority.INTERACTIVE);
+        batch.join(5000);
+        interactive.join(5000);
+
+        assertEquals(2, admitted.size());
+        assertEquals(Priority.INTERACTIVE, admitted.get(0));
+        assertEquals(Priority.BATCH, admitted.get(1));
+    }
+
+    /**
+     * Test of the admission held by a client: the next request releases the unread response's connection
+     */
+    @Test
+    public void testClient() throws IOException {
+        System.out.println("client next request");
+        LocalServer server = new LocalServer();
+        EasyHttpClient client = new EasyHttpClient(1).setBulkhead(new PriorityBulkhead(1)).setTimeouts(new Timeouts().setLease(1000));
+        try {
+            client.get(server.uri("/file"));
+            assertNull(client.getException());
+            assertEquals(LocalServer.HELLO, client.get(server.uri("/hello")).consumeAsString());
+            assertNull(client.getException());
+        } finally {
+            client.shutdown();
+            server.stop();
+        }
+    }
+
+    private Thread waiter(final Priority priority, final List<Priority> admitted) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    bulkhead.acquire(priority);
+                    admitted.add(priority);
+                    Thread.sleep(20);
+                    bulkhead.release(priority);
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void waitUntilWaiting(Priority priority) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(bulkhead.getWaiting(priority) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests RateLimiter
+ *
+ * @since 1.3.0
+ */
+public class RateLimiterTest {
+
+    RateLimiter limiter;
+
+    @Before
+    public void setUp() {
+        limiter = new RateLimiter(1, 3);
+    }
+
+    /**
+     * Test of tryAcquire method: burst is allowed right away, then requests are paced
+     */
+    @Test
+    public void testTryAcquire() {
+        System.out.println("tryAcquire(String)");
+
+        System.out.println("burst");
+        assertTrue(limiter.tryAcquire("host:80"));
+        assertTrue(limiter.tryAcquire("host:80"));
+        assertTrue(limiter.tryAcquire("host:80"));
+
+        System.out.println("exhausted");
+        assertFalse(limiter.tryAcquire("host:80"));
+
+        System.out.println("another key");
+        assertTrue(limiter.tryAcquire("other:80"));
+    }
+
+    /**
+     * Test of tryAcquire method with timeout
+     */
+    @Test
+    public void testTryAcquire_Timeout() throws InterruptedException {
+        System.out.println("tryAcquire(String, long, TimeUnit)");
+        limiter = new RateLimiter(100, 1);
+
+        assertTrue(limiter.tryAcquire("host:80", 0, TimeUnit.MILLISECONDS));
+        assertFalse(limiter.tryAcquire("host:80", 0, TimeUnit.MILLISECONDS));
+        assertTrue(limiter.tryAcquire("host:80", 1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test of reserve method: permits beyond the burst get increasing waits
+     */
+    @Test
+    public void testReserve() {
+        System.out.println("reserve");
+        assertEquals(0, limiter.reserve("host:80"));
+        assertEquals(0, limiter.reserve("host:80"));
+        assertEquals(0, limiter.reserve("host:80"));
+
+        long wait1 = limiter.reserve("host:80");
+        long wait2 = limiter.reserve("host:80");
+        assertTrue(wait1 > 0);
+        assertTrue(wait2 > wait1);
+    }
+
+    /**
+     * Test of setRate method
+     */
+    @Test
+    public void testSetRate() {
+        System.out.println("setRate");
+        limiter.setRate("slow:80", 1, 1);
+
+        assertTrue(limiter.tryAcquire("slow:80"));
+        assertFalse(limiter.tryAcquire("slow:80"));
+        assertTrue(limiter.tryAcquire("fast:80"));
+        assertTrue(limiter.tryAcquire("fast:80"));
+    }
+
+    /**
+     * Test of keyFor method
+     */
+    @Test
+    public void testKeyFor() {
+        System.out.println("keyFor");
+        assertEquals("localhost:80", RateLimiter.keyFor(URI.create("http://LocalHost/path")));
+        assertEquals("localhost:443", RateLimiter.keyFor(URI.create("https://localhost/path")));
+        assertEquals("localhost:8080", RateLimiter.keyFor(URI.create("http://localhost:8080/path")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new RateLimiter(0, 1);
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ResponsePublisher and SubscriberEntity against a local server
+ *
+ * @since 1.3.0
+ */
+public class ReactiveStreamsTest {
+
+    LocalServer server;
+    EasyHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        client = new EasyHttpClient(4);
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop();
+    }
+
+    /**
+     * Test of publishResponse method: items are only read as they are requested
+     */
+    @Test
+    public void testPublishResponse() {
+        System.out.println("publishResponse");
+        client.get(server.uri("/file"));
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        client.publishResponse(null).setChunkSize(1000).subscribe(subscriber);
+
+        System.out.println("no demand");
+        assertEquals(0, subscriber.items);
+
+        System.out.println("bounded demand");
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.items);
+
+        System.out.println("unbounded demand");
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+        assertArrayEquals(LocalServer.FILE, subscriber.body.toByteArray());
+    }
+
+    /**
+     * Test of publishResponse method with the subscription cancelled mid body
+     */
+    @Test
+    public void testPublishResponse_Cancel() {
+        System.out.println("publishResponse cancel");
+        client.get(server.uri("/file"));
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        client.publishResponse(null).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+
+        assertEquals(1, subscriber.items);
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    /**
+     * Test of ResponsePublisher subscribed twice
+     */
+    @Test
+    public void testPublishResponse_SubscribedTwice() {
+        System.out.println("publishResponse subscribed twice");
+        client.get(server.uri("/hello"));
+        ResponsePublisher publisher = client.publishResponse(null);
+        publisher.subscribe(new CollectingSubscriber());
+        CollectingSubscriber second = new CollectingSubscriber();
+        publisher.subscribe(second);
+
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    /**
+     * Test of setEntity method with a publisher: no more than the prefetch is requested ahead
+     */
+    @Test
+    public void testSetEntity_Publisher() throws IOException {
+        System.out.println("setEntity publisher");
+        ChunkPublisher publisher = new ChunkPublisher(LocalServer.FILE, 1000);
+        client.setEntity(publisher, LocalServer.FILE.length, "application/octet-stream").post(server.uri("/echo"));
+
+        assertNull(client.getException());
+        assertEquals(200, client.getStatus());
+        assertTrue(publisher.maxOutstanding <= SubscriberEntity.DEFAULT_PREFETCH);
+        assertArrayEquals(LocalServer.FILE, LocalServer.read(client.getResponse().getEntity().getContent()));
+    }
+
+    /**
+     * Test of setEntity method with a publisher that stops sending: the read timeout fails the request
+     */
+    @Test
+    public void testSetEntity_PublisherStalled() {
+        System.out.println("setEntity publisher stalled, read timeout");
+        StalledPublisher publisher = new StalledPublisher();
+        long start = System.currentTimeMillis();
+        client.setTimeouts(new Timeouts().setRead(200)).setEntity(publisher, -1, "application/octet-stream").post(server.uri("/echo"));
+
+        assertTrue(client.getException() instanceof RequestTimeoutException);
+        assertEquals(RequestTimeoutException.Kind.READ, ((RequestTimeoutException) client.getException()).getKind());
+        assertTrue(publisher.cancelled);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+
+        System.out.println("setEntity publisher stalled, deadline");
+        client.clear();
+        publisher = new StalledPublisher();
+        start = System.currentTimeMillis();
+        client.setTimeouts(new Timeouts().setDeadline(200)).setEntity(publisher, -1, "application/octet-stream").post(server.uri("/echo"));
+
+        assertTrue(client.getException() instanceof RequestTimeoutException);
+        assertEquals(RequestTimeoutException.Kind.DEADLINE, ((RequestTimeoutException) client.getException()).getKind());
+        assertTrue(publisher.cancelled);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    /**
+     * Test of closing the content of a SubscriberEntity while the connection waits for a buffer
+     */
+    @Test
+    public void testSubscriberEntity_Close() throws Exception {
+        System.out.println("SubscriberEntity closed while waiting");
+        StalledPublisher publisher = new StalledPublisher();
+        SubscriberEntity entity = new SubscriberEntity(-1);
+        publisher.subscribe(entity);
+        final InputStream in = entity.getContent();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    in.read(new byte[10]);
+                } catch(Throwable ex) {
+                    failure.set(ex);
+                }
+            }
+        };
+        reader.start();
+        Thread.sleep(100);
+        in.close();
+        reader.join(5000);
+
+        assertFalse(reader.isAlive());
+        assertTrue(failure.get() instanceof InterruptedIOException);
+        assertTrue(publisher.cancelled);
+    }
+
+    /**
+     * Subscriber collecting the body, requesting nothing on its own
+     */
+    private static class CollectingSubscriber implements Subscriber<ByteBuffer> {
+
+        Subscription subscription;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int items;
+        boolean completed;
+        Throwable error;
+
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(ByteBuffer buffer) {
+            items++;
+            body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    /**
+     * Publisher of fixed size chunks of an array, tracking how far demand runs ahead of delivery
+     */
+    private static class ChunkPublisher implements Publisher<ByteBuffer> {
+
+        final byte[] data;
+        final int chunkSize;
+        volatile long maxOutstanding;
+
+        ChunkPublisher(byte[] data, int chunkSize) {
+            this.data = data;
+            this.chunkSize = chunkSize;
+        }
+
+        public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                final AtomicLong demand = new AtomicLong();
+                int position;
+                boolean emitting;
+
+                public synchronized void request(long n) {
+                    maxOutstanding = Math.max(maxOutstanding, demand.addAndGet(n));
+                    if(emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while(demand.get() > 0 && position < data.length) {
+                        int length = Math.min(chunkSize, data.length - position);
+                        demand.decrementAndGet();
+                        subscriber.onNext(ByteBuffer.wrap(data, position, length));
+                        position += length;
+                    }
+                    emitting = false;
+                    if(position == data.length) {
+                        position++;
+                        subscriber.onComplete();
+                    }
+                }
+
+                public void cancel() {
+                    position = data.length + 1;
+                }
+            });
+        }
+    }
+
+    /**
+     * Publisher that subscribes but never sends anything
+     */
+    private static class StalledPublisher implements Publisher<ByteBuffer> {
+
+        volatile boolean cancelled;
+
+        public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests RedirectCache
+ *
+ * @since 1.3.0
+ */
+public class RedirectCacheTest {
+
+    /**
+     * Test of resolve method, following chained redirects
+     */
+    @Test
+    public void testResolve() {
+        System.out.println("resolve");
+        RedirectCache cache = new RedirectCache();
+        cache.put("http://a/1", "http://b/1");
+        assertEquals("http://b/1", cache.resolve("http://a/1"));
+        assertNull(cache.resolve("http://a/2"));
+
+        System.out.println("chained");
+        cache.put("http://b/1", "https://c/1");
+        assertEquals("https://c/1", cache.resolve("http://a/1"));
+
+        System.out.println("cycle");
+        cache.put("https://c/1", "http://a/1");
+        assertNotNull(cache.resolve("http://a/1"));
+        assertEquals(3, cache.getHits());
+    }
+
+    /**
+     * Test of the capacity: the least recently used redirect is evicted
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("eviction");
+        RedirectCache cache = new RedirectCache(2);
+        cache.put("http://a/1", "http://b/1");
+        cache.put("http://a/2", "http://b/2");
+        cache.resolve("http://a/1");
+        cache.put("http://a/3", "http://b/3");
+        assertEquals(2, cache.size());
+        assertNull(cache.resolve("http://a/2"));
+        assertEquals("http://b/1", cache.resolve("http://a/1"));
+    }
+
+}
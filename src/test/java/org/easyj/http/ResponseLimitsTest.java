@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the response size limits and spilled buffers
+ *
+ * @since 1.3.0
+ */
+public class ResponseLimitsTest {
+
+    LocalServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        server.addHandler("/chunked", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(LocalServer.FILE);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Test of the maximum response size, known from the content length or found while reading
+     */
+    @Test
+    public void testMaxResponseSize() {
+        System.out.println("max response size");
+        EasyHttpClient client = new EasyHttpClient(1).setMaxResponseSize(1000);
+        try {
+            client.get(server.uri("/file"));
+            assertTrue(client.getException() instanceof ResponseTooLargeException);
+            assertEquals(1000, ((ResponseTooLargeException) client.getException()).getLimit());
+            assertEquals("", client.consumeAsString());
+
+            System.out.println("unknown length");
+            client.clear();
+            client.get(server.uri("/chunked"));
+            assertNull(client.getException());
+            client.consumeAsString();
+            assertTrue(client.getException() instanceof ResponseTooLargeException);
+
+            System.out.println("connection released");
+            client.clear();
+            client.setRequestTimeouts(new Timeouts().setLease(1000)).get(server.uri("/hello"));
+            assertEquals(LocalServer.HELLO, client.consumeAsString());
+        } finally {
+            client.clear();
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Test of a request after a failed one on the same client: the failure does not stick
+     */
+    @Test
+    public void testAfterFailure() throws IOException {
+        System.out.println("after failure");
+        EasyHttpClient client = new EasyHttpClient(1).setMaxResponseSize(1000);
+        try {
+            client.get(server.uri("/file"));
+            assertTrue(client.getException() instanceof ResponseTooLargeException);
+
+            client.get(server.uri("/hello"));
+            assertNull(client.getException());
+            assertEquals(200, client.getStatus());
+            assertEquals(LocalServer.HELLO, client.consumeAsString());
+
+            System.out.println("buffered after failure");
+            client.get(server.uri("/file"));
+            client.get(server.uri("/hello"));
+            InputStream in = client.consumeBuffered();
+            assertNotNull(in);
+            assertEquals(LocalServer.HELLO, new String(LocalServer.read(in), "UTF-8"));
+        } finally {
+            client.clear();
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Test of the default charsets: UTF-8 for json, ISO-8859-1 for other types
+     */
+    @Test
+    public void testDefaultCharset() throws IOException {
+        System.out.println("default charset");
+        final byte[] body = "{\"name\":\"caf\u00e9\"}".getBytes("UTF-8");
+        final String[] type = new String[1];
+        EasyHttpClient client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                ByteArrayEntity entity = new ByteArrayEntity(body);
+                entity.setContentType(type[0]);
+                response.setEntity(entity);
+            }
+        }));
+
+        type[0] = "application/json";
+        assertEquals(new String(body, "UTF-8"), client.get("http://memory/json").consumeAsString());
+
+        System.out.println("declared charset");
+        type[0] = "application/json; charset=ISO-8859-1";
+        assertEquals(new String(body, "ISO-8859-1"), client.get("http://memory/json").consumeAsString());
+
+        System.out.println("other types");
+        type[0] = "text/plain";
+        assertEquals(new String(body, "ISO-8859-1"), client.get("http://memory/text").consumeAsString());
+    }
+
+    /**
+     * Test of bodies spilled to disk over the memory threshold
+     */
+    @Test
+    public void testSpill() throws IOException {
+        System.out.println("spill");
+        EasyHttpClient client = new EasyHttpClient(1).setResponseMemoryThreshold(4);
+        try {
+            client.get(server.uri("/hello"));
+            assertEquals(LocalServer.HELLO, client.consumeAsString());
+
+            System.out.println("buffered");
+            client.clear();
+            client.get(server.uri("/chunked"));
+            InputStream in = client.consumeBuffered();
+            assertArrayEquals(LocalServer.FILE, LocalServer.read(in));
+            assertNull(client.getException());
+        } finally {
+            client.clear();
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Test of the maximum string size, known from the content length or found while reading
+     */
+    @Test
+    public void testMaxStringSize() throws IOException {
+        System.out.println("max string size");
+        EasyHttpClient client = new EasyHttpClient(1).setMaxStringSize(1000);
+        try {
+            client.get(server.uri("/file"));
+            assertEquals("", client.consumeAsString());
+            assertTrue(client.getException() instanceof ResponseTooLargeException);
+            assertEquals(1000, ((ResponseTooLargeException) client.getException()).getLimit());
+            assertTrue(client.getException().getMessage().endsWith("consumeBuffered()"));
+
+            System.out.println("unknown length");
+            client.get(server.uri("/chunked"));
+            assertEquals("", client.consumeAsString());
+            assertTrue(client.getException() instanceof ResponseTooLargeException);
+
+            System.out.println("buffered");
+            client.get(server.uri("/chunked"));
+            assertArrayEquals(LocalServer.FILE, LocalServer.read(client.consumeBuffered()));
+        } finally {
+            client.clear();
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Test of a body far larger than the heap consumed as a String with the default settings:
+     * it fails with {@link ResponseTooLargeException} instead of running out of memory
+     */
+    @Test
+    public void testMaxStringSize_SmallHeap() throws Exception {
+        System.out.println("max string size, small heap");
+        Process process = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-Xmx32m",
+                "-cp", System.getProperty("java.class.path"), LargeBody.class.getName())
+                .redirectErrorStream(true).start();
+        String output = new String(LocalServer.read(process.getInputStream()), "UTF-8");
+        assertEquals(output, 0, process.waitFor());
+        assertTrue(output, output.contains(ResponseTooLargeException.class.getName()));
+    }
+
+    /**
+     * Consumes a 100 MB body of unknown length as a String, exiting with 0 if it was refused
+     */
+    public static class LargeBody {
+
+        public static void main(String[] args) {
+            EasyHttpClient client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+                public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+                    response.setEntity(new InputStreamEntity(new InputStream() {
+                        long remaining = 100L * 1024 * 1024;
+
+                        @Override
+                        public int read() {
+                            return remaining-- > 0 ? 'a' : -1;
+                        }
+
+                        @Override
+                        public int read(byte[] b, int off, int len) {
+                            if(remaining <= 0) {
+                                return -1;
+                            }
+                            int read = (int) Math.min(len, remaining);
+                            Arrays.fill(b, off, off + read, (byte) 'a');
+                            remaining -= read;
+                            return read;
+                        }
+                    }, -1));
+                }
+            }));
+            client.get("http://memory/large").consumeAsString();
+            System.out.println(client.getException());
+            System.exit(client.getException() instanceof ResponseTooLargeException ? 0 : 1);
+        }
+    }
+
+    /**
+     * Test of SpillBuffer
+     */
+    @Test
+    public void testSpillBuffer() throws IOException {
+        System.out.println("SpillBuffer");
+        SpillBuffer buffer = new SpillBuffer(10);
+        buffer.write(LocalServer.FILE, 0, 8);
+        assertFalse(buffer.isSpilled());
+        buffer.write(LocalServer.FILE, 8, 100);
+        buffer.close();
+        assertTrue(buffer.isSpilled());
+        assertEquals(108, buffer.getLength());
+        byte[] content = LocalServer.read(buffer.getInputStream());
+        assertEquals(108, content.length);
+        for(int i = 0; i < content.length; i++) {
+            assertEquals(LocalServer.FILE[i], content[i]);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ResumableDownload against a local server
+ *
+ * @since 1.3.0
+ */
+public class ResumableDownloadTest {
+
+    LocalServer server;
+    EasyHttpClient client;
+    File target;
+    List<String> ranges;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        client = new EasyHttpClient(4);
+        target = File.createTempFile("easyj-http", ".bin");
+        target.deleteOnExit();
+        ranges = new CopyOnWriteArrayList<String>();
+
+        // answers the first request with half of the file before dropping the connection
+        server.addHandler("/flaky", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                ranges.add(String.valueOf(range));
+                if(range != null) {
+                    int start = Integer.parseInt(range.substring(6, range.indexOf('-')));
+                    exchange.getResponseHeaders().add("ETag", LocalServer.FILE_ETAG);
+                    exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (LocalServer.FILE.length - 1) + "/" + LocalServer.FILE.length);
+                    exchange.sendResponseHeaders(206, LocalServer.FILE.length - start);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(LocalServer.FILE, start, LocalServer.FILE.length - start);
+                    out.close();
+                    return;
+                }
+                exchange.getResponseHeaders().add("ETag", LocalServer.FILE_ETAG);
+                exchange.sendResponseHeaders(200, LocalServer.FILE.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(LocalServer.FILE, 0, LocalServer.FILE.length / 2);
+                out.flush();
+                exchange.close();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop();
+        target.delete();
+        ResumableDownload.checkpointFile(target).delete();
+    }
+
+    /**
+     * Test of download method resuming after the connection dropped mid body
+     */
+    @Test
+    public void testDownload_Resume() throws IOException {
+        System.out.println("download resume");
+        client.addRequestHeader("X-Caller", "1").addParameter("pending", "value");
+        long bytes = new ResumableDownload(client).setRetryDelay(0).setCheckpointInterval(10000).download(server.uri("/flaky"), target);
+
+        assertEquals(LocalServer.FILE.length, bytes);
+        assertArrayEquals(LocalServer.FILE, LocalServer.read(new FileInputStream(target)));
+        assertEquals(2, ranges.size());
+        assertEquals("null", ranges.get(0));
+        assertTrue(ranges.get(1).startsWith("bytes="));
+        assertFalse(ResumableDownload.checkpointFile(target).exists());
+
+        System.out.println("client untouched");
+        assertEquals("1", client.getRequestHeaders().get("X-Caller"));
+        assertNull(client.getRequestHeaders().get("Range"));
+        assertEquals("value", client.getParameters().get("pending"));
+    }
+
+    /**
+     * Test of download method resuming from a checkpoint left by a previous run
+     */
+    @Test
+    public void testDownload_Checkpoint() throws IOException {
+        System.out.println("download from checkpoint");
+        writeCheckpoint(server.uri("/flaky"), LocalServer.FILE_ETAG, 1000);
+
+        long bytes = new ResumableDownload(client).download(server.uri("/flaky"), target);
+
+        assertEquals(LocalServer.FILE.length, bytes);
+        assertArrayEquals(LocalServer.FILE, LocalServer.read(new FileInputStream(target)));
+        assertEquals("bytes=1000-", ranges.get(0));
+    }
+
+    /**
+     * Test of download method starting over when the resource changed since the checkpoint
+     */
+    @Test
+    public void testDownload_Changed() throws IOException {
+        System.out.println("download changed resource");
+        writeCheckpoint(server.uri("/file"), "\"v0\"", 1000);
+
+        long bytes = new ResumableDownload(client).download(server.uri("/file"), target);
+
+        assertEquals(LocalServer.FILE.length, bytes);
+        assertArrayEquals(LocalServer.FILE, LocalServer.read(new FileInputStream(target)));
+    }
+
+    /**
+     * Test of download method giving up after the maximum attempts
+     */
+    @Test
+    public void testDownload_NotFound() throws IOException {
+        System.out.println("download not found");
+        try {
+            new ResumableDownload(client).setMaxAttempts(2).setRetryDelay(0).download(server.uri("/missing"), target);
+            fail("IOException expected");
+        } catch(IOException ex) {
+            assertTrue(ex.getMessage().contains("404"));
+        }
+    }
+
+    private void writeCheckpoint(String uri, String validator, int bytes) throws IOException {
+        OutputStream out = new FileOutputStream(target);
+        out.write(LocalServer.FILE, 0, bytes);
+        out.close();
+
+        out = new FileOutputStream(ResumableDownload.checkpointFile(target));
+        out.write(("uri=" + uri + "\nbytes=" + bytes + "\nvalidator=" + validator + "\n").getBytes("ISO-8859-1"));
+        out.close();
+    }
+
+}
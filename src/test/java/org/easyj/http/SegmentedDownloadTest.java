@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests SegmentedDownload against a local server
+ *
+ * @since 1.3.0
+ */
+public class SegmentedDownloadTest {
+
+    LocalServer server;
+    EasyHttpClient client;
+    File target;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        client = new EasyHttpClient(4);
+        target = File.createTempFile("easyj-http", ".bin");
+        target.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop();
+        target.delete();
+    }
+
+    /**
+     * Test of download method with ranges fetched in parallel
+     */
+    @Test
+    public void testDownload() throws IOException {
+        System.out.println("download segmented");
+        long bytes = new SegmentedDownload(client).setSegments(4).setMinSegmentSize(1000).download(server.uri("/file"), target);
+
+        assertEquals(LocalServer.FILE.length, bytes);
+        assertArrayEquals(LocalServer.FILE, LocalServer.read(new FileInputStream(target)));
+    }
+
+    /**
+     * Test of download method running every request through the client's settings, leaving the client untouched
+     */
+    @Test
+    public void testDownload_ClientSettings() throws IOException {
+        System.out.println("download with client settings");
+        final AtomicInteger authenticated = new AtomicInteger();
+        HttpStats stats = new HttpStats();
+        client.setAuthenticator(new Authenticator() {
+            public void authenticate(HttpRequest request) {
+                authenticated.incrementAndGet();
+            }
+            public void onUnauthorized(HttpRequest request) {
+            }
+        }).setStats(stats);
+        client.addRequestHeader("X-Caller", "1").addParameter("pending", "value");
+
+        long bytes = new SegmentedDownload(client).setSegments(4).setMinSegmentSize(1000).download(server.uri("/file"), target);
+        assertEquals(LocalServer.FILE.length, bytes);
+        assertEquals(5, authenticated.get());
+        assertEquals(5, stats.getRequests());
+        assertEquals(LocalServer.FILE.length, stats.getBytesIn());
+
+        System.out.println("client untouched");
+        assertEquals("1", client.getRequestHeaders().get("X-Caller"));
+        assertEquals("value", client.getParameters().get("pending"));
+        assertNull(client.getResponse());
+    }
+
+    /**
+     * Test of download method falling back to a single stream for small resources
+     */
+    @Test
+    public void testDownload_SingleStream() throws IOException {
+        System.out.println("download single stream");
+        long bytes = new SegmentedDownload(client).download(server.uri("/file"), target);
+
+        assertEquals(LocalServer.FILE.length, bytes);
+        assertArrayEquals(LocalServer.FILE, LocalServer.read(new FileInputStream(target)));
+    }
+
+    /**
+     * Test of download method with a failing HEAD
+     */
+    @Test(expected = IOException.class)
+    public void testDownload_NotFound() throws IOException {
+        new SegmentedDownload(client).download(server.uri("/missing"), target);
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.params.HttpConnectionParams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests request timeouts and deadlines
+ *
+ * @since 1.3.0
+ */
+public class TimeoutsTest {
+
+    LocalServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+        server.addHandler("/slow", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                pause(2000);
+                LocalServer.respond(exchange, 200, LocalServer.HELLO.getBytes("UTF-8"));
+            }
+        });
+        server.addHandler("/stall", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                out.write('{');
+                out.flush();
+                pause(2000);
+                out.write('}');
+                out.close();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Test of the read timeout on both transports
+     */
+    @Test
+    public void testReadTimeout() {
+        System.out.println("read timeout");
+        assertTimeout(new EasyHttpClient(2), RequestTimeoutException.Kind.READ);
+
+        System.out.println("read timeout url connection");
+        assertTimeout(new EasyHttpClient(new UrlConnectionTransport()), RequestTimeoutException.Kind.READ);
+    }
+
+    private void assertTimeout(EasyHttpClient client, RequestTimeoutException.Kind kind) {
+        client.setTimeouts(new Timeouts().setRead(200));
+        client.get(server.uri("/slow"));
+        assertTrue(String.valueOf(client.getException()), client.getException() instanceof RequestTimeoutException);
+        assertEquals(kind, ((RequestTimeoutException) client.getException()).getKind());
+        assertEquals(504, client.getStatus());
+        client.shutdown();
+    }
+
+    /**
+     * Test of the deadline, expiring while the body is read
+     */
+    @Test
+    public void testDeadline() {
+        System.out.println("deadline");
+        EasyHttpClient client = new EasyHttpClient(2).setRequestTimeouts(new Timeouts().setDeadline(300));
+        long start = System.currentTimeMillis();
+        client.get(server.uri("/stall"));
+        assertNull(client.getException());
+        client.consumeAsString();
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertTrue(String.valueOf(client.getException()), client.getException() instanceof RequestTimeoutException);
+        assertEquals(RequestTimeoutException.Kind.DEADLINE, ((RequestTimeoutException) client.getException()).getKind());
+        assertEquals(504, client.getStatus());
+
+        System.out.println("deadline url connection");
+        client = new EasyHttpClient(new UrlConnectionTransport()).setRequestTimeouts(new Timeouts().setDeadline(300));
+        start = System.currentTimeMillis();
+        client.get(server.uri("/slow"));
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertEquals(RequestTimeoutException.Kind.DEADLINE, ((RequestTimeoutException) client.getException()).getKind());
+
+        System.out.println("completed in time");
+        client.clear();
+        client.setRequestTimeouts(new Timeouts().setDeadline(5000)).get(server.uri("/hello"));
+        assertEquals(LocalServer.HELLO, client.consumeAsString());
+        assertNull(client.getException());
+    }
+
+    /**
+     * Test of the lease timeout, waiting for the only pooled connection
+     */
+    @Test
+    public void testLeaseTimeout() {
+        System.out.println("lease timeout");
+        EasyHttpClient holder = new EasyHttpClient(1);
+        holder.get(server.uri("/hello"));
+        EasyHttpClient client = new EasyHttpClient(holder.getTransport()).setTimeouts(new Timeouts().setLease(100));
+        client.get(server.uri("/hello"));
+        assertEquals(RequestTimeoutException.Kind.LEASE, ((RequestTimeoutException) client.getException()).getKind());
+
+        System.out.println("released");
+        holder.consumeAsString();
+        client.clear();
+        client.get(server.uri("/hello"));
+        assertEquals(200, client.getStatus());
+        holder.shutdown();
+    }
+
+    /**
+     * Test of request timeouts overriding the client-wide ones
+     */
+    @Test
+    public void testRequestTimeouts() {
+        System.out.println("request timeouts");
+        EasyHttpClient client = new EasyHttpClient(2).setTimeouts(new Timeouts().setConnect(1000).setRead(2000));
+        client.setRequestTimeouts(new Timeouts().setRead(3000)).get(server.uri("/hello"));
+        assertEquals(1000, HttpConnectionParams.getConnectionTimeout(client.getMethod().getParams()));
+        assertEquals(3000, HttpConnectionParams.getSoTimeout(client.getMethod().getParams()));
+
+        System.out.println("until cleared");
+        client.get(server.uri("/hello"));
+        assertEquals(3000, HttpConnectionParams.getSoTimeout(client.getMethod().getParams()));
+
+        System.out.println("cleared");
+        client.clear();
+        client.get(server.uri("/hello"));
+        assertEquals(2000, HttpConnectionParams.getSoTimeout(client.getMethod().getParams()));
+        client.shutdown();
+    }
+
+    /**
+     * Test of kindOf method
+     */
+    @Test
+    public void testKindOf() {
+        System.out.println("kindOf");
+        assertEquals(RequestTimeoutException.Kind.LEASE, Timeouts.kindOf(new ConnectionPoolTimeoutException()));
+        assertEquals(RequestTimeoutException.Kind.CONNECT, Timeouts.kindOf(new ConnectTimeoutException()));
+        assertEquals(RequestTimeoutException.Kind.CONNECT, Timeouts.kindOf(new SocketTimeoutException("Connect timed out")));
+        assertEquals(RequestTimeoutException.Kind.READ, Timeouts.kindOf(new SocketTimeoutException("Read timed out")));
+        assertNull(Timeouts.kindOf(new IOException("Connection reset")));
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests TlsConfig against a local server with a self-signed certificate
+ *
+ * @since 1.3.0
+ */
+public class TlsConfigTest {
+
+    private final static char[] PASSWORD = "changeit".toCharArray();
+
+    HttpsServer server;
+    KeyStore keyStore;
+
+    @Before
+    public void setUp() throws Exception {
+        keyStore = KeyStore.getInstance("JKS");
+        InputStream in = getClass().getResourceAsStream("/localhost.jks");
+        try {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            in.close();
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        server.createContext("/hello", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                LocalServer.respond(exchange, 200, LocalServer.HELLO.getBytes("UTF-8"));
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Test of session resumption: new connections after the first resume its session
+     */
+    @Test
+    public void testSessionResumption() throws InterruptedException {
+        System.out.println("session resumption TLSv1.2");
+        assertResumption(new TlsConfig().setTrustStore(keyStore).setProtocols("TLSv1.2"));
+
+        System.out.println("session resumption TLSv1.3");
+        assertResumption(new TlsConfig().setTrustStore(keyStore).setProtocols("TLSv1.3").setApplicationProtocols("http/1.1"));
+    }
+
+    /**
+     * Test of an untrusted self-signed server
+     */
+    @Test
+    public void testUntrusted() {
+        System.out.println("untrusted");
+        EasyHttpClient client = new EasyHttpClient(new ApacheHttpTransport(2, 2, new TlsConfig()));
+        try {
+            client.get(uri());
+            assertNotNull(client.getException());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Test of settings that can not change once the context is in use
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testSetAfterBuilt() {
+        TlsConfig config = new TlsConfig();
+        config.getSSLContext();
+        config.setSessionCacheSize(10);
+    }
+
+    private void assertResumption(TlsConfig config) throws InterruptedException {
+        ApacheHttpTransport transport = new ApacheHttpTransport(2, 2, config);
+        EasyHttpClient client = new EasyHttpClient(transport);
+        try {
+            for(int i = 0; i < 3; i++) {
+                client.clear();
+                client.get(uri());
+                assertNull(client.getException());
+                assertEquals(LocalServer.HELLO, client.consumeAsString());
+                transport.getConnectionManager().closeIdleConnections(0, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            client.shutdown();
+        }
+
+        // handshake listeners are notified on their own thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while(config.getHandshakes() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(3, config.getHandshakes());
+        assertEquals(2, config.getResumedHandshakes());
+        assertEquals(2.0 / 3, config.getResumptionRate(), 0.001);
+    }
+
+    private String uri() {
+        return "https://localhost:" + server.getAddress().getPort() + "/hello";
+    }
+
+}
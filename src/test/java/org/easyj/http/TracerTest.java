@@ -0,0 +1,197 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests Tracer and TraceContext
+ *
+ * @since 1.3.0
+ */
+public class TracerTest {
+
+    private final static String URI = "http://memory/hello";
+
+    EasyHttpClient client;
+    List<String> traceparents;
+    List<Span> spans;
+    SpanReporter reporter;
+
+    @Before
+    public void setUp() {
+        traceparents = new CopyOnWriteArrayList<String>();
+        spans = new CopyOnWriteArrayList<Span>();
+        reporter = new SpanReporter() {
+            public void report(Span span) {
+                spans.add(span);
+            }
+        };
+        client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                traceparents.add(String.valueOf(request.getFirstHeader(Tracer.TRACEPARENT) == null ? null
+                        : request.getFirstHeader(Tracer.TRACEPARENT).getValue()));
+                response.setEntity(new StringEntity(LocalServer.HELLO));
+            }
+        }));
+    }
+
+    @After
+    public void tearDown() {
+        TraceContext.setCurrent(null);
+    }
+
+    /**
+     * Test of a sampled request starting a new trace
+     */
+    @Test
+    public void testSampled() {
+        System.out.println("sampled");
+        client.setTracer(new Tracer(reporter, 1)).get(URI);
+        assertTrue(spans.isEmpty());
+        assertEquals(LocalServer.HELLO, client.consumeAsString());
+
+        assertEquals(1, spans.size());
+        Span span = spans.get(0);
+        assertEquals("HTTP GET", span.getName());
+        assertEquals(200, span.getStatus());
+        assertNull(span.getParentSpanId());
+        assertNull(span.getError());
+        assertTrue(span.getPhaseNanos(Span.Phase.EXECUTE) > 0);
+        assertTrue(span.getDurationNanos() >= span.getPhaseNanos(Span.Phase.EXECUTE) + span.getPhaseNanos(Span.Phase.CONSUME));
+        assertEquals("00-" + span.getTraceId() + "-" + span.getSpanId() + "-01", traceparents.get(0));
+
+        System.out.println("reported once");
+        client.clear();
+        assertEquals(1, spans.size());
+    }
+
+    /**
+     * Test of consecutive requests on the same client: each span carries its own outcome
+     */
+    @Test
+    public void testOutcomePerRequest() {
+        System.out.println("outcome per request");
+        client = new EasyHttpClient(OutcomeSequence.transport()).setTracer(new Tracer(reporter, 1));
+        OutcomeSequence.run(client);
+        assertEquals(4, spans.size());
+        assertEquals(200, spans.get(0).getStatus());
+        assertNull(spans.get(0).getError());
+        assertEquals(0, spans.get(1).getStatus());
+        assertTrue(spans.get(1).getError() instanceof IOException);
+        assertEquals(503, spans.get(2).getStatus());
+        assertNull(spans.get(2).getError());
+        assertEquals(200, spans.get(3).getStatus());
+        assertNull(spans.get(3).getError());
+
+        System.out.println("rejected");
+        client.setRateLimiter(new RateLimiter(0.001, 1)).setRateLimitWait(0);
+        client.get(OutcomeSequence.HELLO).consumeAsString();
+        client.get(OutcomeSequence.HELLO);
+        assertEquals(6, spans.size());
+        assertEquals(200, spans.get(4).getStatus());
+        assertEquals(0, spans.get(5).getStatus());
+        assertTrue(spans.get(5).getError() instanceof RequestRejectedException);
+    }
+
+    /**
+     * Test of an unsampled request outside of any trace: nothing is sent nor recorded
+     */
+    @Test
+    public void testNotSampled() {
+        System.out.println("not sampled");
+        client.setTracer(new Tracer(reporter, 0)).get(URI).consumeAsString();
+        assertEquals("null", traceparents.get(0));
+        assertTrue(spans.isEmpty());
+    }
+
+    /**
+     * Test of requests joining the thread's current trace
+     */
+    @Test
+    public void testCurrentContext() {
+        System.out.println("current context sampled");
+        TraceContext parent = TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+        TraceContext.setCurrent(parent);
+        client.setTracer(new Tracer(reporter, 0)).get(URI).consumeAsString();
+        assertEquals(1, spans.size());
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", spans.get(0).getTraceId());
+        assertEquals("00f067aa0ba902b7", spans.get(0).getParentSpanId());
+        assertTrue(traceparents.get(0).startsWith("00-4bf92f3577b34da6a3ce929d0e0e4736-"));
+        assertFalse(traceparents.get(0).contains("00f067aa0ba902b7"));
+
+        System.out.println("current context not sampled");
+        client.clear();
+        TraceContext.setCurrent(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00"));
+        client.setTracer(new Tracer(reporter, 1)).get(URI).consumeAsString();
+        assertEquals(1, spans.size());
+        assertEquals("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00", traceparents.get(1));
+    }
+
+    /**
+     * Test of the sample rate
+     */
+    @Test
+    public void testSampleRate() {
+        System.out.println("sample rate");
+        Tracer tracer = new Tracer(reporter, 0.1);
+        int sampled = 0;
+        for(int i = 0; i < 10000; i++) {
+            if(tracer.start(new HttpGet(URI)) != null) {
+                sampled++;
+            }
+        }
+        assertTrue("sampled " + sampled, sampled > 800 && sampled < 1200);
+    }
+
+    /**
+     * Test of parse method
+     */
+    @Test
+    public void testParse() {
+        System.out.println("parse");
+        String value = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+        TraceContext context = TraceContext.parse(value);
+        assertTrue(context.isSampled());
+        assertEquals("00f067aa0ba902b7", context.getSpanId());
+        assertEquals(value, context.toTraceparent());
+
+        System.out.println("future version");
+        assertNotNull(TraceContext.parse("01-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01-extra"));
+
+        System.out.println("invalid");
+        assertNull(TraceContext.parse(null));
+        assertNull(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-0000000000000000-01"));
+        assertNull(TraceContext.parse("00-4BF92F3577B34DA6A3CE929D0E0E4736-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("ff-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01-extra"));
+    }
+
+}
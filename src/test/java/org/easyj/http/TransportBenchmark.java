@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+
+/**
+ * Compares the throughput of the transports running the same GET requests through {@code EasyHttpClient}.
+ * The socket based transports call a {@link LocalServer}.
+ * <p>
+ * Usage: {@code TransportBenchmark [threads] [requestsPerThread]}
+ *
+ * @since 1.3.0
+ */
+public class TransportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        LocalServer server = new LocalServer();
+        try {
+            HttpTransport inMemory = new InMemoryTransport(new HttpRequestHandler() {
+                public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                    response.setEntity(new StringEntity(LocalServer.HELLO));
+                }
+            });
+
+            for(int round = 0; round < 2; round++) {
+                System.out.println(round == 0 ? "warm up" : "measure");
+                run("apache", new ApacheHttpTransport(threads, threads), server.uri("/hello"), threads, requests);
+                run("urlconnection", new UrlConnectionTransport(), server.uri("/hello"), threads, requests);
+                run("in-memory", inMemory, "http://memory/hello", threads, requests);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void run(String name, final HttpTransport transport, final String uri, int threads, final int requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        long start = System.nanoTime();
+        for(int i = 0; i < threads; i++) {
+            results.add(executor.submit(new Callable<Integer>() {
+                public Integer call() {
+                    EasyHttpClient client = new EasyHttpClient(transport);
+                    int errors = 0;
+                    for(int j = 0; j < requests; j++) {
+                        client.clear();
+                        client.get(uri);
+                        if(client.getStatus() != 200 || client.consumeAsString().isEmpty()) {
+                            errors++;
+                        }
+                    }
+                    client.clear();
+                    return errors;
+                }
+            }));
+        }
+
+        int errors = 0;
+        for(Future<Integer> result : results) {
+            errors += result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        transport.shutdown();
+
+        long total = (long) threads * requests;
+        System.out.printf("%-15s %10.0f req/s %8.1f us/req %6d errors%n",
+                name, total * 1e9 / elapsed, elapsed / 1e3 / total * threads, errors);
+    }
+
+}
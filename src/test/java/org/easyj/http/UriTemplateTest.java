@@ -0,0 +1,173 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests UriTemplate and PreparedRequest
+ *
+ * @since 1.3.0
+ */
+public class UriTemplateTest {
+
+    private final Map<String, Object> variables = new HashMap<String, Object>() {{
+        put("var", "value");
+        put("hello", "Hello World!");
+        put("path", "/foo/bar");
+        put("x", 1024);
+        put("y", 768);
+        put("empty", "");
+    }};
+
+    /**
+     * Test of expand method with the RFC 6570 level 1 to 3 examples
+     */
+    @Test
+    public void testExpand() {
+        System.out.println("expand");
+        assertEquals("http://h/value", expand("http://h/{var}"));
+        assertEquals("http://h/Hello%20World%21", expand("http://h/{hello}"));
+        assertEquals("http://h/1024,768", expand("http://h/{x,y}"));
+
+        System.out.println("reserved");
+        assertEquals("http://h/Hello%20World!", expand("http://h/{+hello}"));
+        assertEquals("http://h/foo/bar/here", expand("http://h{+path}/here"));
+        assertEquals("http://h/#value", expand("http://h/{#var}"));
+
+        System.out.println("label and path");
+        assertEquals("http://h/X.value", expand("http://h/X{.var}"));
+        assertEquals("http://h/value/1024/here", expand("http://h{/var,x}/here"));
+        assertEquals("http://h/;x=1024;y=768;empty", expand("http://h/{;x,y,empty}"));
+
+        System.out.println("query");
+        assertEquals("http://h/?x=1024&y=768", expand("http://h/{?x,y}"));
+        assertEquals("http://h/?x=1024&y=768&empty=", expand("http://h/{?x,y,empty}"));
+        assertEquals("http://h/?fixed=yes&x=1024", expand("http://h/?fixed=yes{&x}"));
+
+        System.out.println("undefined");
+        assertEquals("http://h/?x=1024", expand("http://h/{?undef,x}"));
+        assertEquals("http://h/", expand("http://h/{undef}"));
+    }
+
+    /**
+     * Test of expandURI method with reserved expansions of values the URI would reject:
+     * brackets outside the authority and a second {@code #} are percent-encoded
+     */
+    @Test
+    public void testExpandURI_Reserved() {
+        System.out.println("expandURI reserved");
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("path", "/a[1] b#c#d");
+        values.put("fragment", "x#y[2]");
+        values.put("base", "http://[::1]:8080");
+
+        assertEquals("http://h/a%5B1%5D%20b#c%23d", new UriTemplate("http://h{+path}").expandURI(values).toString());
+        assertEquals("http://h/#x%23y%5B2%5D", new UriTemplate("http://h/{#fragment}").expandURI(values).toString());
+        assertEquals("http://[::1]:8080/a%5B1%5D%20b#c%23d", new UriTemplate("{+base}{+path}").expandURI(values).toString());
+        assertEquals("[::1]", new UriTemplate("{+base}/").expandURI(values).getHost());
+    }
+
+    /**
+     * Test of getVariables method
+     */
+    @Test
+    public void testGetVariables() {
+        System.out.println("getVariables");
+        UriTemplate template = new UriTemplate("https://host/api/{id}/items{?page,size,id}");
+        assertEquals(3, template.getVariables().size());
+        assertEquals("id", template.getVariables().get(0));
+        assertEquals("size", template.getVariables().get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnclosedExpression() {
+        new UriTemplate("http://h/{var");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedModifier() {
+        new UriTemplate("http://h/{var*}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonAsciiVariable() {
+        new UriTemplate("http://h/{caf\u00e9}");
+    }
+
+    /**
+     * Test of PreparedRequest: executions bind variables without parsing the template again
+     */
+    @Test
+    public void testPrepare() {
+        System.out.println("prepare");
+        EasyHttpClient client = new EasyHttpClient(new InMemoryTransport(new HttpRequestHandler() {
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+            }
+        }));
+
+        PreparedRequest request = client.prepare("get", "https://host/api/{id}/items{?page,size}").addHeader("X-Static", 1);
+        assertEquals("GET", request.getMethodName());
+
+        request.execute("id=42", "page=2");
+        assertEquals(200, client.getStatus());
+        assertEquals("https://host/api/42/items?page=2", client.getMethod().getURI().toString());
+        assertEquals("GET", client.getMethod().getMethod());
+        assertEquals("1", client.getMethod().getFirstHeader("X-Static").getValue());
+        assertEquals("application/json", client.getMethod().getFirstHeader("Accept").getValue());
+
+        System.out.println("request headers replace static headers");
+        client.clear();
+        request.addHeader("Accept", "text/plain");
+        client.addRequestHeader("Accept", "text/html").addRequestHeader("X-Static", 2);
+        request.execute("id=42");
+        assertEquals(1, client.getMethod().getHeaders("Accept").length);
+        assertEquals("text/html", client.getMethod().getFirstHeader("Accept").getValue());
+        assertEquals(1, client.getMethod().getHeaders("X-Static").length);
+        assertEquals("2", client.getMethod().getFirstHeader("X-Static").getValue());
+
+        client.clear();
+        request.execute(variables);
+        assertEquals("https://host/api//items", client.getMethod().getURI().toString());
+
+        System.out.println("relative template");
+        assertEquals("http://localhost/a%20b", client.prepare("GET", "localhost/{var}").expand(new HashMap<String, Object>() {{
+            put("var", "a b");
+        }}).toString());
+
+        System.out.println("template starting with a variable");
+        assertEquals("https://api.example.com/items", client.prepare("GET", "{+base}/items").expand(new HashMap<String, Object>() {{
+            put("base", "https://api.example.com");
+        }}).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrepare_UnknownMethod() {
+        new EasyHttpClient().prepare("FETCH", "http://h/");
+    }
+
+    private String expand(String template) {
+        return new UriTemplate(template).expand(variables);
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2009-2012 the original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.easyj.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests Http2Transport
+ *
+ * @since 1.3.0
+ */
+public class Http2TransportTest {
+
+    LocalServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Test of requests of every kind, the local server answering over HTTP/1.1 to the h2c upgrade
+     */
+    @Test
+    public void testHttp2Transport() throws IOException {
+        System.out.println("Http2Transport");
+        HttpTransportTest.assertTransport(server, new Http2Transport());
+    }
+
+    /**
+     * Test of the protocol version reported and of concurrent requests sharing the transport
+     */
+    @Test
+    public void testConcurrentRequests() throws InterruptedException {
+        System.out.println("concurrent requests");
+        final Http2Transport transport = new Http2Transport();
+        final List<String> failures = new ArrayList<String>();
+        final CountDownLatch done = new CountDownLatch(20);
+        try {
+            for(int i = 0; i < 20; i++) {
+                new Thread(new Runnable() {
+                    public void run() {
+                        EasyHttpClient client = new EasyHttpClient(transport);
+                        try {
+                            client.get(server.uri("/hello"));
+                            if(!LocalServer.HELLO.equals(client.consumeAsString())
+                                    || !"HTTP/1.1".equals(client.getResponse().getProtocolVersion().toString())) {
+                                synchronized(failures) {
+                                    failures.add(client.getStatus() + " " + client.getException());
+                                }
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(failures.toString(), failures.isEmpty());
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    /**
+     * Test of the read timeout, bounding the wait for the response headers, and of aborting a pending request
+     */
+    @Test
+    public void testTimeoutAndAbort() {
+        System.out.println("read timeout");
+        server.addHandler("/slow", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                LocalServer.respond(exchange, 200, new byte[0]);
+            }
+        });
+        Http2Transport transport = new Http2Transport();
+        EasyHttpClient client = new EasyHttpClient(transport).setTimeouts(new Timeouts().setRead(200));
+        try {
+            long start = System.nanoTime();
+            client.get(server.uri("/slow"));
+            assertTrue(client.getException() instanceof RequestTimeoutException);
+            assertEquals(RequestTimeoutException.Kind.READ, ((RequestTimeoutException) client.getException()).getKind());
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+
+            System.out.println("deadline");
+            client.clear();
+            client.setTimeouts(new Timeouts().setDeadline(200));
+            start = System.nanoTime();
+            client.get(server.uri("/slow"));
+            assertTrue(client.getException() instanceof RequestTimeoutException);
+            assertEquals(RequestTimeoutException.Kind.DEADLINE, ((RequestTimeoutException) client.getException()).getKind());
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+        } finally {
+            client.clear();
+            client.shutdown();
+        }
+    }
+
+    /**
+     * Test of Http2Settings: applied as the JDK system properties, checked against the HTTP/2 bounds
+     */
+    @Test
+    public void testSettings() {
+        System.out.println("settings");
+        String previous = System.getProperty(Http2Settings.INITIAL_WINDOW_SIZE);
+        try {
+            new Http2Settings().setInitialWindowSize(1024 * 1024).apply();
+            assertEquals("1048576", System.getProperty(Http2Settings.INITIAL_WINDOW_SIZE));
+        } finally {
+            if(previous == null) {
+                System.clearProperty(Http2Settings.INITIAL_WINDOW_SIZE);
+            } else {
+                System.setProperty(Http2Settings.INITIAL_WINDOW_SIZE, previous);
+            }
+        }
+
+        try {
+            new Http2Settings().setMaxFrameSize(1000);
+            fail("frames under 16384 bytes are not allowed");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("maxFrameSize must be between 16384 and 16777215: 1000", ex.getMessage());
+        }
+    }
+
+}